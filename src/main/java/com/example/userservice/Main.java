@@ -1,24 +1,64 @@
 package com.example.userservice;
 
+import com.example.userservice.dao.CachingUserDao;
+import com.example.userservice.dao.UserBulkTransfer;
+import com.example.userservice.dao.UserChangeFeed;
 import com.example.userservice.dao.UserDao;
 import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.dao.UserReplica;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSummary;
 import com.example.userservice.entity.User;
+import com.example.userservice.http.UserHttpServer;
+import com.example.userservice.metrics.OperationMetrics;
+import com.example.userservice.service.ReplicatedUserService;
+import com.example.userservice.service.UserService;
+import com.example.userservice.service.UserServiceImpl;
+import com.example.userservice.service.UserStatisticsService;
 import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.SchemaMigrations;
+import com.example.userservice.util.Startup;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
+import org.hibernate.StaleObjectStateException;
 
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.List;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.CountDownLatch;
 
 public class Main {
     private static final Logger logger = LogManager.getLogger(Main.class);
-    private static final UserDao userDao = new UserDaoImpl();
+    private static final UserDao userDao = new CachingUserDao(new UserDaoImpl(), 10_000, Duration.ofMinutes(5));
+    private static final UserStatisticsService statistics = new UserStatisticsService(userDao);
+    private static UserService userService = new UserServiceImpl(userDao, statistics);
     private static final Scanner scanner = new Scanner(System.in);
+    private static final int LIST_PAGE_SIZE = 500;
+    private static final int PAGE_SIZE = 20;
+    private static final int DEFAULT_HTTP_PORT = 8080;
+    // -Duserservice.replica=true: чтения по id и email из in-memory копии таблицы (только PostgreSQL)
+    private static final String REPLICA_PROPERTY = "userservice.replica";
+    private static final Duration REPLICA_HEARTBEAT = Duration.ofMillis(200);
+    private static final Duration REPLICA_MAX_STALENESS = Duration.ofSeconds(1);
 
     public static void main(String[] args) {
         try {
-            runApplication();
+            Startup.begin(Startup.mode(), Main::warmUpQueries);
+            if (Boolean.getBoolean(REPLICA_PROPERTY)) {
+                enableReplica();
+            }
+            if (args.length > 0) {
+                runCommand(args);
+            } else {
+                runApplication();
+            }
         } catch (Exception e) {
             logger.error("Application error: ", e);
             System.err.println("Critical error occurred. See logs for details.");
@@ -27,6 +67,78 @@ public class Main {
         }
     }
 
+    // Пакетный режим: import|export <file.csv|file.jsonl> или serve [port]
+    private static void runCommand(String[] args) throws IOException, InterruptedException {
+        if (args[0].equals("serve") && args.length <= 2) {
+            serve(args.length == 2 ? Integer.parseInt(args[1]) : DEFAULT_HTTP_PORT);
+            return;
+        }
+        if (args.length != 2 || !(args[0].equals("import") || args[0].equals("export"))) {
+            System.out.println("Usage: import|export <file.csv|file.jsonl> | serve [port]");
+            return;
+        }
+        Path file = Path.of(args[1]);
+        UserBulkTransfer.Format format = UserBulkTransfer.Format.fromFileName(file.getFileName().toString());
+        UserBulkTransfer transfer = new UserBulkTransfer();
+        UserBulkTransfer.ProgressListener progress = (rows, rate) ->
+                System.out.printf("%,d rows (%,.0f rows/s)%n", rows, rate);
+
+        UserBulkTransfer.Result result;
+        if (args[0].equals("import")) {
+            try (Reader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+                result = transfer.importUsers(in, format, progress);
+            } finally {
+                // Импорт идёт через COPY в обход UserService: счётчики статистики перечитываются из БД
+                statistics.invalidate();
+            }
+            System.out.printf("Imported %,d of %,d rows (%,d duplicates skipped)%n",
+                    result.getInserted(), result.getRows(), result.getSkipped());
+        } else {
+            try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                result = transfer.exportUsers(out, format, progress);
+            }
+            System.out.printf("Exported %,d rows to %s%n", result.getRows(), file);
+        }
+        System.out.printf("Done in %d ms, %,.0f rows/s%n", result.getElapsed().toMillis(), result.getRowsPerSecond());
+        logger.info("Bulk {} of {}: {}", args[0], file, result);
+    }
+
+    private static void serve(int port) throws IOException, InterruptedException {
+        // Настройка всей JVM, читается при старте первого HttpServer: без TCP_NODELAY ответ ждёт delayed ACK
+        System.getProperties().putIfAbsent("sun.net.httpserver.nodelay", "true");
+        UserHttpServer server = UserHttpServer.create(userService, port);
+        CountDownLatch stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            server.close();
+            HibernateUtil.shutdown();
+            stopped.countDown();
+        }, "http-shutdown"));
+        server.start();
+        System.out.println("Serving users on http://localhost:" + server.getPort() + "/users, Ctrl+C to stop");
+        stopped.await();
+    }
+
+    // Лента изменений держится на триггере из миграции V3, поэтому без миграций реплику не включаем
+    private static void enableReplica() {
+        if (!Boolean.parseBoolean(String.valueOf(HibernateUtil.getSettings().get(SchemaMigrations.ENABLED)))) {
+            throw new IllegalStateException("-D" + REPLICA_PROPERTY + "=true needs " + SchemaMigrations.ENABLED
+                    + "=true: the change feed relies on the trigger from migration V3");
+        }
+        UserReplica replica = new UserReplica();
+        UserChangeFeed feed = UserChangeFeed.create(replica, REPLICA_HEARTBEAT);
+        feed.start().join();
+        HibernateUtil.addShutdownListener(feed::close);
+        userService = new ReplicatedUserService(userService, replica, REPLICA_MAX_STALENESS);
+        logger.info("Serving reads from an in-memory replica of {} users", replica.size());
+    }
+
+    // Те же запросы, что на горячем пути: планы HQL попадают в кэш до первого пользователя
+    private static void warmUpQueries() {
+        userService.findById(0L);
+        userService.findPage(null, 1);
+        userService.findPage(0L, 1);
+    }
+
     private static void runApplication() {
         boolean isRunning = true;
 
@@ -44,6 +156,10 @@ public class Main {
                 handleUserUpdate();
             } else if (choice == 5) {
                 handleUserDeletion();
+            } else if (choice == 6) {
+                browseUsers();
+            } else if (choice == 7) {
+                showMetrics();
             } else if (choice == 0) {
                 isRunning = false;
                 System.out.println("Exiting application...");
@@ -60,6 +176,8 @@ public class Main {
         System.out.println("3. Show All Users");
         System.out.println("4. Update User");
         System.out.println("5. Delete User");
+        System.out.println("6. Browse Users (paged)");
+        System.out.println("7. Show Metrics");
         System.out.println("0. Exit");
         System.out.print("Enter your choice: ");
     }
@@ -89,7 +207,7 @@ public class Main {
         scanner.nextLine(); // Consume newline
 
         try {
-            User createdUser = userDao.save(user);
+            User createdUser = userService.save(user);
             System.out.println("User created successfully: " + createdUser);
             logger.info("Created user: {}", createdUser);
         } catch (Exception e) {
@@ -105,7 +223,7 @@ public class Main {
         scanner.nextLine(); // Consume newline
 
         try {
-            Optional<User> user = userDao.findById(id);
+            Optional<User> user = userService.findById(id);
             if (user.isPresent()) {
                 System.out.println("Found user: " + user.get());
             } else {
@@ -119,19 +237,48 @@ public class Main {
 
     private static void displayAllUsers() {
         System.out.println("\n[All Users]");
+        // Список показывает только id, имя и email: читаем проекцию страницами вместо полных сущностей
         try {
-            List<User> users = userDao.findAll();
-            if (users.isEmpty()) {
-                System.out.println("No users found");
-            } else {
-                users.forEach(System.out::println);
-            }
+            Long afterId = null;
+            List<UserSummary> page;
+            do {
+                page = userService.findSummariesPage(afterId, LIST_PAGE_SIZE);
+                if (afterId == null && page.isEmpty()) {
+                    System.out.println("No users found");
+                }
+                page.forEach(System.out::println);
+                afterId = page.isEmpty() ? afterId : page.get(page.size() - 1).getId();
+            } while (page.size() == LIST_PAGE_SIZE);
         } catch (Exception e) {
             System.out.println("Error fetching users: " + e.getMessage());
             logger.error("Failed to retrieve users", e);
         }
     }
 
+    private static void browseUsers() {
+        System.out.println("\n[Browse Users]");
+        try {
+            Long afterId = null;
+            while (true) {
+                List<UserSummary> page = userService.findSummariesPage(afterId, PAGE_SIZE);
+                if (page.isEmpty()) {
+                    System.out.println(afterId == null ? "No users found" : "No more users");
+                    return;
+                }
+                page.forEach(System.out::println);
+                afterId = page.get(page.size() - 1).getId();
+
+                System.out.print("Press Enter for next page or 'q' to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    return;
+                }
+            }
+        } catch (Exception e) {
+            System.out.println("Error fetching users: " + e.getMessage());
+            logger.error("Failed to browse users", e);
+        }
+    }
+
     private static void handleUserUpdate() {
         System.out.println("\n[Update User]");
         System.out.print("Enter user ID to update: ");
@@ -139,37 +286,42 @@ public class Main {
         scanner.nextLine(); // Consume newline
 
         try {
-            Optional<User> userOpt = userDao.findById(id);
+            Optional<User> userOpt = userService.findById(id);
             if (userOpt.isEmpty()) {
                 System.out.println("User not found");
                 return;
             }
-
-            User user = userOpt.get();
-            System.out.println("Current data: " + user);
+            System.out.println("Current data: " + userOpt.get());
 
             System.out.print("Enter new name (leave blank to keep current): ");
             String name = scanner.nextLine();
-            if (!name.isEmpty()) {
-                user.setName(name);
-            }
 
             System.out.print("Enter new email (leave blank to keep current): ");
             String email = scanner.nextLine();
-            if (!email.isEmpty()) {
-                user.setEmail(email);
-            }
 
             System.out.print("Enter new age (0 to keep current): ");
             int age = scanner.nextInt();
             scanner.nextLine(); // Consume newline
-            if (age > 0) {
-                user.setAge(age);
-            }
 
-            User updatedUser = userDao.update(user);
-            System.out.println("User updated: " + updatedUser);
-            logger.info("Updated user: {}", updatedUser);
+            UserPatch patch = UserPatch.builder()
+                    .name(name.isEmpty() ? null : name)
+                    .email(email.isEmpty() ? null : email)
+                    .age(age > 0 ? age : null)
+                    .expectedVersion(userOpt.get().getVersion())
+                    .build();
+            if (patch.isEmpty()) {
+                System.out.println("Nothing to update");
+                return;
+            }
+            if (!userService.patch(id, patch)) {
+                System.out.println("User not found");
+                return;
+            }
+            System.out.println("User updated: " + userService.findById(id).orElse(null));
+            logger.info("Patched user {}: {}", id, patch);
+        } catch (StaleObjectStateException e) {
+            System.out.println("User was changed by someone else, please retry");
+            logger.warn("Concurrent update of user {}", id);
         } catch (Exception e) {
             System.out.println("Update error: " + e.getMessage());
             logger.error("User update failed", e);
@@ -183,9 +335,7 @@ public class Main {
         scanner.nextLine(); // Consume newline
 
         try {
-            Optional<User> userOpt = userDao.findById(id);
-            if (userOpt.isPresent()) {
-                userDao.delete(userOpt.get());
+            if (userService.delete(id)) {
                 System.out.println("User deleted successfully");
                 logger.info("Deleted user with ID: {}", id);
             } else {
@@ -197,6 +347,21 @@ public class Main {
         }
     }
 
+    private static void showMetrics() {
+        System.out.println("\n[Metrics]");
+        OperationMetrics.forComponent("UserDao").getOperations().forEach(System.out::println);
+        HibernateUtil.getPoolMetrics().ifPresent(System.out::println);
+        HibernateUtil.getReplicas().forEach(System.out::println);
+        if (userDao instanceof CachingUserDao) {
+            System.out.println(((CachingUserDao) userDao).getStats());
+        }
+        System.out.printf("Users: %,d, average age %.1f, by age %s%n",
+                statistics.getUserCount(), statistics.getAverageAge(), statistics.getAgeDistribution());
+        if (userService instanceof ReplicatedUserService) {
+            System.out.println(userService);
+        }
+    }
+
     private static void shutdownResources() {
         try {
             HibernateUtil.shutdown();
@@ -0,0 +1,238 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
+import com.example.userservice.entity.User;
+import com.example.userservice.util.ReadYourWrites;
+import com.example.userservice.util.UnitOfWork;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.stats.CacheStats;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+/**
+ * Read-through cache for {@link UserDao#findById} with size and TTL eviction.
+ * Writes go to the delegate and then invalidate the affected entries; callers always
+ * get their own copy, so mutating a returned user never touches the cached one.
+ */
+public class CachingUserDao implements UserDao {
+    private final UserDao delegate;
+    private final Cache<Long, User> cache;
+
+    public CachingUserDao(UserDao delegate, long maximumSize, Duration timeToLive) {
+        this.delegate = delegate;
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maximumSize)
+                .expireAfterWrite(timeToLive)
+                .recordStats()
+                .build();
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        // Внутри единицы работы нужна управляемая сущность из её сессии, а не копия из кэша
+        if (id == null || UnitOfWork.isActive()) {
+            return delegate.findById(id);
+        }
+        // Загрузка идёт под блокировкой ключа, поэтому параллельная инвалидация не оставит в кэше устаревшую запись.
+        // Загрузка читает primary: запись видят все вызывающие, и отстающая реплика не должна попасть в кэш на весь TTL
+        User cached = cache.get(id, key -> ReadYourWrites.onPrimary(() -> delegate.findById(key))
+                .map(User::copy).orElse(null));
+        return Optional.ofNullable(cached).map(User::copy);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return delegate.findAll();
+    }
+
+    @Override
+    public Stream<User> streamAll(int fetchSize) {
+        return delegate.streamAll(fetchSize);
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        return delegate.findAllSummaries();
+    }
+
+    @Override
+    public List<UserSummary> findSummariesPage(Long afterId, int limit) {
+        return delegate.findSummariesPage(afterId, limit);
+    }
+
+    @Override
+    public List<User> search(UserSearch search) {
+        return delegate.search(search);
+    }
+
+    @Override
+    public long count(UserSearch search) {
+        return delegate.count(search);
+    }
+
+    @Override
+    public Map<Integer, Long> countByAge() {
+        return delegate.countByAge();
+    }
+
+    @Override
+    public Map<LocalDate, Long> countSignupsByDay() {
+        return delegate.countSignupsByDay();
+    }
+
+    @Override
+    public User save(User user) {
+        User saved = delegate.save(user);
+        if (!UnitOfWork.isActive()) {
+            cache.put(saved.getId(), saved.copy());
+        }
+        return saved;
+    }
+
+    @Override
+    public int saveAll(Iterator<User> users) {
+        return delegate.saveAll(users);
+    }
+
+    // Затронутые id известны только после записи: при ошибке транзакция откатилась и кэш не устарел
+    @Override
+    public List<Long> upsertAllByEmail(Collection<User> users) {
+        List<Long> ids = delegate.upsertAllByEmail(users);
+        ids.forEach(this::invalidate);
+        return ids;
+    }
+
+    @Override
+    public User update(User user) {
+        try {
+            return delegate.update(user);
+        } finally {
+            invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public int updateAll(Collection<User> users) {
+        try {
+            return delegate.updateAll(users);
+        } finally {
+            users.forEach(user -> invalidate(user.getId()));
+        }
+    }
+
+    @Override
+    public int patch(Long id, UserPatch patch) {
+        try {
+            return delegate.patch(id, patch);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public void delete(User user) {
+        try {
+            delegate.delete(user);
+        } finally {
+            invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public int deleteById(Long id) {
+        try {
+            return delegate.deleteById(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public User updateReturningPrevious(User user) {
+        try {
+            return delegate.updateReturningPrevious(user);
+        } finally {
+            invalidate(user.getId());
+        }
+    }
+
+    @Override
+    public Optional<User> patchReturningPrevious(Long id, UserPatch patch) {
+        try {
+            return delegate.patchReturningPrevious(id, patch);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public Optional<User> deleteReturningPrevious(Long id) {
+        try {
+            return delegate.deleteReturningPrevious(id);
+        } finally {
+            invalidate(id);
+        }
+    }
+
+    @Override
+    public Map<Long, Integer> updateAllReturningPreviousAges(Collection<User> users) {
+        try {
+            return delegate.updateAllReturningPreviousAges(users);
+        } finally {
+            users.forEach(user -> invalidate(user.getId()));
+        }
+    }
+
+    @Override
+    public int deleteAllById(Collection<Long> ids) {
+        try {
+            return delegate.deleteAllById(ids);
+        } finally {
+            cache.invalidateAll(ids);
+            if (UnitOfWork.isActive()) {
+                UnitOfWork.runAfterCompletion(() -> cache.invalidateAll(ids));
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    public void cleanUp() {
+        cache.cleanUp();
+    }
+
+    // Повторная инвалидация после commit: иначе параллельное чтение успеет закэшировать ещё не закоммиченное старое значение
+    private void invalidate(Long id) {
+        if (id != null) {
+            cache.invalidate(id);
+            if (UnitOfWork.isActive()) {
+                UnitOfWork.runAfterCompletion(() -> cache.invalidate(id));
+            }
+        }
+    }
+
+    public CacheStats getStats() {
+        return cache.stats();
+    }
+
+    public long getSize() {
+        return cache.estimatedSize();
+    }
+}
@@ -0,0 +1,321 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.metrics.OperationMetrics;
+import com.example.userservice.util.HibernateUtil;
+import lombok.Value;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyManager;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.FilterReader;
+import java.io.FilterWriter;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Bulk import and export of users through PostgreSQL {@code COPY}, streamed in constant memory.
+ * <p>
+ * Import copies the file into a temporary staging table and then inserts it into {@code users} in
+ * one statement. Duplicate emails within the file keep their first occurrence. Emails that already
+ * exist in the table are skipped.
+ * <p>
+ * CSV has a header row. Columns {@code name}, {@code email} and {@code age} are required.
+ * {@code created_at} is optional. {@code id} and {@code version} are accepted and ignored, so an
+ * exported file can be imported back. JSON lines hold one object per line with the same fields;
+ * {@code createdAt} is in camel case.
+ */
+public class UserBulkTransfer {
+    private static final Logger logger = LoggerFactory.getLogger(UserBulkTransfer.class);
+    private static final OperationMetrics metrics = OperationMetrics.forComponent("UserBulkTransfer");
+    private static final long DEFAULT_PROGRESS_INTERVAL = 100_000;
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    // Символы-разделители, которых нет в JSON: COPY в формате csv передаёт строку как есть, без экранирования
+    private static final String JSON_LINE_OPTIONS = "(FORMAT csv, QUOTE E'\\x01', DELIMITER E'\\x02')";
+
+    private static final Map<String, String> CSV_COLUMNS = Map.of(
+            "id", "id",
+            "name", "name",
+            "email", "email",
+            "age", "age",
+            "created_at", "created_at",
+            "createdat", "created_at",
+            "version", "version");
+
+    // id берутся блоками по allocationSize, как у Hibernate (UserIdBlocks), а не по блоку на строку
+    private static final String INSERT_FROM_STAGING =
+            "WITH numbered AS (SELECT row_number() OVER () - 1 AS n, name, email, age, created_at "
+                    + "FROM (SELECT DISTINCT ON (email) line, name, email, age, created_at "
+                    + "FROM (%s) src ORDER BY email, line) s), "
+                    + UserIdBlocks.withIds("numbered") + " "
+                    + "INSERT INTO users (id, name, email, age, created_at, version) "
+                    + "SELECT id, name, email, age, coalesce(created_at, now()), 0 FROM with_ids "
+                    + "ON CONFLICT (email) DO NOTHING";
+
+    public enum Format {
+        CSV, JSONL;
+
+        public static Format fromFileName(String fileName) {
+            String lower = fileName.toLowerCase(Locale.ROOT);
+            if (lower.endsWith(".csv")) {
+                return CSV;
+            }
+            if (lower.endsWith(".jsonl") || lower.endsWith(".ndjson")) {
+                return JSONL;
+            }
+            throw new IllegalArgumentException("Unsupported file type, expected .csv or .jsonl: " + fileName);
+        }
+    }
+
+    @FunctionalInterface
+    public interface ProgressListener {
+        void onProgress(long rows, double rowsPerSecond);
+    }
+
+    @Value
+    public static class Result {
+        long rows;
+        long inserted;
+        Duration elapsed;
+
+        public long getSkipped() {
+            return rows - inserted;
+        }
+
+        public double getRowsPerSecond() {
+            return ratePerSecond(rows, elapsed.toNanos());
+        }
+    }
+
+    private final long progressInterval;
+
+    public UserBulkTransfer() {
+        this(DEFAULT_PROGRESS_INTERVAL);
+    }
+
+    public UserBulkTransfer(long progressInterval) {
+        if (progressInterval <= 0) {
+            throw new IllegalArgumentException("progressInterval must be positive: " + progressInterval);
+        }
+        this.progressInterval = progressInterval;
+    }
+
+    public Result importUsers(Reader in, Format format, ProgressListener listener) {
+        long start = System.nanoTime();
+        try {
+            return metrics.time("import", () -> inTransaction(connection -> {
+                CopyManager copyManager = copyManager(connection);
+                long rows;
+                String select;
+                if (format == Format.CSV) {
+                    BufferedReader reader = new BufferedReader(in, COPY_BUFFER_SIZE);
+                    List<String> columns = csvColumns(reader.readLine());
+                    execute(connection, "CREATE TEMP TABLE users_import (line bigserial, id bigint, name text, "
+                            + "email text, age integer, created_at timestamp, version bigint) ON COMMIT DROP");
+                    rows = copyManager.copyIn("COPY users_import (" + String.join(", ", columns) + ") FROM STDIN WITH (FORMAT csv)",
+                            new ProgressReader(reader, listener, start), COPY_BUFFER_SIZE);
+                    select = "SELECT line, name, email, age, created_at FROM users_import";
+                } else {
+                    execute(connection, "CREATE TEMP TABLE users_import (line bigserial, doc jsonb) ON COMMIT DROP");
+                    rows = copyManager.copyIn("COPY users_import (doc) FROM STDIN WITH " + JSON_LINE_OPTIONS,
+                            new ProgressReader(in, listener, start), COPY_BUFFER_SIZE);
+                    // Пустые строки файла приходят как NULL
+                    select = "SELECT line, doc->>'name' AS name, doc->>'email' AS email, "
+                            + "(doc->>'age')::integer AS age, (doc->>'createdAt')::timestamp AS created_at "
+                            + "FROM users_import WHERE doc IS NOT NULL";
+                    rows -= count(connection, "SELECT count(*) FROM users_import WHERE doc IS NULL");
+                }
+                long inserted;
+                try (Statement statement = connection.createStatement()) {
+                    inserted = statement.executeUpdate(String.format(INSERT_FROM_STAGING, select));
+                }
+                return new Result(rows, inserted, Duration.ofNanos(System.nanoTime() - start));
+            }));
+        } catch (Exception e) {
+            logger.error("Error importing users from {}", format, e);
+            throw e;
+        }
+    }
+
+    public Result exportUsers(Writer out, Format format, ProgressListener listener) {
+        long start = System.nanoTime();
+        String sql;
+        if (format == Format.CSV) {
+            sql = "COPY (SELECT id, name, email, age, created_at, version FROM users ORDER BY id) "
+                    + "TO STDOUT WITH (FORMAT csv, HEADER)";
+        } else {
+            sql = "COPY (SELECT json_build_object('id', id, 'name', name, 'email', email, 'age', age, "
+                    + "'createdAt', created_at, 'version', version) FROM users ORDER BY id) "
+                    + "TO STDOUT WITH " + JSON_LINE_OPTIONS;
+        }
+        try {
+            return metrics.time("export", () -> inTransaction(connection -> {
+                ProgressWriter target = new ProgressWriter(out, listener, start);
+                long rows = copyManager(connection).copyOut(sql, target);
+                target.flush();
+                return new Result(rows, 0, Duration.ofNanos(System.nanoTime() - start));
+            }));
+        } catch (Exception e) {
+            logger.error("Error exporting users to {}", format, e);
+            throw e;
+        }
+    }
+
+    private static List<String> csvColumns(String header) {
+        if (header == null) {
+            throw new IllegalArgumentException("CSV file is empty, expected a header row");
+        }
+        List<String> columns = new ArrayList<>();
+        for (String raw : header.split(",")) {
+            String name = raw.trim().replace("\"", "").toLowerCase(Locale.ROOT);
+            String column = CSV_COLUMNS.get(name);
+            if (column == null) {
+                throw new IllegalArgumentException("Unknown CSV column: " + raw.trim());
+            }
+            columns.add(column);
+        }
+        if (!columns.containsAll(List.of("name", "email", "age"))) {
+            throw new IllegalArgumentException("CSV header must contain name, email and age: " + header);
+        }
+        return columns;
+    }
+
+    private static CopyManager copyManager(Connection connection) throws SQLException {
+        return connection.unwrap(PGConnection.class).getCopyAPI();
+    }
+
+    private static void execute(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static long count(Connection connection, String sql) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+
+    private static double ratePerSecond(long rows, long elapsedNanos) {
+        return elapsedNanos <= 0 ? 0.0 : rows * 1_000_000_000.0 / elapsedNanos;
+    }
+
+    private <T> T inTransaction(CopyWork<T> work) {
+        try (Session session = HibernateUtil.openSession()) {
+            Transaction transaction = session.beginTransaction();
+            try {
+                T result = session.doReturningWork(connection -> {
+                    try {
+                        return work.execute(connection);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+                transaction.commit();
+                return result;
+            } catch (RuntimeException e) {
+                if (transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            }
+        }
+    }
+
+    @FunctionalInterface
+    private interface CopyWork<T> {
+        T execute(Connection connection) throws SQLException, IOException;
+    }
+
+    // Прогресс считается по переводам строк, проходящим через COPY
+    private class ProgressCounter {
+        private final ProgressListener listener;
+        private final long start;
+        private long lines;
+        private long nextReport = progressInterval;
+
+        ProgressCounter(ProgressListener listener, long start) {
+            this.listener = listener;
+            this.start = start;
+        }
+
+        void count(char[] buffer, int offset, int length) {
+            for (int i = offset; i < offset + length; i++) {
+                if (buffer[i] == '\n' && ++lines >= nextReport) {
+                    nextReport += progressInterval;
+                    if (listener != null) {
+                        listener.onProgress(lines, ratePerSecond(lines, System.nanoTime() - start));
+                    }
+                }
+            }
+        }
+    }
+
+    private class ProgressReader extends FilterReader {
+        private final ProgressCounter counter;
+
+        ProgressReader(Reader in, ProgressListener listener, long start) {
+            super(in);
+            this.counter = new ProgressCounter(listener, start);
+        }
+
+        @Override
+        public int read() throws IOException {
+            char[] one = new char[1];
+            return read(one, 0, 1) == -1 ? -1 : one[0];
+        }
+
+        @Override
+        public int read(char[] buffer, int offset, int length) throws IOException {
+            int read = super.read(buffer, offset, length);
+            if (read > 0) {
+                counter.count(buffer, offset, read);
+            }
+            return read;
+        }
+    }
+
+    private class ProgressWriter extends FilterWriter {
+        private final ProgressCounter counter;
+
+        ProgressWriter(Writer out, ProgressListener listener, long start) {
+            super(out);
+            this.counter = new ProgressCounter(listener, start);
+        }
+
+        @Override
+        public void write(int c) throws IOException {
+            write(new char[]{(char) c}, 0, 1);
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) throws IOException {
+            super.write(buffer, offset, length);
+            counter.count(buffer, offset, length);
+        }
+
+        @Override
+        public void write(String text, int offset, int length) throws IOException {
+            char[] chars = new char[length];
+            text.getChars(offset, offset + length, chars, 0);
+            write(chars, 0, length);
+        }
+    }
+}
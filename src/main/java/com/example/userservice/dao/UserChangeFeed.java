@@ -0,0 +1,261 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.SchemaMigrations;
+import org.hibernate.cfg.AvailableSettings;
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps a {@link UserReplica} in step with the {@code users} table over PostgreSQL {@code LISTEN/NOTIFY}.
+ * <p>
+ * The feed uses one dedicated connection outside the pool. It first runs {@code LISTEN}, then bulk-loads
+ * the table through a cursor. Changes committed during the load queue up on the server and are applied
+ * afterwards; row versions skip the ones the snapshot already contains. The feed also sends itself a
+ * heartbeat notification every {@code heartbeatInterval}. Notifications arrive in commit order, so when
+ * a heartbeat comes back, every change committed before it was sent has been applied. That send time
+ * becomes the replica's freshness mark.
+ * <p>
+ * Postgres does not redeliver notifications to a session that has gone away. So on any connection
+ * error, malformed message or missing heartbeat the replica is marked stale, and the feed reconnects
+ * with backoff and loads the table again from scratch.
+ */
+public class UserChangeFeed implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(UserChangeFeed.class);
+
+    public static final String CHANNEL = "users_changes";
+    private static final String HEARTBEAT = "heartbeat:";
+    private static final int LOAD_FETCH_SIZE = 1000;
+    private static final int MISSED_HEARTBEATS = 3;
+    private static final long MIN_BACKOFF_MILLIS = 100;
+    private static final long MAX_BACKOFF_MILLIS = 30_000;
+
+    private final UserReplica replica;
+    private final String url;
+    private final String username;
+    private final String password;
+    private final long heartbeatNanos;
+    private final Thread thread;
+    private final CompletableFuture<Void> loaded = new CompletableFuture<>();
+    private volatile boolean running = true;
+    private long backoffMillis = MIN_BACKOFF_MILLIS;
+
+    private final LongAdder appliedChanges = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+
+    public UserChangeFeed(UserReplica replica, Map<String, Object> settings, Duration heartbeatInterval) {
+        this.replica = replica;
+        this.url = setting(settings, AvailableSettings.URL);
+        this.username = setting(settings, AvailableSettings.USER);
+        this.password = setting(settings, AvailableSettings.PASS);
+        this.heartbeatNanos = heartbeatInterval.toNanos();
+        this.thread = new Thread(this::run, "user-change-feed");
+        thread.setDaemon(true);
+    }
+
+    public static UserChangeFeed create(UserReplica replica, Duration heartbeatInterval) {
+        return new UserChangeFeed(replica, HibernateUtil.getSettings(), heartbeatInterval);
+    }
+
+    /**
+     * Starts following the table. The future completes once the first bulk load is done, or fails if it
+     * could not be done; after a failed first load the feed stops instead of retrying.
+     */
+    public CompletableFuture<Void> start() {
+        thread.start();
+        return loaded;
+    }
+
+    private void run() {
+        while (running) {
+            try (Connection connection = DriverManager.getConnection(url, username, password)) {
+                follow(connection);
+            } catch (Exception e) {
+                replica.markStale();
+                if (!loaded.isDone()) {
+                    running = false;
+                    loaded.completeExceptionally(e);
+                    return;
+                }
+                if (!running) {
+                    return;
+                }
+                logger.warn("User change feed lost, reloading in {} ms", backoffMillis, e);
+                sleep(backoffMillis);
+                backoffMillis = Math.min(backoffMillis * 2, MAX_BACKOFF_MILLIS);
+            }
+        }
+    }
+
+    private void follow(Connection connection) throws SQLException {
+        PGConnection pg = connection.unwrap(PGConnection.class);
+        int backendPid = pg.getBackendPID();
+        checkTrigger(connection);
+        // Сначала LISTEN, потом снимок: всё, что закоммитят после снимка, придёт уведомлением
+        try (Statement statement = connection.createStatement()) {
+            statement.execute("LISTEN " + CHANNEL);
+        }
+        load(connection);
+        loads.increment();
+        backoffMillis = MIN_BACKOFF_MILLIS;
+        loaded.complete(null);
+
+        // Таймаут 0 в getNotifications означает ждать бесконечно
+        int pollMillis = (int) Math.max(1, TimeUnit.NANOSECONDS.toMillis(heartbeatNanos));
+        long lastSent = heartbeat(connection);
+        long lastSeen = lastSent;
+        while (running) {
+            PGNotification[] notifications = pg.getNotifications(pollMillis);
+            if (notifications != null) {
+                for (PGNotification notification : notifications) {
+                    String payload = notification.getParameter();
+                    if (!payload.startsWith(HEARTBEAT)) {
+                        replica.apply(UserReplica.Change.fromJson(payload));
+                        appliedChanges.increment();
+                    } else if (notification.getPID() == backendPid) {
+                        // Пульс других экземпляров ничего не говорит о нашей очереди
+                        long sentAt = Long.parseLong(payload.substring(HEARTBEAT.length()));
+                        replica.markFresh(sentAt);
+                        lastSeen = System.nanoTime();
+                    }
+                }
+            }
+            long now = System.nanoTime();
+            if (now - lastSeen > MISSED_HEARTBEATS * heartbeatNanos) {
+                throw new SQLException("No heartbeat on " + CHANNEL + " for "
+                        + TimeUnit.NANOSECONDS.toMillis(now - lastSeen) + " ms");
+            }
+            if (now - lastSent >= heartbeatNanos) {
+                lastSent = heartbeat(connection);
+            }
+        }
+    }
+
+    private void checkTrigger(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(
+                     "SELECT 1 FROM pg_trigger WHERE tgname = 'users_notify_change' AND NOT tgisinternal")) {
+            if (!resultSet.next()) {
+                throw new IllegalStateException("Trigger users_notify_change is missing: migration V3 has not been applied, "
+                        + "check that " + SchemaMigrations.ENABLED + " is enabled");
+            }
+        }
+    }
+
+    private void load(Connection connection) throws SQLException {
+        long started = System.nanoTime();
+        // Курсор с fetchSize работает только внутри транзакции
+        connection.setAutoCommit(false);
+        try (Statement statement = connection.createStatement()) {
+            statement.setFetchSize(LOAD_FETCH_SIZE);
+            try (ResultSet resultSet = statement.executeQuery(
+                    "SELECT id, version, age, created_at, name, email FROM users ORDER BY id")) {
+                replica.load(new RowIterator(resultSet));
+            }
+            connection.commit();
+        } catch (RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(true);
+        }
+        logger.info("Loaded {} users into the replica in {} ms", replica.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started));
+    }
+
+    private long heartbeat(Connection connection) throws SQLException {
+        long sentAt = System.nanoTime();
+        try (PreparedStatement statement = connection.prepareStatement("SELECT pg_notify(?, ?)")) {
+            statement.setString(1, CHANNEL);
+            statement.setString(2, HEARTBEAT + sentAt);
+            statement.execute();
+        }
+        return sentAt;
+    }
+
+    public long getAppliedChanges() {
+        return appliedChanges.sum();
+    }
+
+    public long getLoads() {
+        return loads.sum();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        // getNotifications возвращается не позже чем через интервал пульса
+        try {
+            thread.join(TimeUnit.NANOSECONDS.toMillis(heartbeatNanos) * 2 + 1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        replica.markStale();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String setting(Map<String, Object> settings, String key) {
+        Object value = settings.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    private static final class RowIterator implements Iterator<UserReplica.Row> {
+        private final ResultSet resultSet;
+        private Boolean hasNext;
+
+        RowIterator(ResultSet resultSet) {
+            this.resultSet = resultSet;
+        }
+
+        @Override
+        public boolean hasNext() {
+            if (hasNext == null) {
+                try {
+                    hasNext = resultSet.next();
+                } catch (SQLException e) {
+                    throw new IllegalStateException("Failed to read users", e);
+                }
+            }
+            return hasNext;
+        }
+
+        @Override
+        public UserReplica.Row next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            hasNext = null;
+            try {
+                return new UserReplica.Row(resultSet.getLong(1), resultSet.getLong(2), resultSet.getInt(3),
+                        UserReplica.Row.micros(resultSet.getObject(4, LocalDateTime.class)),
+                        resultSet.getString(5), resultSet.getString(6));
+            } catch (SQLException e) {
+                throw new IllegalStateException("Failed to read users", e);
+            }
+        }
+    }
+}
@@ -1,13 +1,52 @@
 package com.example.userservice.dao;
 
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
 import com.example.userservice.entity.User;
+import java.util.Collection;
+import java.time.LocalDate;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 public interface UserDao {
     Optional<User> findById(Long id);
     List<User> findAll();
+    Stream<User> streamAll(int fetchSize);
+    List<User> findPage(Long afterId, int limit);
+    List<UserSummary> findAllSummaries();
+    List<UserSummary> findSummariesPage(Long afterId, int limit);
+    List<User> search(UserSearch search);
+    long count(UserSearch search);
+    Map<Integer, Long> countByAge();
+    Map<LocalDate, Long> countSignupsByDay();
     User save(User user);
+    int saveAll(Iterator<User> users);
+    default int saveAll(Collection<User> users) {
+        return saveAll(users.iterator());
+    }
+    // Вставка или обновление name и age по уникальному email; id в порядке users, повторы email получают один id
+    List<Long> upsertAllByEmail(Collection<User> users);
+    default Long upsertByEmail(User user) {
+        return upsertAllByEmail(List.of(user)).get(0);
+    }
+    // Вне единицы работы - один UPDATE на объект без чтения строки (updateAll - одним батчем). Объект с версией
+    // пишется с её проверкой (StaleObjectStateException) и получает новую версию, без версии - поверх текущей строки
     User update(User user);
+    int updateAll(Collection<User> users);
+    int patch(Long id, UserPatch patch);
     void delete(User user);
+    int deleteById(Long id);
+    int deleteAllById(Collection<Long> ids);
+    // Как update, patch и deleteById, но в той же транзакции сначала блокируют строку (SELECT ... FOR UPDATE)
+    // и возвращают её прежнее состояние. Пустой результат patch и delete - строки нет и ничего не изменено
+    User updateReturningPrevious(User user);
+    Optional<User> patchReturningPrevious(Long id, UserPatch patch);
+    Optional<User> deleteReturningPrevious(Long id);
+    // Как updateAll, но строки каждой порции сначала блокируются одной выборкой; возвращает прежний age
+    // по id каждой найденной строки (удалённые пропускаются, как в updateAll)
+    Map<Long, Integer> updateAllReturningPreviousAges(Collection<User> users);
 }
\ No newline at end of file
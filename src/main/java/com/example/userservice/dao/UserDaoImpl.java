@@ -1,99 +1,924 @@
 package com.example.userservice.dao;
 
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
 import com.example.userservice.entity.User;
+import com.example.userservice.metrics.OperationMetrics;
+import com.example.userservice.util.Deadline;
 import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.UnitOfWork;
+import org.hibernate.CacheMode;
+import org.hibernate.LockMode;
+import org.hibernate.ObjectNotFoundException;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.StatelessSession;
 import org.hibernate.Transaction;
+import org.hibernate.TransactionException;
+import org.hibernate.dialect.PostgreSQL81Dialect;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.jpa.QueryHints;
+import org.hibernate.query.NativeQuery;
+import org.hibernate.query.Query;
+import org.hibernate.type.IntegerType;
+import org.hibernate.type.LongType;
+import org.hibernate.type.StringType;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.sql.Date;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class UserDaoImpl implements UserDao {
     private static final Logger logger = LoggerFactory.getLogger(UserDaoImpl.class);
+    // Ограничение на число параметров в одном IN (...), чтобы не упереться в лимит bind-параметров драйвера
+    private static final int MAX_IN_CLAUSE_SIZE = 1000;
+    // Строк в одном INSERT ... ON CONFLICT: по три параметра на строку, далеко от лимита в 32767.
+    // Порция дополняется пустыми строками до степени двойки, чтобы текстов SQL было не больше одиннадцати
+    private static final int MAX_UPSERT_ROWS = 1024;
+
+    // Неизменившиеся строки не переписываются: ни нового version, ни мёртвой версии строки, ни уведомления в ленту.
+    // Их id добирает вторая ветка UNION по снимку на начало команды. id берутся блоками, как у Hibernate (UserIdBlocks)
+    private static final String UPSERT_ON_CONFLICT =
+            "WITH input (name, email, age) AS (VALUES %s), "
+                    + "numbered AS (SELECT row_number() OVER () - 1 AS n, name, email, age FROM input WHERE email IS NOT NULL), "
+                    + UserIdBlocks.withIds("numbered") + ", "
+                    + "upserted AS (INSERT INTO users (id, name, email, age, created_at, version) "
+                    + "SELECT id, name, email, age, now(), 0 FROM with_ids "
+                    + "ON CONFLICT (email) DO UPDATE SET name = EXCLUDED.name, age = EXCLUDED.age, version = users.version + 1 "
+                    + "WHERE (users.name, users.age) IS DISTINCT FROM (EXCLUDED.name, EXCLUDED.age) "
+                    + "RETURNING id, email) "
+                    + "SELECT id, email FROM upserted "
+                    + "UNION ALL "
+                    + "SELECT u.id, u.email FROM users u JOIN numbered i ON u.email = i.email "
+                    + "WHERE NOT EXISTS (SELECT 1 FROM upserted x WHERE x.email = i.email)";
+
+    // updateAll вне единицы работы: JDBC-батч по порции без чтения строк; с версией объекта - с её проверкой
+    private static final String OVERWRITE = "UPDATE users SET name = ?, email = ?, age = ?, version = version + 1 WHERE id = ?";
+    private static final String OVERWRITE_IF_VERSION = OVERWRITE + " AND version = ?";
+    // Порядок по id: параллельные батчи берут блокировки в одном порядке и не ждут друг друга по кругу
+    private static final String LOCK_AGES = "SELECT id, age FROM users WHERE id IN (:ids) ORDER BY id FOR UPDATE";
+
+    private final UserDaoSettings settings;
+    // Статистика общая для всех DAO (JMX), порог медленных операций - из настроек этого экземпляра
+    private final OperationMetrics metrics;
+
+    public UserDaoImpl() {
+        this(UserDaoSettings.defaults());
+    }
+
+    public UserDaoImpl(UserDaoSettings settings) {
+        this.settings = settings;
+        this.metrics = OperationMetrics.forComponent("UserDao").withSlowThreshold(settings.getSlowOperationThreshold());
+    }
 
     @Override
     public Optional<User> findById(Long id) {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
-            User user = session.get(User.class, id);
-            transaction.commit();
-            return Optional.ofNullable(user);
-        } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
-            }
-            logger.error("Error finding user by id: {}", id, e);
-            return Optional.empty();
-        }
+        User user = readOrElse("findById", null, session -> session instanceof StatelessSession
+                ? (User) ((StatelessSession) session).get(User.class, id)
+                : ((Session) session).get(User.class, id));
+        return Optional.ofNullable(user);
     }
 
     @Override
     public List<User> findAll() {
+        return readOrElse("findAll", List.of(), session -> session.createNamedQuery(User.FIND_ALL, User.class).list());
+    }
+
+    @Override
+    public Stream<User> streamAll(int fetchSize) {
+        if (fetchSize <= 0) {
+            throw new IllegalArgumentException("fetchSize must be positive: " + fetchSize);
+        }
+        // Замеряется только открытие курсора: чтение идёт уже на стороне вызывающего
+        Duration budget = budget("streamAll");
+        return metrics.time("streamAll", () -> withTimeouts("streamAll", budget, () -> openStream(fetchSize, budget)));
+    }
+
+    // Бюджет действует на каждый FETCH курсора отдельно, а не на весь поток: поток живёт, пока его читают
+    private Stream<User> openStream(int fetchSize, Duration budget) {
+        Optional<Session> bound = UnitOfWork.currentSession();
+        if (bound.isPresent()) {
+            applyUnitOfWorkTimeouts(bound.get(), "streamAll", budget);
+            // Внутри единицы работы сессию не чистим и не закрываем: она принадлежит UnitOfWork
+            ScrollableResults results = bound.get().createNamedQuery(User.FIND_ORDERED, User.class)
+                    .setFetchSize(fetchSize)
+                    .scroll(ScrollMode.FORWARD_ONLY);
+            return StreamSupport.stream(new ScrollSpliterator(null, results, fetchSize), false)
+                    .onClose(results::close);
+        }
+        SharedSessionContract session = openReadSession();
         Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
+        try {
+            // Курсор PostgreSQL работает только внутри открытой транзакции
             transaction = session.beginTransaction();
-            List<User> users = session.createQuery("from User", User.class).list();
-            transaction.commit();
-            return users;
-        } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
+            applyTimeouts(session, "streamAll", budget);
+            Query<User> query = session.createNamedQuery(User.FIND_ORDERED, User.class)
+                    .setFetchSize(fetchSize);
+            if (session instanceof Session) {
+                query.setReadOnly(true).setCacheMode(CacheMode.IGNORE);
             }
-            logger.error("Error finding all users", e);
-            return List.of();
+            ScrollableResults results = query.scroll(ScrollMode.FORWARD_ONLY);
+            Transaction streamTransaction = transaction;
+            return StreamSupport.stream(new ScrollSpliterator(session, results, fetchSize), false)
+                    .onClose(() -> {
+                        try {
+                            results.close();
+                            if (streamTransaction.isActive()) {
+                                streamTransaction.commit();
+                            }
+                        } finally {
+                            session.close();
+                        }
+                    });
+        } catch (RuntimeException e) {
+            rollback(transaction, e);
+            session.close();
+            throw e;
         }
     }
 
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        return readOrElse("findPage", List.of(), session -> {
+            Query<User> query;
+            if (afterId == null) {
+                query = session.createNamedQuery(User.FIND_ORDERED, User.class);
+            } else {
+                query = session.createNamedQuery(User.FIND_AFTER, User.class)
+                        .setParameter("afterId", afterId);
+            }
+            if (session instanceof Session && !UnitOfWork.isActive()) {
+                query.setReadOnly(true);
+            }
+            return query.setMaxResults(limit).list();
+        });
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        return readOrElse("findAllSummaries", List.of(), session -> session.createNamedQuery(User.SUMMARIES, UserSummary.class).list());
+    }
+
+    @Override
+    public List<UserSummary> findSummariesPage(Long afterId, int limit) {
+        return readOrElse("findSummariesPage", List.of(), session -> {
+            Query<UserSummary> query;
+            if (afterId == null) {
+                query = session.createNamedQuery(User.SUMMARIES, UserSummary.class);
+            } else {
+                query = session.createNamedQuery(User.SUMMARIES_AFTER, UserSummary.class)
+                        .setParameter("afterId", afterId);
+            }
+            return query.setMaxResults(limit).list();
+        });
+    }
+
+    @Override
+    public List<User> search(UserSearch search) {
+        UserSearchQuery query = UserSearchQuery.page(search);
+        return readOrElse("search", List.of(), session -> {
+            Query<User> hql = query.bind(session.createQuery(query.listHql(), User.class));
+            if (session instanceof Session && !UnitOfWork.isActive()) {
+                hql.setReadOnly(true);
+            }
+            return hql.setMaxResults(search.getLimit()).list();
+        });
+    }
+
+    @Override
+    public long count(UserSearch search) {
+        UserSearchQuery query = UserSearchQuery.count(search);
+        return read("count", session -> query.bind(session.createQuery(query.countHql(), Long.class)).uniqueResult());
+    }
+
+    // Агрегаты считает БД: наружу уходит по строке на возраст, а не вся таблица
+    @Override
+    public Map<Integer, Long> countByAge() {
+        return read("countByAge", session -> {
+            Map<Integer, Long> counts = new HashMap<>();
+            for (Object[] row : session.createNamedQuery(User.COUNT_BY_AGE, Object[].class).list()) {
+                counts.put((Integer) row[0], (Long) row[1]);
+            }
+            return counts;
+        });
+    }
+
+    @Override
+    public Map<LocalDate, Long> countSignupsByDay() {
+        return read("countSignupsByDay", session -> {
+            Map<LocalDate, Long> counts = new HashMap<>();
+            for (Object[] row : session.createNamedQuery(User.COUNT_SIGNUPS_BY_DAY, Object[].class).list()) {
+                counts.put(((Date) row[0]).toLocalDate(), (Long) row[1]);
+            }
+            return counts;
+        });
+    }
+
     @Override
     public User save(User user) {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
+        return inTransaction("save", session -> {
             session.save(user);
-            transaction.commit();
             return user;
-        } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
+        });
+    }
+
+    @Override
+    public int saveAll(Iterator<User> users) {
+        Duration budget = budget("saveAll");
+        return metrics.time("saveAll", () -> withTimeouts("saveAll", budget, () -> saveInChunks(users, budget)));
+    }
+
+    // Бюджет saveAll - на одну порцию (commitInterval строк), а не на весь импорт
+    private int saveInChunks(Iterator<User> users, Duration budget) {
+        Optional<Session> bound = UnitOfWork.currentSession();
+        if (bound.isPresent()) {
+            applyUnitOfWorkTimeouts(bound.get(), "saveAll", budget);
+            return saveInUnitOfWork(bound.get(), users);
+        }
+        int batchSize = settings.getBatchSize();
+        int commitInterval = Math.max(settings.getCommitInterval(), batchSize);
+        int saved = 0;
+        try (Session session = HibernateUtil.openSession()) {
+            session.setJdbcBatchSize(batchSize);
+            while (users.hasNext()) {
+                // Каждая порция коммитится отдельно: при ошибке откатывается только текущая порция
+                Transaction transaction = begin(session, "saveAll", budget);
+                int inChunk = 0;
+                try {
+                    while (inChunk < commitInterval && users.hasNext()) {
+                        session.save(users.next());
+                        inChunk++;
+                        if (inChunk % batchSize == 0) {
+                            session.flush();
+                            session.clear();
+                        }
+                    }
+                    transaction.commit();
+                } catch (RuntimeException e) {
+                    rollback(transaction, e);
+                    logger.error("Error saving users batch after {} saved", saved, e);
+                    throw e;
+                }
+                session.clear();
+                saved += inChunk;
             }
-            logger.error("Error saving user: {}", user, e);
-            throw e;
         }
+        return saved;
+    }
+
+    @Override
+    public List<Long> upsertAllByEmail(Collection<User> users) {
+        if (users.isEmpty()) {
+            return List.of();
+        }
+        // Повтор email внутри вызова: побеждает последнее вхождение,
+        // ON CONFLICT DO UPDATE не может изменить одну строку дважды за команду
+        Map<String, User> latest = new LinkedHashMap<>();
+        for (User user : users) {
+            if (user.getEmail() == null) {
+                throw new IllegalArgumentException("Cannot upsert user without email: " + user);
+            }
+            latest.put(user.getEmail(), user);
+        }
+        Map<String, Long> ids = inTransaction("upsertAllByEmail", session -> isPostgreSQL(session)
+                ? upsertOnConflict(session, new ArrayList<>(latest.values()))
+                : upsertByLookup(session, new ArrayList<>(latest.values())));
+        List<Long> result = new ArrayList<>(users.size());
+        for (User user : users) {
+            result.add(ids.get(user.getEmail()));
+        }
+        return result;
+    }
+
+    // Одна команда на порцию, id вставленных и изменённых строк приходят в RETURNING.
+    // Уже загруженные в сессию единицы работы сущности не обновляются, как и при patch
+    private static Map<String, Long> upsertOnConflict(Session session, List<User> users) {
+        Map<String, Long> ids = new HashMap<>();
+        for (int from = 0; from < users.size(); from += MAX_UPSERT_ROWS) {
+            List<User> chunk = users.subList(from, Math.min(from + MAX_UPSERT_ROWS, users.size()));
+            List<User> remaining = chunk;
+            // Строку без изменений, вставленную параллельно уже после снимка команды, не вернёт ни одна из веток
+            // запроса; следующая команда видит её в новом снимке
+            for (int attempt = 0; !remaining.isEmpty(); attempt++) {
+                if (attempt == 3) {
+                    throw new IllegalStateException("Upsert did not resolve ids for " + remaining.size() + " emails");
+                }
+                int rows = paddedUpsertRows(remaining.size());
+                StringJoiner values = new StringJoiner(", ");
+                for (int i = 0; i < rows; i++) {
+                    values.add("(?, ?, ?)");
+                }
+                NativeQuery<?> query = session.createNativeQuery(String.format(UPSERT_ON_CONFLICT, values))
+                        .addScalar("id", LongType.INSTANCE)
+                        .addScalar("email", StringType.INSTANCE)
+                        .addSynchronizedEntityClass(User.class);
+                // Типы заданы явно: пустые строки дополнения передаются как NULL
+                int position = 1;
+                for (int i = 0; i < rows; i++) {
+                    User user = i < remaining.size() ? remaining.get(i) : null;
+                    query.setParameter(position++, user == null ? null : user.getName(), StringType.INSTANCE);
+                    query.setParameter(position++, user == null ? null : user.getEmail(), StringType.INSTANCE);
+                    query.setParameter(position++, user == null ? null : user.getAge(), IntegerType.INSTANCE);
+                }
+                for (Object row : query.list()) {
+                    Object[] columns = (Object[]) row;
+                    ids.put((String) columns[1], (Long) columns[0]);
+                }
+                List<User> unresolved = new ArrayList<>();
+                for (User user : remaining) {
+                    if (!ids.containsKey(user.getEmail())) {
+                        unresolved.add(user);
+                    }
+                }
+                remaining = unresolved;
+            }
+        }
+        return ids;
+    }
+
+    static int paddedUpsertRows(int rows) {
+        return rows <= 1 ? 1 : Integer.highestOneBit(rows - 1) << 1;
+    }
+
+    // Другие СУБД (H2 в тестах): поиск по email, затем insert или update в той же транзакции.
+    // Параллельная вставка того же email здесь приведёт к нарушению уникальности
+    private Map<String, Long> upsertByLookup(Session session, List<User> users) {
+        Map<String, Long> ids = new HashMap<>();
+        for (int from = 0; from < users.size(); from += MAX_IN_CLAUSE_SIZE) {
+            List<User> chunk = users.subList(from, Math.min(from + MAX_IN_CLAUSE_SIZE, users.size()));
+            List<String> emails = new ArrayList<>(chunk.size());
+            chunk.forEach(user -> emails.add(user.getEmail()));
+            Map<String, User> existing = new HashMap<>();
+            for (User user : session.createNamedQuery(User.FIND_BY_EMAILS, User.class)
+                    .setParameterList("emails", emails)
+                    .list()) {
+                existing.put(user.getEmail(), user);
+            }
+            for (User user : chunk) {
+                User current = existing.get(user.getEmail());
+                if (current == null) {
+                    current = new User();
+                    current.setName(user.getName());
+                    current.setEmail(user.getEmail());
+                    current.setAge(user.getAge());
+                    session.save(current);
+                } else if (!Objects.equals(current.getName(), user.getName()) || !Objects.equals(current.getAge(), user.getAge())) {
+                    // Управляемая сущность: UPDATE и новый version при flush
+                    current.setName(user.getName());
+                    current.setAge(user.getAge());
+                }
+                ids.put(user.getEmail(), current.getId());
+            }
+            session.flush();
+            if (!UnitOfWork.isActive()) {
+                session.clear();
+            }
+        }
+        return ids;
     }
 
     @Override
     public User update(User user) {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
-            session.update(user);
-            transaction.commit();
-            return user;
-        } catch (Exception e) {
-            if (transaction != null) {
-                transaction.rollback();
+        if (UnitOfWork.isActive()) {
+            // Управляемая сущность сохранится dirty checking'ом при commit, отсоединённая - через merge
+            return inTransaction("update", session -> session.contains(user) ? user : (User) session.merge(user));
+        }
+        inTransaction("update", session -> {
+            // Один UPDATE без чтения строки: запрос patch по всем полям
+            Query<?> query = session.createNamedQuery(User.patchQuery(true, true, true, user.getVersion() != null))
+                    .setParameter("id", user.getId())
+                    .setParameter("name", user.getName())
+                    .setParameter("email", user.getEmail())
+                    .setParameter("age", user.getAge());
+            if (user.getVersion() != null) {
+                query.setParameter("version", user.getVersion());
             }
-            logger.error("Error updating user: {}", user, e);
-            throw e;
+            if (query.executeUpdate() == 0) {
+                checkNotStale(session, user);
+                throw new ObjectNotFoundException(user.getId(), User.class.getName());
+            }
+            return null;
+        });
+        // Записанная с проверкой версия после commit на единицу больше - объект получает её для следующего update
+        if (user.getVersion() != null) {
+            user.setVersion(user.getVersion() + 1);
         }
+        return user;
+    }
+
+    // Ноль строк при версии объекта: либо строку удалили, либо её уже изменили - различаем вторым запросом
+    private static void checkNotStale(Session session, User user) {
+        if (user.getVersion() != null && exists(session, user.getId())) {
+            throw new StaleObjectStateException(User.class.getName(), user.getId());
+        }
+    }
+
+    @Override
+    public User updateReturningPrevious(User user) {
+        return inTransaction("update", session -> {
+            User current = session.get(User.class, user.getId(), LockMode.PESSIMISTIC_WRITE);
+            if (current == null) {
+                throw new ObjectNotFoundException(user.getId(), User.class.getName());
+            }
+            // Строка уже заблокирована и прочитана: версия сверяется с ней без лишнего запроса
+            if (user.getVersion() != null && !user.getVersion().equals(current.getVersion())) {
+                throw new StaleObjectStateException(User.class.getName(), user.getId());
+            }
+            User previous = current.copy();
+            current.setName(user.getName());
+            current.setEmail(user.getEmail());
+            current.setAge(user.getAge());
+            session.flush();
+            user.setVersion(current.getVersion());
+            return previous;
+        });
+    }
+
+    @Override
+    public int updateAll(Collection<User> users) {
+        return overwriteAll(users, null);
+    }
+
+    @Override
+    public Map<Long, Integer> updateAllReturningPreviousAges(Collection<User> users) {
+        Map<Long, Integer> previousAges = new HashMap<>();
+        overwriteAll(users, previousAges);
+        return previousAges;
+    }
+
+    // previousAges - если не null, строки каждой порции сначала блокируются одной выборкой, и туда пишется их прежний age
+    private int overwriteAll(Collection<User> users, Map<Long, Integer> previousAges) {
+        if (users.isEmpty()) {
+            return 0;
+        }
+        int batchSize = settings.getBatchSize();
+        List<User> versioned = new ArrayList<>();
+        int result = inTransaction("updateAll", session -> {
+            if (UnitOfWork.isActive()) {
+                session.setJdbcBatchSize(batchSize);
+                if (previousAges != null) {
+                    List<User> all = new ArrayList<>(users);
+                    for (int from = 0; from < all.size(); from += batchSize) {
+                        lockPreviousAges(session, all.subList(from, Math.min(from + batchSize, all.size())), previousAges);
+                    }
+                }
+                for (User user : users) {
+                    if (!session.contains(user)) {
+                        session.merge(user);
+                    }
+                }
+                return users.size();
+            }
+            int updated = 0;
+            List<User> chunk = new ArrayList<>(batchSize);
+            for (User user : users) {
+                chunk.add(user);
+                if (chunk.size() == batchSize) {
+                    updated += overwriteChunk(session, chunk, versioned, previousAges);
+                    chunk.clear();
+                }
+            }
+            if (!chunk.isEmpty()) {
+                updated += overwriteChunk(session, chunk, versioned, previousAges);
+            }
+            return updated;
+        });
+        versioned.forEach(user -> user.setVersion(user.getVersion() + 1));
+        return result;
+    }
+
+    // Один батч на порцию. Строка без версии переписывается поверх текущей (write-behind), удалённые пропускаются;
+    // строка с версией, которую уже изменили, откатывает всю транзакцию. Записанные с версией попадают в versioned
+    private static int overwriteChunk(Session session, List<User> chunk, List<User> versioned,
+                                      Map<Long, Integer> previousAges) {
+        if (previousAges != null) {
+            lockPreviousAges(session, chunk, previousAges);
+        }
+        int[] counts = session.doReturningWork(connection -> {
+            try (PreparedStatement overwrite = connection.prepareStatement(OVERWRITE);
+                 PreparedStatement overwriteIfVersion = connection.prepareStatement(OVERWRITE_IF_VERSION)) {
+                int plainRows = 0;
+                for (User user : chunk) {
+                    PreparedStatement statement = user.getVersion() == null ? overwrite : overwriteIfVersion;
+                    statement.setString(1, user.getName());
+                    statement.setString(2, user.getEmail());
+                    statement.setInt(3, user.getAge());
+                    statement.setLong(4, user.getId());
+                    if (user.getVersion() != null) {
+                        statement.setLong(5, user.getVersion());
+                    } else {
+                        plainRows++;
+                    }
+                    statement.addBatch();
+                }
+                int[] plainCounts = plainRows > 0 ? overwrite.executeBatch() : new int[0];
+                int[] versionedCounts = plainRows < chunk.size() ? overwriteIfVersion.executeBatch() : new int[0];
+                // Счётчики в порядке chunk
+                int[] merged = new int[chunk.size()];
+                for (int i = 0, p = 0, v = 0; i < chunk.size(); i++) {
+                    merged[i] = chunk.get(i).getVersion() == null ? plainCounts[p++] : versionedCounts[v++];
+                }
+                return merged;
+            }
+        });
+        int updated = 0;
+        for (int i = 0; i < chunk.size(); i++) {
+            User user = chunk.get(i);
+            if (counts[i] == 0) {
+                checkNotStale(session, user);
+                continue;
+            }
+            if (user.getVersion() != null) {
+                versioned.add(user);
+            }
+            updated++;
+        }
+        return updated;
+    }
+
+    private static void lockPreviousAges(Session session, List<User> chunk, Map<Long, Integer> previousAges) {
+        List<Long> ids = new ArrayList<>(chunk.size());
+        chunk.forEach(user -> ids.add(user.getId()));
+        NativeQuery<?> query = session.createNativeQuery(LOCK_AGES)
+                .addScalar("id", LongType.INSTANCE)
+                .addScalar("age", IntegerType.INSTANCE)
+                .setParameterList("ids", ids);
+        for (Object row : query.list()) {
+            Object[] columns = (Object[]) row;
+            previousAges.put((Long) columns[0], (Integer) columns[1]);
+        }
+    }
+
+    @Override
+    public int patch(Long id, UserPatch patch) {
+        checkNotEmpty(id, patch);
+        return inTransaction("patch", session -> executePatch(session, id, patch));
+    }
+
+    @Override
+    public Optional<User> patchReturningPrevious(Long id, UserPatch patch) {
+        checkNotEmpty(id, patch);
+        return inTransaction("patch", session -> {
+            User current = session.get(User.class, id, LockMode.PESSIMISTIC_WRITE);
+            if (current == null) {
+                return Optional.empty();
+            }
+            User previous = current.copy();
+            // Сущность в сессии после UPDATE-запроса устарела: вне единицы работы сессия закрывается, в ней - обновляем
+            int updated = executePatch(session, id, patch);
+            if (UnitOfWork.isActive()) {
+                session.refresh(current);
+            }
+            return updated > 0 ? Optional.of(previous) : Optional.empty();
+        });
+    }
+
+    private static void checkNotEmpty(Long id, UserPatch patch) {
+        if (patch.isEmpty()) {
+            throw new IllegalArgumentException("Patch has no changes for user: " + id);
+        }
+    }
+
+    private static int executePatch(Session session, Long id, UserPatch patch) {
+        // UPDATE только по переданным колонкам; запрос на этот набор полей скомпилирован при старте
+        Query<?> query = session.createNamedQuery(User.patchQuery(patch.getName() != null, patch.getEmail() != null,
+                        patch.getAge() != null, patch.getExpectedVersion() != null))
+                .setParameter("id", id);
+        if (patch.getName() != null) {
+            query.setParameter("name", patch.getName());
+        }
+        if (patch.getEmail() != null) {
+            query.setParameter("email", patch.getEmail());
+        }
+        if (patch.getAge() != null) {
+            query.setParameter("age", patch.getAge());
+        }
+        if (patch.getExpectedVersion() != null) {
+            query.setParameter("version", patch.getExpectedVersion());
+        }
+        int updated = query.executeUpdate();
+        // Ноль строк при заданной версии: либо пользователя нет, либо его уже изменили - различаем вторым запросом
+        if (updated == 0 && patch.getExpectedVersion() != null && exists(session, id)) {
+            throw new StaleObjectStateException(User.class.getName(), id);
+        }
+        return updated;
     }
 
     @Override
     public void delete(User user) {
-        Transaction transaction = null;
-        try (Session session = HibernateUtil.getSessionFactory().openSession()) {
-            transaction = session.beginTransaction();
-            session.delete(user);
-            transaction.commit();
-        } catch (Exception e) {
-            if (transaction != null) {
+        inTransaction("delete", session -> {
+            session.delete(UnitOfWork.isActive() && !session.contains(user) ? session.merge(user) : user);
+            return null;
+        });
+    }
+
+    @Override
+    public int deleteById(Long id) {
+        return inTransaction("deleteById", session -> session.createNamedQuery(User.DELETE_BY_ID)
+                .setParameter("id", id)
+                .executeUpdate());
+    }
+
+    @Override
+    public Optional<User> deleteReturningPrevious(Long id) {
+        return inTransaction("deleteById", session -> {
+            User current = session.get(User.class, id, LockMode.PESSIMISTIC_WRITE);
+            if (current == null) {
+                return Optional.empty();
+            }
+            session.delete(current);
+            session.flush();
+            return Optional.of(current.copy());
+        });
+    }
+
+    @Override
+    public int deleteAllById(Collection<Long> ids) {
+        if (ids.isEmpty()) {
+            return 0;
+        }
+        return inTransaction("deleteAllById", session -> {
+            int deleted = 0;
+            List<Long> idList = new ArrayList<>(ids);
+            for (int from = 0; from < idList.size(); from += MAX_IN_CLAUSE_SIZE) {
+                List<Long> chunk = idList.subList(from, Math.min(from + MAX_IN_CLAUSE_SIZE, idList.size()));
+                deleted += session.createNamedQuery(User.DELETE_BY_IDS)
+                        .setParameterList("ids", chunk)
+                        .executeUpdate();
+            }
+            return deleted;
+        });
+    }
+
+    private <T> T inTransaction(String operation, Function<Session, T> work) {
+        Duration budget = budget(operation);
+        return metrics.time(operation, () -> withTimeouts(operation, budget, () -> {
+            Optional<Session> bound = UnitOfWork.currentSession();
+            if (bound.isPresent()) {
+                applyUnitOfWorkTimeouts(bound.get(), operation, budget);
+                return work.apply(bound.get());
+            }
+            try (Session session = HibernateUtil.openSession()) {
+                // Откат внутри try-with-resources: после закрытия сессии rollback уже невозможен
+                Transaction transaction = begin(session, operation, budget);
+                try {
+                    T result = work.apply(session);
+                    transaction.commit();
+                    return result;
+                } catch (RuntimeException e) {
+                    rollback(transaction, e);
+                    throw e;
+                }
+            }
+        }));
+    }
+
+    // Бюджет операции из настроек, урезанный оставшимся временем Deadline потока; null - без ограничения
+    private Duration budget(String operation) {
+        Duration configured = settings.timeoutFor(operation);
+        Optional<Duration> remaining = Deadline.remaining();
+        if (remaining.isPresent() && (configured == null || remaining.get().compareTo(configured) < 0)) {
+            return remaining.get();
+        }
+        return configured;
+    }
+
+    // Hibernate выставляет каждому statement JDBC query timeout по остатку времени транзакции (с точностью до секунды)
+    private Transaction begin(SharedSessionContract session, String operation, Duration budget) {
+        Transaction transaction = session.getTransaction();
+        if (budget != null) {
+            checkNotExpired(operation, budget);
+            transaction.setTimeout((int) Math.max(1, (budget.toMillis() + 999) / 1000));
+        }
+        transaction.begin();
+        try {
+            applyTimeouts(session, operation, budget);
+        } catch (RuntimeException e) {
+            rollback(transaction, e);
+            throw e;
+        }
+        return transaction;
+    }
+
+    // Бюджет по умолчанию держит JDBC query timeout (таймаут транзакции из begin) без лишнего запроса к БД.
+    // Серверные statement_timeout/lock_timeout до конца транзакции ставятся, только когда бюджет операции
+    // (переопределение или Deadline) или lock_timeout отличаются от него
+    private void applyTimeouts(SharedSessionContract session, String operation, Duration budget) {
+        if (budget == null) {
+            return;
+        }
+        checkNotExpired(operation, budget);
+        Duration lockTimeout = settings.getLockTimeout();
+        boolean shorterLock = lockTimeout != null && lockTimeout.compareTo(budget) < 0;
+        if ((budget.equals(settings.getOperationTimeout()) && !shorterLock) || !isPostgreSQL(session)) {
+            return;
+        }
+        long statementMillis = Math.max(1, budget.toMillis());
+        long lockMillis = shorterLock ? Math.max(1, lockTimeout.toMillis()) : statementMillis;
+        session.doWork(connection -> {
+            try (PreparedStatement statement = connection.prepareStatement(
+                    "SELECT set_config('statement_timeout', ?, true), set_config('lock_timeout', ?, true)")) {
+                statement.setString(1, statementMillis + "ms");
+                statement.setString(2, lockMillis + "ms");
+                statement.execute();
+            }
+        });
+    }
+
+    // Транзакцию единицы работы открывал UnitOfWork без таймаута: бюджет уходит в запросы подсказкой JPA
+    private void applyUnitOfWorkTimeouts(Session session, String operation, Duration budget) {
+        if (budget != null) {
+            checkNotExpired(operation, budget);
+            session.setProperty(QueryHints.SPEC_HINT_TIMEOUT, (int) Math.min(Integer.MAX_VALUE, budget.toMillis()));
+        }
+        applyTimeouts(session, operation, budget);
+    }
+
+    private static boolean isPostgreSQL(SharedSessionContract session) {
+        return ((SharedSessionContractImplementor) session).getJdbcServices().getDialect() instanceof PostgreSQL81Dialect;
+    }
+
+    // Ошибка отката (например, пул уже закрыл соединение после таймаута) не должна подменять исходную
+    private static void rollback(Transaction transaction, RuntimeException cause) {
+        try {
+            if (transaction != null && transaction.isActive()) {
                 transaction.rollback();
             }
-            logger.error("Error deleting user: {}", user, e);
+        } catch (RuntimeException e) {
+            cause.addSuppressed(e);
+        }
+    }
+
+    private static void checkNotExpired(String operation, Duration budget) {
+        if (budget.isNegative() || budget.isZero()) {
+            throw new UserDaoTimeoutException(operation, UserDaoTimeoutException.Reason.DEADLINE_EXPIRED, budget, null);
+        }
+    }
+
+    // Таймаут приходит от драйвера в виде SQLState внутри исключений Hibernate - вызывающему отдаём один тип.
+    // Остальные ошибки пишутся в лог здесь же, один раз на операцию
+    private static <T> T withTimeouts(String operation, Duration budget, Supplier<T> work) {
+        long start = System.nanoTime();
+        try {
+            return work.get();
+        } catch (UserDaoTimeoutException e) {
+            logger.warn("{}", e.getMessage());
+            throw e;
+        } catch (RuntimeException e) {
+            UserDaoTimeoutException.Reason reason = timeoutReason(e);
+            // Hibernate бросает TransactionException, если таймаут транзакции кончился до очередного statement
+            if (reason == null && e instanceof TransactionException && budget != null
+                    && System.nanoTime() - start >= budget.toNanos()) {
+                reason = UserDaoTimeoutException.Reason.DEADLINE_EXPIRED;
+            }
+            if (reason == null) {
+                logger.error("UserDao.{} failed", operation, e);
+                throw e;
+            }
+            UserDaoTimeoutException timeout = new UserDaoTimeoutException(operation, reason, budget, e);
+            logger.warn("{}", timeout.getMessage());
+            throw timeout;
+        }
+    }
+
+    private static UserDaoTimeoutException.Reason timeoutReason(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof SQLException) {
+                String state = ((SQLException) cause).getSQLState();
+                // 57014 - query_canceled (statement_timeout или JDBC query timeout), 55P03 - lock_not_available,
+                // HYT00 - таймаут блокировки в H2
+                if ("57014".equals(state)) {
+                    return UserDaoTimeoutException.Reason.STATEMENT_TIMEOUT;
+                }
+                if ("55P03".equals(state) || "HYT00".equals(state)) {
+                    return UserDaoTimeoutException.Reason.LOCK_TIMEOUT;
+                }
+            }
+        }
+        return null;
+    }
+
+    // Списочные чтения и findById отдают пустой результат вместо ошибки, но не вместо таймаута
+    private <T> T readOrElse(String operation, T fallback, Function<SharedSessionContract, T> work) {
+        try {
+            return read(operation, work);
+        } catch (UserDaoTimeoutException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            return fallback;
+        }
+    }
+
+    private <T> T read(String operation, Function<SharedSessionContract, T> work) {
+        Duration budget = budget(operation);
+        return metrics.time(operation, () -> withTimeouts(operation, budget, () -> {
+            Optional<Session> bound = UnitOfWork.currentSession();
+            if (bound.isPresent()) {
+                applyUnitOfWorkTimeouts(bound.get(), operation, budget);
+                return work.apply(bound.get());
+            }
+            SharedSessionContract session = openReadSession();
+            Transaction transaction = null;
+            try {
+                transaction = begin(session, operation, budget);
+                T result = work.apply(session);
+                transaction.commit();
+                return result;
+            } catch (RuntimeException e) {
+                rollback(transaction, e);
+                throw e;
+            } finally {
+                session.close();
+            }
+        }));
+    }
+
+    private static boolean exists(Session session, Long id) {
+        return session.createNamedQuery(User.EXISTS_BY_ID, Long.class)
+                .setParameter("id", id)
+                .uniqueResultOptional()
+                .isPresent();
+    }
+
+    // Внутри единицы работы: без промежуточных commit и без clear, чтобы не отсоединить уже загруженные сущности
+    private int saveInUnitOfWork(Session session, Iterator<User> users) {
+        int saved = 0;
+        while (users.hasNext()) {
+            session.save(users.next());
+            if (++saved % settings.getBatchSize() == 0) {
+                session.flush();
+            }
+        }
+        return saved;
+    }
+
+    // В режиме readOnlyReads чтение идёт через StatelessSession (без persistence context, снимков и flush)
+    // в read-only JDBC-транзакции; иначе через обычную Session, как раньше.
+    // Если настроены реплики, чтение уходит на них (см. ReplicaRouter)
+    private SharedSessionContract openReadSession() {
+        if (!settings.isReadOnlyReads()) {
+            return HibernateUtil.openReadSession();
+        }
+        StatelessSession session = HibernateUtil.openReadStatelessSession();
+        try {
+            session.doWork(connection -> connection.setReadOnly(true));
+        } catch (RuntimeException e) {
+            session.close();
             throw e;
         }
+        return session;
+    }
+
+    // Отдаёт строки из серверного курсора и очищает сессию каждые fetchSize строк,
+    // чтобы persistence context не рос вместе с таблицей
+    private static class ScrollSpliterator extends Spliterators.AbstractSpliterator<User> {
+        private final SharedSessionContract session;
+        private final ScrollableResults results;
+        private final int fetchSize;
+        private long count;
+
+        ScrollSpliterator(SharedSessionContract session, ScrollableResults results, int fetchSize) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.session = session;
+            this.results = results;
+            this.fetchSize = fetchSize;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super User> action) {
+            if (!results.next()) {
+                return false;
+            }
+            action.accept((User) results.get(0));
+            if (++count % fetchSize == 0 && session instanceof Session) {
+                ((Session) session).clear();
+            }
+            return true;
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,48 @@
+package com.example.userservice.dao;
+
+import lombok.Builder;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Map;
+
+@Value
+@Builder
+public class UserDaoSettings {
+    // Размер JDBC-батча при массовой вставке (flush + clear после каждого батча)
+    @Builder.Default
+    int batchSize = 50;
+
+    // Сколько строк вставляется в одной транзакции при saveAll
+    @Builder.Default
+    int commitInterval = 1000;
+
+    // Чтения через StatelessSession в read-only транзакции; false - прежний путь через обычную Session
+    @Builder.Default
+    boolean readOnlyReads = true;
+
+    // Операции DAO дольше порога пишутся в лог com.example.userservice.SLOW
+    @Builder.Default
+    Duration slowOperationThreshold = Duration.ofMillis(500);
+
+    // Бюджет одной операции DAO через JDBC query timeout, без лишних запросов к БД; null - без ограничения
+    @Builder.Default
+    Duration operationTimeout = Duration.ofSeconds(10);
+
+    // Бюджеты отдельных операций по их имени в OperationMetrics, например "findAll";
+    // в PostgreSQL они, как и Deadline, ставятся ещё и statement_timeout (отдельный запрос на транзакцию)
+    @Builder.Default
+    Map<String, Duration> operationTimeouts = Map.of();
+
+    // Сколько ждать блокировку строки (lock_timeout, отдельный запрос на транзакцию в PostgreSQL);
+    // null - ожидание ограничено только бюджетом операции
+    Duration lockTimeout;
+
+    public Duration timeoutFor(String operation) {
+        return operationTimeouts.getOrDefault(operation, operationTimeout);
+    }
+
+    public static UserDaoSettings defaults() {
+        return builder().build();
+    }
+}
@@ -0,0 +1,40 @@
+package com.example.userservice.dao;
+
+import java.time.Duration;
+
+/**
+ * A DAO operation ran out of its time budget: the database cancelled the statement
+ * ({@code statement_timeout} or the JDBC query timeout), gave up waiting for a row lock
+ * ({@code lock_timeout}), or the caller's {@link com.example.userservice.util.Deadline} had
+ * already expired before the operation started.
+ */
+public class UserDaoTimeoutException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public enum Reason {
+        STATEMENT_TIMEOUT, LOCK_TIMEOUT, DEADLINE_EXPIRED
+    }
+
+    private final String operation;
+    private final Reason reason;
+    private final Duration budget;
+
+    public UserDaoTimeoutException(String operation, Reason reason, Duration budget, Throwable cause) {
+        super(operation + ": " + reason + " after " + budget.toMillis() + " ms budget", cause);
+        this.operation = operation;
+        this.reason = reason;
+        this.budget = budget;
+    }
+
+    public String getOperation() {
+        return operation;
+    }
+
+    public Reason getReason() {
+        return reason;
+    }
+
+    public Duration getBudget() {
+        return budget;
+    }
+}
@@ -0,0 +1,29 @@
+package com.example.userservice.dao;
+
+/**
+ * SQL for set-based inserts that take user ids from {@code users_seq} the way Hibernate's pooled
+ * optimizer does. The sequence steps by {@value #BLOCK_SIZE}, the {@code allocationSize} of
+ * {@code User.id}, and every {@code nextval} result {@code hi} reserves ids {@code hi - 49 .. hi}.
+ * An insert therefore takes one {@code nextval} per {@value #BLOCK_SIZE} rows. Ids left over in the
+ * last block, or given to rows that {@code ON CONFLICT} skips, are not reused.
+ */
+final class UserIdBlocks {
+    static final int BLOCK_SIZE = 50;
+
+    private UserIdBlocks() {
+    }
+
+    /**
+     * Two CTEs over {@code source}, which numbers its rows from zero in column {@code n}:
+     * {@code id_blocks} takes the blocks, {@code with_ids} is {@code source} plus column {@code id}.
+     * The text has no {@code %}, since callers pass it through {@code String.format}.
+     */
+    static String withIds(String source) {
+        // Первое значение последовательности (START WITH 1) Hibernate блоком не считает и сразу берёт следующее
+        return "id_blocks (block, hi) AS (SELECT block, CASE WHEN hi = 1 THEN nextval('users_seq') ELSE hi END "
+                + "FROM (SELECT block, nextval('users_seq') AS hi "
+                + "FROM generate_series(0, ((SELECT count(*) FROM " + source + ") - 1) / " + BLOCK_SIZE + ") AS g (block)) s), "
+                + "with_ids AS (SELECT b.hi - " + (BLOCK_SIZE - 1) + " + mod(r.n, " + BLOCK_SIZE + ") AS id, r.* "
+                + "FROM " + source + " r JOIN id_blocks b ON b.block = r.n / " + BLOCK_SIZE + ")";
+    }
+}
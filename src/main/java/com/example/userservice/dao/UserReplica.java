@@ -0,0 +1,233 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.dto.UserSummary;
+import com.example.userservice.entity.User;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * In-process copy of the {@code users} table, indexed by id (ordered, for paging) and by email.
+ * Rows are stored as compact immutable {@link Row}s (primitives, no entity state) and handed out
+ * as fresh {@link User} copies. There is a single writer, {@link UserChangeFeed}; any number of threads can read.
+ * <p>
+ * Freshness: {@link #getFreshAsOfNanos()} is a {@link System#nanoTime()} value. Every change committed
+ * before that moment has been applied. It is {@code Long.MIN_VALUE} while the copy is loading or disconnected.
+ */
+public class UserReplica {
+    private static final ObjectMapper mapper = new ObjectMapper();
+    private static final long NO_CREATED_AT = Long.MIN_VALUE;
+
+    private volatile Index index = new Index();
+    private volatile long freshAsOfNanos = Long.MIN_VALUE;
+
+    // Полная перезагрузка: новая копия строится рядом и подменяет старую целиком
+    void load(Iterator<Row> rows) {
+        Index loaded = new Index();
+        rows.forEachRemaining(loaded::put);
+        index = loaded;
+    }
+
+    // Изменения приходят в порядке commit'ов; версия отсекает события, уже учтённые в загруженном снимке
+    void apply(Change change) {
+        Index current = index;
+        switch (change.op) {
+            case UPSERT:
+                Row existing = current.byId.get(change.row.id);
+                if (existing == null || existing.version < change.row.version) {
+                    current.put(change.row);
+                }
+                break;
+            case DELETE:
+                current.remove(change.id);
+                break;
+            case TRUNCATE:
+                index = new Index();
+                break;
+            default:
+                throw new IllegalStateException("Unknown change " + change.op);
+        }
+    }
+
+    void markFresh(long asOfNanos) {
+        if (asOfNanos > freshAsOfNanos) {
+            freshAsOfNanos = asOfNanos;
+        }
+    }
+
+    void markStale() {
+        freshAsOfNanos = Long.MIN_VALUE;
+    }
+
+    public long getFreshAsOfNanos() {
+        return freshAsOfNanos;
+    }
+
+    public Optional<User> findById(Long id) {
+        Row row = index.byId.get(id);
+        return row == null ? Optional.empty() : Optional.of(row.toUser());
+    }
+
+    public Optional<User> findByEmail(String email) {
+        Index current = index;
+        Long id = current.byEmail.get(email);
+        Row row = id == null ? null : current.byId.get(id);
+        return row == null ? Optional.empty() : Optional.of(row.toUser());
+    }
+
+    public List<User> findPage(Long afterId, int limit) {
+        List<User> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Row row : rowsAfter(afterId).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(row.toUser());
+        }
+        return page;
+    }
+
+    public List<UserSummary> findSummariesPage(Long afterId, int limit) {
+        List<UserSummary> page = new ArrayList<>(Math.min(limit, 1024));
+        for (Row row : rowsAfter(afterId).values()) {
+            if (page.size() == limit) {
+                break;
+            }
+            page.add(new UserSummary(row.id, row.name, row.email));
+        }
+        return page;
+    }
+
+    public int size() {
+        return index.byId.size();
+    }
+
+    private NavigableMap<Long, Row> rowsAfter(Long afterId) {
+        ConcurrentSkipListMap<Long, Row> byId = index.byId;
+        return afterId == null ? byId : byId.tailMap(afterId, false);
+    }
+
+    private static final class Index {
+        final ConcurrentSkipListMap<Long, Row> byId = new ConcurrentSkipListMap<>();
+        final Map<String, Long> byEmail = new ConcurrentHashMap<>();
+
+        void put(Row row) {
+            Row previous = byId.put(row.id, row);
+            if (previous != null && !previous.email.equals(row.email)) {
+                byEmail.remove(previous.email, previous.id);
+            }
+            byEmail.put(row.email, row.id);
+        }
+
+        void remove(long id) {
+            Row previous = byId.remove(id);
+            if (previous != null) {
+                byEmail.remove(previous.email, previous.id);
+            }
+        }
+    }
+
+    /**
+     * One row of {@code users}: primitives instead of boxed fields, {@code createdAt} as epoch microseconds
+     * instead of a {@link LocalDateTime} object.
+     */
+    static final class Row {
+        final long id;
+        final long version;
+        final int age;
+        final long createdAtMicros;
+        final String name;
+        final String email;
+
+        Row(long id, long version, int age, long createdAtMicros, String name, String email) {
+            this.id = id;
+            this.version = version;
+            this.age = age;
+            this.createdAtMicros = createdAtMicros;
+            this.name = name;
+            this.email = email;
+        }
+
+        static Row of(User user) {
+            return new Row(user.getId(), user.getVersion() == null ? 0 : user.getVersion(), user.getAge(),
+                    micros(user.getCreatedAt()), user.getName(), user.getEmail());
+        }
+
+        static long micros(LocalDateTime time) {
+            return time == null ? NO_CREATED_AT : time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1_000;
+        }
+
+        User toUser() {
+            User user = new User();
+            user.setId(id);
+            user.setVersion(version);
+            user.setAge(age);
+            user.setName(name);
+            user.setEmail(email);
+            if (createdAtMicros != NO_CREATED_AT) {
+                user.setCreatedAt(LocalDateTime.ofEpochSecond(Math.floorDiv(createdAtMicros, 1_000_000),
+                        Math.floorMod(createdAtMicros, 1_000_000) * 1_000, ZoneOffset.UTC));
+            }
+            return user;
+        }
+    }
+
+    /**
+     * A change as sent by the {@code users_notify_change} trigger (migration V3).
+     */
+    static final class Change {
+        enum Op {
+            UPSERT, DELETE, TRUNCATE
+        }
+
+        final Op op;
+        final long id;
+        final Row row;
+
+        private Change(Op op, long id, Row row) {
+            this.op = op;
+            this.id = id;
+            this.row = row;
+        }
+
+        static Change fromJson(String payload) {
+            JsonNode json;
+            try {
+                json = mapper.readTree(payload);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Malformed change notification: " + payload, e);
+            }
+            switch (json.path("op").asText()) {
+                case "U":
+                    User user = new User();
+                    user.setId(json.get("id").asLong());
+                    user.setVersion(json.get("version").asLong());
+                    user.setName(json.get("name").asText());
+                    user.setEmail(json.get("email").asText());
+                    user.setAge(json.get("age").asInt());
+                    JsonNode createdAt = json.path("createdAt");
+                    if (!createdAt.isMissingNode() && !createdAt.isNull()) {
+                        user.setCreatedAt(LocalDateTime.parse(createdAt.asText()));
+                    }
+                    return new Change(Op.UPSERT, user.getId(), Row.of(user));
+                case "D":
+                    return new Change(Op.DELETE, json.get("id").asLong(), null);
+                case "T":
+                    return new Change(Op.TRUNCATE, 0, null);
+                default:
+                    throw new IllegalArgumentException("Unknown change notification: " + payload);
+            }
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.dto.UserSearch;
+import org.hibernate.query.Query;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Turns a {@link UserSearch} into HQL. Values only ever go in as bind parameters; the only
+ * text taken from the search itself is the sort property, which comes from a fixed enum.
+ */
+final class UserSearchQuery {
+    private static final char LIKE_ESCAPE = '!';
+
+    private final UserSearch search;
+    private final List<String> conditions = new ArrayList<>();
+    private final Map<String, Object> parameters = new LinkedHashMap<>();
+
+    private UserSearchQuery(UserSearch search, boolean keyset) {
+        this.search = search;
+        if (search.getEmail() != null) {
+            condition("u.email = :email", "email", search.getEmail());
+        }
+        if (search.getMinAge() != null) {
+            condition("u.age >= :minAge", "minAge", search.getMinAge());
+        }
+        if (search.getMaxAge() != null) {
+            condition("u.age <= :maxAge", "maxAge", search.getMaxAge());
+        }
+        if (search.getNamePrefix() != null) {
+            condition("u.name like :namePrefix escape '" + LIKE_ESCAPE + "'",
+                    "namePrefix", escapeLike(search.getNamePrefix()) + "%");
+        }
+        if (search.getNameContains() != null) {
+            condition("lower(u.name) like :nameContains escape '" + LIKE_ESCAPE + "'",
+                    "nameContains", "%" + escapeLike(search.getNameContains().toLowerCase(Locale.ROOT)) + "%");
+        }
+        if (keyset && search.getAfterId() != null) {
+            addKeyset();
+        }
+    }
+
+    static UserSearchQuery page(UserSearch search) {
+        if (search.getLimit() <= 0) {
+            throw new IllegalArgumentException("limit must be positive: " + search.getLimit());
+        }
+        if (search.getAfterId() != null && search.getSortBy() != UserSearch.SortField.ID && search.getAfterValue() == null) {
+            throw new IllegalArgumentException("afterValue is required when paging by " + search.getSortBy());
+        }
+        return new UserSearchQuery(search, true);
+    }
+
+    static UserSearchQuery count(UserSearch search) {
+        return new UserSearchQuery(search, false);
+    }
+
+    String listHql() {
+        String direction = search.isDescending() ? " desc" : "";
+        String order = search.getSortBy() == UserSearch.SortField.ID
+                ? " order by u.id" + direction
+                : " order by u." + search.getSortBy().getProperty() + direction + ", u.id" + direction;
+        return "from User u" + where() + order;
+    }
+
+    String countHql() {
+        return "select count(u) from User u" + where();
+    }
+
+    <T> Query<T> bind(Query<T> query) {
+        parameters.forEach(query::setParameter);
+        return query;
+    }
+
+    // (value, id) > (:afterValue, :afterId) без сравнения кортежей: первое условие задаёт начало диапазона индекса
+    private void addKeyset() {
+        String comparison = search.isDescending() ? "<" : ">";
+        if (search.getSortBy() == UserSearch.SortField.ID) {
+            condition("u.id " + comparison + " :afterId", "afterId", search.getAfterId());
+            return;
+        }
+        String property = "u." + search.getSortBy().getProperty();
+        conditions.add(property + " " + comparison + "= :afterValue and (" + property + " " + comparison
+                + " :afterValue or u.id " + comparison + " :afterId)");
+        parameters.put("afterValue", search.getAfterValue());
+        parameters.put("afterId", search.getAfterId());
+    }
+
+    private void condition(String condition, String name, Object value) {
+        conditions.add(condition);
+        parameters.put(name, value);
+    }
+
+    private String where() {
+        return conditions.isEmpty() ? "" : " where " + String.join(" and ", conditions);
+    }
+
+    static String escapeLike(String value) {
+        StringBuilder escaped = new StringBuilder(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '%' || c == '_' || c == LIKE_ESCAPE) {
+                escaped.append(LIKE_ESCAPE);
+            }
+            escaped.append(c);
+        }
+        return escaped.toString();
+    }
+}
@@ -0,0 +1,21 @@
+package com.example.userservice.dto;
+
+import lombok.Builder;
+import lombok.Value;
+
+/**
+ * Partial update of a {@code User}: only non-null fields are written.
+ * With {@code expectedVersion} set the update applies only if the row still has that version.
+ */
+@Value
+@Builder
+public class UserPatch {
+    String name;
+    String email;
+    Integer age;
+    Long expectedVersion;
+
+    public boolean isEmpty() {
+        return name == null && email == null && age == null;
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.userservice.dto;
+
+import com.example.userservice.entity.User;
+import lombok.Builder;
+import lombok.Value;
+
+import java.util.function.Function;
+
+/**
+ * Filters for {@code UserDao.search}/{@code count}; unset fields do not filter. All filters are combined
+ * with AND and run in the database against the indexes from migration V2.
+ * <p>
+ * V2 is PostgreSQL-only and is applied by {@code SchemaMigrations} at startup in every startup mode.
+ * It needs the right to {@code CREATE EXTENSION pg_trgm}. On a database that predates it, the indexes
+ * are built once, without {@code CONCURRENTLY}. Without V2 (or on H2), the prefix and contains filters
+ * still return correct results but fall back to sequential scans.
+ * <ul>
+ *     <li>{@code email}: exact match;</li>
+ *     <li>{@code minAge}/{@code maxAge}: inclusive range;</li>
+ *     <li>{@code namePrefix}: case-sensitive prefix;</li>
+ *     <li>{@code nameContains}: case-insensitive substring.</li>
+ * </ul>
+ * Pages are keyset-based: pass the last row of a page to {@link #after(User)} to get the next one.
+ */
+@Value
+@Builder(toBuilder = true)
+public class UserSearch {
+    String email;
+    Integer minAge;
+    Integer maxAge;
+    String namePrefix;
+    String nameContains;
+    @Builder.Default
+    SortField sortBy = SortField.ID;
+    boolean descending;
+    @Builder.Default
+    int limit = 50;
+    // Ключ последней строки предыдущей страницы: значение поля сортировки и id
+    Object afterValue;
+    Long afterId;
+
+    public enum SortField {
+        ID("id", User::getId),
+        NAME("name", User::getName),
+        EMAIL("email", User::getEmail),
+        AGE("age", User::getAge);
+
+        private final String property;
+        private final Function<User, Object> extractor;
+
+        SortField(String property, Function<User, Object> extractor) {
+            this.property = property;
+            this.extractor = extractor;
+        }
+
+        public String getProperty() {
+            return property;
+        }
+    }
+
+    public UserSearch after(User last) {
+        return toBuilder()
+                .afterId(last.getId())
+                .afterValue(sortBy == SortField.ID ? null : sortBy.extractor.apply(last))
+                .build();
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.userservice.dto;
+
+import lombok.Value;
+
+/**
+ * What list screens show of a {@code User}. Filled by a constructor expression in HQL, so rows are
+ * never managed entities: no persistence context entry, no dirty-checking snapshot, no {@code createdAt}.
+ */
+@Value
+public class UserSummary {
+    Long id;
+    String name;
+    String email;
+}
@@ -2,16 +2,110 @@ package com.example.userservice.entity;
 
 import lombok.Data;
 import org.hibernate.annotations.CreationTimestamp;
+import org.hibernate.annotations.DynamicUpdate;
 
 import javax.persistence.*;
 import java.time.LocalDateTime;
+import java.util.StringJoiner;
 
 @Data
 @Entity
-@Table(name = "users")
+@DynamicUpdate
+// Все запросы UserDaoImpl, кроме поиска по UserSearch и upsert: Hibernate проверяет и компилирует их при сборке SessionFactory
+@NamedQueries({
+        @NamedQuery(name = User.FIND_ALL, query = "from User u"),
+        @NamedQuery(name = User.FIND_ORDERED, query = "from User u order by u.id"),
+        @NamedQuery(name = User.FIND_AFTER, query = "from User u where u.id > :afterId order by u.id"),
+        @NamedQuery(name = User.FIND_BY_EMAILS, query = "from User u where u.email in (:emails)"),
+        @NamedQuery(name = User.EXISTS_BY_ID, query = "select u.id from User u where u.id = :id"),
+        @NamedQuery(name = User.SUMMARIES, query = User.SUMMARY_SELECT + " order by u.id"),
+        @NamedQuery(name = User.SUMMARIES_AFTER, query = User.SUMMARY_SELECT + " where u.id > :afterId order by u.id"),
+        @NamedQuery(name = User.COUNT_BY_AGE, query = "select u.age, count(u) from User u group by u.age"),
+        @NamedQuery(name = User.COUNT_SIGNUPS_BY_DAY, query = "select cast(u.createdAt as date), count(u) from User u "
+                + "where u.createdAt is not null group by cast(u.createdAt as date)"),
+        // patch пишет только переданные колонки: по запросу на набор полей (см. patchQuery); versioned увеличивает version
+        @NamedQuery(name = User.PATCH + "(name)", query = User.PATCH_SET + User.SET_NAME + User.PATCH_WHERE),
+        @NamedQuery(name = User.PATCH + "(email)", query = User.PATCH_SET + User.SET_EMAIL + User.PATCH_WHERE),
+        @NamedQuery(name = User.PATCH + "(name,email)",
+                query = User.PATCH_SET + User.SET_NAME + ", " + User.SET_EMAIL + User.PATCH_WHERE),
+        @NamedQuery(name = User.PATCH + "(age)", query = User.PATCH_SET + User.SET_AGE + User.PATCH_WHERE),
+        @NamedQuery(name = User.PATCH + "(name,age)",
+                query = User.PATCH_SET + User.SET_NAME + ", " + User.SET_AGE + User.PATCH_WHERE),
+        @NamedQuery(name = User.PATCH + "(email,age)",
+                query = User.PATCH_SET + User.SET_EMAIL + ", " + User.SET_AGE + User.PATCH_WHERE),
+        @NamedQuery(name = User.PATCH + "(name,email,age)",
+                query = User.PATCH_SET + User.SET_NAME + ", " + User.SET_EMAIL + ", " + User.SET_AGE + User.PATCH_WHERE),
+        @NamedQuery(name = User.PATCH_IF_VERSION + "(name)",
+                query = User.PATCH_SET + User.SET_NAME + User.PATCH_WHERE + User.PATCH_VERSION),
+        @NamedQuery(name = User.PATCH_IF_VERSION + "(email)",
+                query = User.PATCH_SET + User.SET_EMAIL + User.PATCH_WHERE + User.PATCH_VERSION),
+        @NamedQuery(name = User.PATCH_IF_VERSION + "(name,email)",
+                query = User.PATCH_SET + User.SET_NAME + ", " + User.SET_EMAIL + User.PATCH_WHERE + User.PATCH_VERSION),
+        @NamedQuery(name = User.PATCH_IF_VERSION + "(age)",
+                query = User.PATCH_SET + User.SET_AGE + User.PATCH_WHERE + User.PATCH_VERSION),
+        @NamedQuery(name = User.PATCH_IF_VERSION + "(name,age)",
+                query = User.PATCH_SET + User.SET_NAME + ", " + User.SET_AGE + User.PATCH_WHERE + User.PATCH_VERSION),
+        @NamedQuery(name = User.PATCH_IF_VERSION + "(email,age)",
+                query = User.PATCH_SET + User.SET_EMAIL + ", " + User.SET_AGE + User.PATCH_WHERE + User.PATCH_VERSION),
+        @NamedQuery(name = User.PATCH_IF_VERSION + "(name,email,age)",
+                query = User.PATCH_SET + User.SET_NAME + ", " + User.SET_EMAIL + ", " + User.SET_AGE
+                        + User.PATCH_WHERE + User.PATCH_VERSION),
+        @NamedQuery(name = User.DELETE_BY_ID, query = "delete from User u where u.id = :id"),
+        @NamedQuery(name = User.DELETE_BY_IDS, query = "delete from User u where u.id in (:ids)")
+})
+// Индексы под UserSearch; text_pattern_ops и триграммный индекс есть только в миграции V2
+@Table(name = "users", indexes = {
+        @Index(name = "users_age_id_idx", columnList = "age, id"),
+        @Index(name = "users_name_id_idx", columnList = "name, id")
+})
 public class User {
+    public static final String FIND_ALL = "User.findAll";
+    public static final String FIND_ORDERED = "User.findOrdered";
+    public static final String FIND_AFTER = "User.findAfter";
+    public static final String FIND_BY_EMAILS = "User.findByEmails";
+    public static final String EXISTS_BY_ID = "User.existsById";
+    public static final String SUMMARIES = "User.summaries";
+    public static final String SUMMARIES_AFTER = "User.summariesAfter";
+    public static final String COUNT_BY_AGE = "User.countByAge";
+    public static final String COUNT_SIGNUPS_BY_DAY = "User.countSignupsByDay";
+    public static final String DELETE_BY_ID = "User.deleteById";
+    public static final String DELETE_BY_IDS = "User.deleteByIds";
+
+    // Проекция в DTO: строки не становятся сущностями и не попадают в persistence context
+    static final String SUMMARY_SELECT =
+            "select new com.example.userservice.dto.UserSummary(u.id, u.name, u.email) from User u";
+    static final String PATCH = "User.patch";
+    static final String PATCH_IF_VERSION = "User.patchIfVersion";
+    static final String PATCH_SET = "update versioned User u set ";
+    static final String SET_NAME = "u.name = :name";
+    static final String SET_EMAIL = "u.email = :email";
+    static final String SET_AGE = "u.age = :age";
+    static final String PATCH_WHERE = " where u.id = :id";
+    static final String PATCH_VERSION = " and u.version = :version";
+    // Имена запросов patch по маске полей: 1 - name, 2 - email, 4 - age, 8 - с проверкой version
+    private static final String[] PATCH_QUERIES = new String[16];
+
+    static {
+        for (int mask = 1; mask < PATCH_QUERIES.length; mask++) {
+            StringJoiner fields = new StringJoiner(",", ((mask & 8) != 0 ? PATCH_IF_VERSION : PATCH) + "(", ")");
+            if ((mask & 1) != 0) {
+                fields.add("name");
+            }
+            if ((mask & 2) != 0) {
+                fields.add("email");
+            }
+            if ((mask & 4) != 0) {
+                fields.add("age");
+            }
+            if ((mask & 7) != 0) {
+                PATCH_QUERIES[mask] = fields.toString();
+            }
+        }
+    }
+
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "users_seq")
+    @SequenceGenerator(name = "users_seq", sequenceName = "users_seq", allocationSize = 50)
     private Long id;
 
     @Column(nullable = false)
@@ -26,4 +120,32 @@ public class User {
     @CreationTimestamp
     @Column(name = "created_at", updatable = false)
     private LocalDateTime createdAt;
+
+    // Колонку создают миграции (V1 и доводка старой схемы в SchemaMigrations); hbm2ddl её только сверяет
+    @Version
+    @Column(columnDefinition = "bigint default 0 not null")
+    private Long version;
+
+    /**
+     * Named query that updates exactly the given columns, so a patch touches no other column.
+     * Takes the parameters {@code id} and one per field, plus {@code version} when {@code ifVersion}.
+     */
+    public static String patchQuery(boolean name, boolean email, boolean age, boolean ifVersion) {
+        String query = PATCH_QUERIES[(name ? 1 : 0) | (email ? 2 : 0) | (age ? 4 : 0) | (ifVersion ? 8 : 0)];
+        if (query == null) {
+            throw new IllegalArgumentException("Patch must change at least one field");
+        }
+        return query;
+    }
+
+    public User copy() {
+        User copy = new User();
+        copy.setId(id);
+        copy.setName(name);
+        copy.setEmail(email);
+        copy.setAge(age);
+        copy.setCreatedAt(createdAt);
+        copy.setVersion(version);
+        return copy;
+    }
 }
@@ -0,0 +1,420 @@
+package com.example.userservice.http;
+
+import com.example.userservice.dao.UserDaoTimeoutException;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.entity.User;
+import com.example.userservice.metrics.OperationMetrics;
+import com.example.userservice.service.UserService;
+import com.example.userservice.util.ExecutorFactory;
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.PoolMetrics;
+import com.example.userservice.util.Startup;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.exception.ConstraintViolationException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.persistence.OptimisticLockException;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * HTTP/JSON front end for {@link UserService} on the JDK's built-in server.
+ * <pre>
+ * GET    /users?after={id}&amp;limit={n}   page in id order, {"items": [...], "next": id|null}
+ * GET    /users/stream                 all users as one JSON array, streamed from a DB cursor
+ * GET    /users/{id}
+ * POST   /users                        {"name", "email", "age"}
+ * PATCH  /users/{id}                   {"name"?, "email"?, "age"?, "expectedVersion"?}
+ * DELETE /users/{id}
+ * </pre>
+ * At most {@code maxConcurrent} requests are served at once (sized to the connection pool).
+ * A request that cannot get a slot within {@code admissionTimeout} is answered with 503 rather
+ * than queueing behind the pool.
+ * <p>
+ * The JDK server writes headers and body separately, so without TCP_NODELAY every response waits
+ * for a delayed ACK (about 40 ms). The switch is the JVM-wide {@code -Dsun.net.httpserver.nodelay=true},
+ * read once when the first server starts; {@code Main serve}, the tests and the load-test profile set it.
+ */
+public class UserHttpServer implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(UserHttpServer.class);
+    private static final OperationMetrics metrics = OperationMetrics.forComponent("UserHttpServer");
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final Duration DEFAULT_ADMISSION_TIMEOUT = Duration.ofMillis(500);
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 1000;
+    private static final int STREAM_FETCH_SIZE = 500;
+    private static final String CONTEXT = "/users";
+
+    private static final ObjectMapper mapper = new ObjectMapper()
+            .registerModule(new JavaTimeModule())
+            .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+
+    private final UserService userService;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final Semaphore admission;
+    private final Duration admissionTimeout;
+    private final LongAdder rejected = new LongAdder();
+
+    public UserHttpServer(UserService userService, InetSocketAddress address, ExecutorService executor,
+                          int maxConcurrent, Duration admissionTimeout) throws IOException {
+        this.userService = userService;
+        this.executor = executor;
+        this.admission = new Semaphore(maxConcurrent);
+        this.admissionTimeout = admissionTimeout;
+        this.server = HttpServer.create(address, 0);
+        server.setExecutor(executor);
+        server.createContext(CONTEXT, this::handle);
+    }
+
+    public static UserHttpServer create(UserService userService, int port) throws IOException {
+        int poolSize = HibernateUtil.getPoolMetrics().map(PoolMetrics::getMaxSize).orElse(DEFAULT_POOL_SIZE);
+        // Платформенных потоков вдвое больше пула, чтобы лишние запросы успевали получить 503, а не ждали в очереди
+        ExecutorService executor = ExecutorFactory.newTaskExecutor("http", poolSize * 2);
+        return new UserHttpServer(userService, new InetSocketAddress(port), executor, poolSize, DEFAULT_ADMISSION_TIMEOUT);
+    }
+
+    public void start() {
+        server.start();
+        logger.info("HTTP server listening on port {}", getPort());
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    public long getRejectedCount() {
+        return rejected.sum();
+    }
+
+    private void handle(HttpExchange exchange) {
+        long start = System.nanoTime();
+        String operation = "unknown";
+        boolean failed = false;
+        boolean admitted = false;
+        try {
+            operation = route(exchange);
+            admitted = admission.tryAcquire(admissionTimeout.toNanos(), TimeUnit.NANOSECONDS);
+            if (!admitted) {
+                rejected.increment();
+                operation = "rejected";
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendError(exchange, 503, "Server is busy, retry later");
+                return;
+            }
+            dispatch(operation, exchange);
+        } catch (HttpError e) {
+            failed = e.status >= 500;
+            sendErrorQuietly(exchange, e.status, e.getMessage());
+        } catch (JsonProcessingException | IllegalArgumentException e) {
+            sendErrorQuietly(exchange, 400, e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failed = true;
+            sendErrorQuietly(exchange, 503, "Interrupted");
+        } catch (UserDaoTimeoutException e) {
+            failed = true;
+            exchange.getResponseHeaders().set("Retry-After", "1");
+            sendErrorQuietly(exchange, 503, "Database timed out, retry later");
+        } catch (Exception e) {
+            // Hibernate заворачивает исходную ошибку в PersistenceException/RollbackException
+            if (hasCause(e, StaleObjectStateException.class) || hasCause(e, OptimisticLockException.class)) {
+                sendErrorQuietly(exchange, 409, "User was modified concurrently");
+                return;
+            }
+            if (hasCause(e, ConstraintViolationException.class)) {
+                sendErrorQuietly(exchange, 409, "Constraint violated, e.g. duplicate email");
+                return;
+            }
+            failed = true;
+            logger.error("Request failed: {} {}", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+            sendErrorQuietly(exchange, 500, "Internal error");
+        } finally {
+            if (admitted) {
+                admission.release();
+            }
+            exchange.close();
+            metrics.record(operation, System.nanoTime() - start, failed);
+            Startup.recordFirstRequest();
+        }
+    }
+
+    // Имя операции определяется до выполнения, чтобы ошибки попадали в метрики своей операции
+    private static String route(HttpExchange exchange) {
+        String method = exchange.getRequestMethod();
+        String path = exchange.getRequestURI().getPath().substring(CONTEXT.length());
+        if (path.isEmpty() || path.equals("/")) {
+            if (method.equals("GET")) {
+                return "list";
+            }
+            if (method.equals("POST")) {
+                return "create";
+            }
+            throw methodNotAllowed(exchange, "GET, POST");
+        }
+        if (path.equals("/stream")) {
+            if (method.equals("GET")) {
+                return "stream";
+            }
+            throw methodNotAllowed(exchange, "GET");
+        }
+        switch (method) {
+            case "GET":
+                return "get";
+            case "PATCH":
+                return "patch";
+            case "DELETE":
+                return "delete";
+            default:
+                throw methodNotAllowed(exchange, "GET, PATCH, DELETE");
+        }
+    }
+
+    private void dispatch(String operation, HttpExchange exchange) throws IOException {
+        switch (operation) {
+            case "list":
+                listPage(exchange);
+                break;
+            case "create":
+                create(exchange);
+                break;
+            case "stream":
+                stream(exchange);
+                break;
+            case "get":
+                get(exchange, pathId(exchange));
+                break;
+            case "patch":
+                patch(exchange, pathId(exchange));
+                break;
+            case "delete":
+                delete(exchange, pathId(exchange));
+                break;
+            default:
+                throw new IllegalStateException("Unknown operation: " + operation);
+        }
+    }
+
+    private static Long pathId(HttpExchange exchange) {
+        return parseId(exchange.getRequestURI().getPath().substring(CONTEXT.length() + 1));
+    }
+
+    private void get(HttpExchange exchange, Long id) throws IOException {
+        User user = userService.findById(id).orElseThrow(() -> notFound(id));
+        sendJson(exchange, 200, user);
+    }
+
+    private void listPage(HttpExchange exchange) throws IOException {
+        Map<String, String> query = queryParameters(exchange);
+        Long after = query.containsKey("after") ? parseId(query.get("after")) : null;
+        int limit = query.containsKey("limit") ? Integer.parseInt(query.get("limit")) : DEFAULT_PAGE_SIZE;
+        if (limit <= 0 || limit > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("limit must be between 1 and " + MAX_PAGE_SIZE);
+        }
+        List<User> items = userService.findPage(after, limit);
+        Map<String, Object> page = new LinkedHashMap<>();
+        page.put("items", items);
+        page.put("next", items.size() < limit ? null : items.get(items.size() - 1).getId());
+        sendJson(exchange, 200, page);
+    }
+
+    // Ответ пишется chunked-потоком по мере чтения курсора: в памяти не больше одной порции fetchSize
+    private void stream(HttpExchange exchange) throws IOException {
+        try (Stream<User> users = userService.streamAll(STREAM_FETCH_SIZE)) {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            sendHeaders(exchange, 200, 0);
+            try (OutputStream body = new BufferedOutputStream(exchange.getResponseBody());
+                 JsonGenerator generator = mapper.getFactory().createGenerator(body)) {
+                generator.writeStartArray();
+                Iterator<User> iterator = users.iterator();
+                while (iterator.hasNext()) {
+                    generator.writeObject(iterator.next());
+                }
+                generator.writeEndArray();
+            }
+        }
+    }
+
+    private void create(HttpExchange exchange) throws IOException {
+        User user = readJson(exchange, User.class);
+        if (user.getName() == null || user.getEmail() == null || user.getAge() == null) {
+            throw new IllegalArgumentException("name, email and age are required");
+        }
+        user.setId(null);
+        user.setVersion(null);
+        user.setCreatedAt(null);
+        User created = userService.save(user);
+        exchange.getResponseHeaders().set("Location", CONTEXT + "/" + created.getId());
+        sendJson(exchange, 201, created);
+    }
+
+    private void patch(HttpExchange exchange, Long id) throws IOException {
+        PatchRequest request = readJson(exchange, PatchRequest.class);
+        UserPatch patch = UserPatch.builder()
+                .name(request.name)
+                .email(request.email)
+                .age(request.age)
+                .expectedVersion(request.expectedVersion)
+                .build();
+        if (patch.isEmpty()) {
+            throw new IllegalArgumentException("Patch has no changes");
+        }
+        if (!userService.patch(id, patch)) {
+            throw notFound(id);
+        }
+        Optional<User> patched = userService.findById(id);
+        if (patched.isPresent()) {
+            sendJson(exchange, 200, patched.get());
+        } else {
+            sendEmpty(exchange, 204);
+        }
+    }
+
+    private void delete(HttpExchange exchange, Long id) throws IOException {
+        if (!userService.delete(id)) {
+            throw notFound(id);
+        }
+        sendEmpty(exchange, 204);
+    }
+
+    private static <T> T readJson(HttpExchange exchange, Class<T> type) throws IOException {
+        try (InputStream body = exchange.getRequestBody()) {
+            return mapper.readValue(body, type);
+        }
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Object value) throws IOException {
+        byte[] body = mapper.writeValueAsBytes(value);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        sendHeaders(exchange, status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static void sendEmpty(HttpExchange exchange, int status) throws IOException {
+        sendHeaders(exchange, status, -1);
+    }
+
+    // Тело запроса дочитывается до ответа. Завершив ответ (204 - уже здесь), JDK-сервер закрывает keep-alive
+    // соединение с недочитанным запросом, и клиент, пославший по нему следующий запрос, не получает ответа
+    private static void sendHeaders(HttpExchange exchange, int status, long length) throws IOException {
+        exchange.getRequestBody().close();
+        exchange.sendResponseHeaders(status, length);
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        Map<String, Object> error = new LinkedHashMap<>();
+        error.put("status", status);
+        error.put("error", message);
+        sendJson(exchange, status, error);
+    }
+
+    // Если заголовки уже ушли (ошибка посреди потоковой выдачи), ответ просто обрывается
+    private static void sendErrorQuietly(HttpExchange exchange, int status, String message) {
+        if (exchange.getResponseCode() != -1) {
+            return;
+        }
+        try {
+            sendError(exchange, status, message);
+        } catch (IOException e) {
+            logger.debug("Could not send error response", e);
+        }
+    }
+
+    private static Map<String, String> queryParameters(HttpExchange exchange) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = exchange.getRequestURI().getRawQuery();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int separator = pair.indexOf('=');
+            if (separator > 0) {
+                parameters.put(URLDecoder.decode(pair.substring(0, separator), StandardCharsets.UTF_8),
+                        URLDecoder.decode(pair.substring(separator + 1), StandardCharsets.UTF_8));
+            }
+        }
+        return parameters;
+    }
+
+    private static boolean hasCause(Throwable error, Class<? extends Throwable> type) {
+        for (Throwable current = error; current != null; current = current.getCause()) {
+            if (type.isInstance(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Long parseId(String value) {
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            throw new HttpError(404, "No such resource: " + value);
+        }
+    }
+
+    private static HttpError notFound(Long id) {
+        return new HttpError(404, "User " + id + " not found");
+    }
+
+    private static HttpError methodNotAllowed(HttpExchange exchange, String allowed) {
+        exchange.getResponseHeaders().set("Allow", allowed);
+        return new HttpError(405, "Method not allowed");
+    }
+
+    @Override
+    public void close() {
+        server.stop(1);
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class HttpError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private final int status;
+
+        HttpError(int status, String message) {
+            super(message);
+            this.status = status;
+        }
+    }
+
+    private static class PatchRequest {
+        public String name;
+        public String email;
+        public Integer age;
+        public Long expectedVersion;
+    }
+}
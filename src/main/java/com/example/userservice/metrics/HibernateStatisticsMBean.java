@@ -0,0 +1,23 @@
+package com.example.userservice.metrics;
+
+public interface HibernateStatisticsMBean {
+    long getQueryExecutionCount();
+    long getQueryExecutionMaxTime();
+    String getQueryExecutionMaxTimeQueryString();
+    long getQueryPlanCacheHitCount();
+    long getQueryPlanCacheMissCount();
+    long getEntityLoadCount();
+    long getEntityFetchCount();
+    long getEntityInsertCount();
+    long getEntityUpdateCount();
+    long getEntityDeleteCount();
+    long getFlushCount();
+    long getSessionOpenCount();
+    long getTransactionCount();
+    long getPrepareStatementCount();
+    long getSecondLevelCacheHitCount();
+    long getSecondLevelCacheMissCount();
+    long getOptimisticFailureCount();
+    boolean isStatisticsEnabled();
+    void clear();
+}
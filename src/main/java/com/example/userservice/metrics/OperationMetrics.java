@@ -0,0 +1,102 @@
+package com.example.userservice.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Per-operation latency/throughput/error metrics for one component, published over JMX as
+ * {@code com.example.userservice:type=<component>,operation=<name>}. Operations slower than the
+ * threshold are logged to the {@code com.example.userservice.SLOW} logger. The threshold belongs to the
+ * instance: {@link #withSlowThreshold} gives a caller its own threshold over the component's shared stats.
+ */
+public class OperationMetrics {
+    private static final Logger slowLogger = LoggerFactory.getLogger("com.example.userservice.SLOW");
+    private static final Map<String, OperationMetrics> registry = new ConcurrentHashMap<>();
+
+    private static final long DEFAULT_SLOW_THRESHOLD_NANOS = Duration.ofMillis(500).toNanos();
+
+    private final String component;
+    private final Map<String, OperationStats> operations;
+    private final long slowThresholdNanos;
+
+    private OperationMetrics(String component, Map<String, OperationStats> operations, long slowThresholdNanos) {
+        this.component = component;
+        this.operations = operations;
+        this.slowThresholdNanos = slowThresholdNanos;
+    }
+
+    public static OperationMetrics forComponent(String component) {
+        return registry.computeIfAbsent(component,
+                name -> new OperationMetrics(name, new ConcurrentHashMap<>(), DEFAULT_SLOW_THRESHOLD_NANOS));
+    }
+
+    // Статистика общая с исходным экземпляром, меняется только порог медленных операций
+    public OperationMetrics withSlowThreshold(Duration threshold) {
+        return new OperationMetrics(component, operations, threshold.toNanos());
+    }
+
+    public Duration getSlowThreshold() {
+        return Duration.ofNanos(slowThresholdNanos);
+    }
+
+    public <T> T time(String operation, Supplier<T> work) {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            T result = work.get();
+            failed = false;
+            return result;
+        } finally {
+            record(operation, System.nanoTime() - start, failed);
+        }
+    }
+
+    public void record(String operation, long elapsedNanos, boolean failed) {
+        stats(operation).record(elapsedNanos, failed);
+        if (elapsedNanos >= slowThresholdNanos) {
+            slowLogger.warn("Slow {}.{}: {} ms{}", component, operation, elapsedNanos / 1_000_000,
+                    failed ? " (failed)" : "");
+        }
+    }
+
+    public OperationStats stats(String operation) {
+        OperationStats stats = operations.get(operation);
+        if (stats == null) {
+            stats = operations.computeIfAbsent(operation, name -> {
+                OperationStats created = new OperationStats(name);
+                register(created);
+                return created;
+            });
+        }
+        return stats;
+    }
+
+    public Collection<OperationStats> getOperations() {
+        return operations.values();
+    }
+
+    private void register(OperationStats stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName("com.example.userservice:type=" + component
+                    + ",operation=" + stats.getName());
+            if (!server.isRegistered(name)) {
+                server.registerMBean(new StandardMBean(stats, OperationStatsMBean.class), name);
+            }
+        } catch (JMException e) {
+            LoggerFactory.getLogger(OperationMetrics.class).warn("Could not register JMX bean for {}.{}",
+                    component, stats.getName(), e);
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package com.example.userservice.metrics;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histogram and counters for one operation. Recording is wait-free; percentiles are read from
+ * a cumulative histogram that folds in the recorder's interval histogram on every read.
+ */
+public class OperationStats implements OperationStatsMBean {
+    private final String name;
+    private final Recorder recorder = new Recorder(3);
+    private final Histogram cumulative = new Histogram(3);
+    private final LongAdder errors = new LongAdder();
+    private volatile long startNanos = System.nanoTime();
+    private Histogram interval;
+
+    OperationStats(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void record(long elapsedNanos, boolean failed) {
+        recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(Math.max(elapsedNanos, 0)));
+        if (failed) {
+            errors.increment();
+        }
+    }
+
+    private synchronized Histogram snapshot() {
+        interval = recorder.getIntervalHistogram(interval);
+        cumulative.add(interval);
+        return cumulative;
+    }
+
+    @Override
+    public synchronized long getCount() {
+        return snapshot().getTotalCount();
+    }
+
+    @Override
+    public long getErrors() {
+        return errors.sum();
+    }
+
+    @Override
+    public synchronized double getThroughputPerSecond() {
+        double elapsedSeconds = (System.nanoTime() - startNanos) / 1e9;
+        return elapsedSeconds <= 0 ? 0.0 : getCount() / elapsedSeconds;
+    }
+
+    @Override
+    public synchronized double getMeanMicros() {
+        return snapshot().getMean();
+    }
+
+    @Override
+    public synchronized long getP50Micros() {
+        return snapshot().getValueAtPercentile(50.0);
+    }
+
+    @Override
+    public synchronized long getP99Micros() {
+        return snapshot().getValueAtPercentile(99.0);
+    }
+
+    @Override
+    public synchronized long getP999Micros() {
+        return snapshot().getValueAtPercentile(99.9);
+    }
+
+    @Override
+    public synchronized long getMaxMicros() {
+        return snapshot().getMaxValue();
+    }
+
+    @Override
+    public synchronized void reset() {
+        recorder.reset();
+        cumulative.reset();
+        errors.reset();
+        startNanos = System.nanoTime();
+    }
+
+    @Override
+    public synchronized String toString() {
+        Histogram histogram = snapshot();
+        return String.format("%s{count=%d, errors=%d, p50=%dus, p99=%dus, p999=%dus, max=%dus}",
+                name, histogram.getTotalCount(), errors.sum(), histogram.getValueAtPercentile(50.0),
+                histogram.getValueAtPercentile(99.0), histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+    }
+}
@@ -0,0 +1,13 @@
+package com.example.userservice.metrics;
+
+public interface OperationStatsMBean {
+    long getCount();
+    long getErrors();
+    double getThroughputPerSecond();
+    double getMeanMicros();
+    long getP50Micros();
+    long getP99Micros();
+    long getP999Micros();
+    long getMaxMicros();
+    void reset();
+}
@@ -0,0 +1,167 @@
+package com.example.userservice.service;
+
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
+import com.example.userservice.entity.User;
+import com.example.userservice.util.Deadline;
+import com.example.userservice.util.ExecutorFactory;
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.PoolMetrics;
+import com.example.userservice.util.ReadYourWrites;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking facade over {@link UserService}.
+ * <p>
+ * At most {@code maxConcurrency} calls touch the database at once (sized to the connection pool),
+ * and at most {@code maxPending} calls may be admitted in total; beyond that the returned future
+ * fails immediately with {@link RejectedExecutionException}. Cancelling a future, or letting it hit
+ * the call timeout, interrupts the running call or drops it if it has not started yet.
+ */
+public class AsyncUserService implements AutoCloseable {
+    private static final int DEFAULT_POOL_SIZE = 10;
+    private static final int DEFAULT_MAX_PENDING = 10_000;
+
+    private final UserService delegate;
+    private final ExecutorService executor;
+    private final Semaphore concurrency;
+    private final Semaphore pending;
+    private final Duration callTimeout;
+
+    public AsyncUserService(UserService delegate, ExecutorService executor,
+                            int maxConcurrency, int maxPending, Duration callTimeout) {
+        this.delegate = delegate;
+        this.executor = executor;
+        this.concurrency = new Semaphore(maxConcurrency);
+        this.pending = new Semaphore(maxPending);
+        this.callTimeout = callTimeout;
+    }
+
+    public static AsyncUserService create(UserService delegate, Duration callTimeout) {
+        int poolSize = HibernateUtil.getPoolMetrics().map(PoolMetrics::getMaxSize).orElse(DEFAULT_POOL_SIZE);
+        ExecutorService executor = ExecutorFactory.newTaskExecutor("async-user-service", poolSize);
+        return new AsyncUserService(delegate, executor, poolSize, DEFAULT_MAX_PENDING, callTimeout);
+    }
+
+    public CompletableFuture<Optional<User>> findById(Long id) {
+        return submit(() -> delegate.findById(id));
+    }
+
+    public CompletableFuture<List<User>> findAll() {
+        return submit(delegate::findAll);
+    }
+
+    public CompletableFuture<List<UserSummary>> findAllSummaries() {
+        return submit(delegate::findAllSummaries);
+    }
+
+    public CompletableFuture<List<User>> search(UserSearch search) {
+        return submit(() -> delegate.search(search));
+    }
+
+    public CompletableFuture<User> save(User user) {
+        return submit(() -> delegate.save(user));
+    }
+
+    public CompletableFuture<User> update(User user) {
+        return submit(() -> delegate.update(user));
+    }
+
+    public CompletableFuture<Boolean> patch(Long id, UserPatch patch) {
+        return submit(() -> delegate.patch(id, patch));
+    }
+
+    public CompletableFuture<Boolean> delete(Long id) {
+        return submit(() -> delegate.delete(id));
+    }
+
+    public int getAvailablePermits() {
+        return concurrency.availablePermits();
+    }
+
+    private <T> CompletableFuture<T> submit(Supplier<T> call) {
+        if (!pending.tryAcquire()) {
+            return CompletableFuture.failedFuture(new RejectedExecutionException("Too many pending user operations"));
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        // started: задача либо запущена, либо отменена до старта (тогда permit уже возвращён)
+        AtomicBoolean started = new AtomicBoolean();
+        AtomicBoolean finished = new AtomicBoolean();
+        // Таймаут вызова доходит до DAO как Deadline: БД бросает запрос, когда его результат уже никто не ждёт
+        long deadline = System.nanoTime() + (callTimeout == null ? 0 : callTimeout.toNanos());
+        // Задача в пуле - тот же вызывающий: её чтения видят его записи, а её записи - его следующие чтения
+        ReadYourWrites caller = ReadYourWrites.current();
+
+        Runnable task = () -> {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                concurrency.acquire();
+                try {
+                    T value = ReadYourWrites.callAs(caller,
+                            () -> callTimeout == null ? call.get() : Deadline.until(deadline, call));
+                    finished.set(true);
+                    result.complete(value);
+                } finally {
+                    concurrency.release();
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                finished.set(true);
+                result.completeExceptionally(e);
+            } catch (Throwable e) {
+                finished.set(true);
+                result.completeExceptionally(e);
+            } finally {
+                pending.release();
+            }
+        };
+
+        Future<?> future;
+        try {
+            future = executor.submit(task);
+        } catch (RejectedExecutionException e) {
+            pending.release();
+            return CompletableFuture.failedFuture(e);
+        }
+
+        result.whenComplete((value, error) -> {
+            if (started.compareAndSet(false, true)) {
+                pending.release();
+                future.cancel(false);
+            } else if (!finished.get()) {
+                future.cancel(true);
+            }
+        });
+        if (callTimeout != null) {
+            result.orTimeout(callTimeout.toNanos(), TimeUnit.NANOSECONDS);
+        }
+        return result;
+    }
+
+    @Override
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(30, TimeUnit.SECONDS)) {
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,176 @@
+package com.example.userservice.service;
+
+import com.example.userservice.dao.UserReplica;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
+import com.example.userservice.entity.User;
+import com.example.userservice.util.ReadYourWrites;
+import com.example.userservice.util.UnitOfWork;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Serves lookups by id, by email and the id-ordered listings from an in-process {@link UserReplica}.
+ * A read goes to the replica only when the replica is no more than {@code maxStaleness} behind the
+ * database. It must also already contain the caller's last committed write. Otherwise the read
+ * falls through to the delegate, as do writes, filtered searches, counts, streams and transactions.
+ * <p>
+ * The replica's lag is bounded by the feed's heartbeat interval, so {@code maxStaleness} should be larger than it.
+ */
+public class ReplicatedUserService implements UserService {
+    private final UserService delegate;
+    private final UserReplica replica;
+    private final long maxStalenessNanos;
+
+    private final LongAdder replicaReads = new LongAdder();
+    private final LongAdder delegatedReads = new LongAdder();
+
+    public ReplicatedUserService(UserService delegate, UserReplica replica, Duration maxStaleness) {
+        this.delegate = delegate;
+        this.replica = replica;
+        this.maxStalenessNanos = maxStaleness.toNanos();
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        if (id != null && fromReplica()) {
+            return replica.findById(id);
+        }
+        return delegate.findById(id);
+    }
+
+    @Override
+    public List<User> findAll() {
+        return fromReplica() ? replica.findPage(null, Integer.MAX_VALUE) : delegate.findAll();
+    }
+
+    @Override
+    public Stream<User> streamAll(int fetchSize) {
+        return delegate.streamAll(fetchSize);
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        if (limit > 0 && fromReplica()) {
+            return replica.findPage(afterId, limit);
+        }
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        return fromReplica() ? replica.findSummariesPage(null, Integer.MAX_VALUE) : delegate.findAllSummaries();
+    }
+
+    @Override
+    public List<UserSummary> findSummariesPage(Long afterId, int limit) {
+        if (limit > 0 && fromReplica()) {
+            return replica.findSummariesPage(afterId, limit);
+        }
+        return delegate.findSummariesPage(afterId, limit);
+    }
+
+    // Из реплики - только точный поиск по email: остальные фильтры обслуживают индексы БД
+    @Override
+    public List<User> search(UserSearch search) {
+        if (isEmailLookup(search) && fromReplica()) {
+            return replica.findByEmail(search.getEmail()).map(List::of).orElse(List.of());
+        }
+        return delegate.search(search);
+    }
+
+    private static boolean isEmailLookup(UserSearch search) {
+        return search.getEmail() != null && search.getMinAge() == null && search.getMaxAge() == null
+                && search.getNamePrefix() == null && search.getNameContains() == null
+                && search.getAfterId() == null && search.getLimit() > 0;
+    }
+
+    @Override
+    public long count(UserSearch search) {
+        return delegate.count(search);
+    }
+
+    @Override
+    public User save(User user) {
+        return delegate.save(user);
+    }
+
+    @Override
+    public int saveAll(Collection<User> users) {
+        return delegate.saveAll(users);
+    }
+
+    @Override
+    public int saveAll(Iterator<User> users) {
+        return delegate.saveAll(users);
+    }
+
+    @Override
+    public List<Long> upsertAllByEmail(Collection<User> users) {
+        return delegate.upsertAllByEmail(users);
+    }
+
+    @Override
+    public User update(User user) {
+        return delegate.update(user);
+    }
+
+    @Override
+    public int updateAll(Collection<User> users) {
+        return delegate.updateAll(users);
+    }
+
+    @Override
+    public boolean patch(Long id, UserPatch patch) {
+        return delegate.patch(id, patch);
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        return delegate.delete(id);
+    }
+
+    @Override
+    public int deleteAllById(Collection<Long> ids) {
+        return delegate.deleteAllById(ids);
+    }
+
+    @Override
+    public <T> T inTransaction(Function<UserService, T> work) {
+        return delegate.inTransaction(work);
+    }
+
+    private boolean fromReplica() {
+        long freshAsOf = replica.getFreshAsOfNanos();
+        long written = ReadYourWrites.current().getLastWriteNanos();
+        // Внутри транзакции читаем её собственную сессию; последняя запись должна успеть дойти до реплики
+        boolean usable = !UnitOfWork.isActive()
+                && freshAsOf != Long.MIN_VALUE
+                && System.nanoTime() - freshAsOf <= maxStalenessNanos
+                && (written == 0 || freshAsOf - written > 0);
+        (usable ? replicaReads : delegatedReads).increment();
+        return usable;
+    }
+
+    public long getReplicaReads() {
+        return replicaReads.sum();
+    }
+
+    public long getDelegatedReads() {
+        return delegatedReads.sum();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("ReplicatedUserService{rows=%d, replicaReads=%d, delegatedReads=%d}",
+                replica.size(), getReplicaReads(), getDelegatedReads());
+    }
+}
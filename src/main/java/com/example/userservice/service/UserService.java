@@ -1,13 +1,38 @@
 package com.example.userservice.service;
 
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
 import com.example.userservice.entity.User;
+import java.util.Collection;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public interface UserService {
     Optional<User> findById(Long id);
     List<User> findAll();
+    Stream<User> streamAll(int fetchSize);
+    List<User> findPage(Long afterId, int limit);
+    List<UserSummary> findAllSummaries();
+    List<UserSummary> findSummariesPage(Long afterId, int limit);
+    List<User> search(UserSearch search);
+    long count(UserSearch search);
     User save(User user);
+    int saveAll(Collection<User> users);
+    int saveAll(Iterator<User> users);
+    List<Long> upsertAllByEmail(Collection<User> users);
+    default Long upsertByEmail(User user) {
+        return upsertAllByEmail(List.of(user)).get(0);
+    }
     User update(User user);
-    void delete(Long id);
+    int updateAll(Collection<User> users);
+    boolean patch(Long id, UserPatch patch);
+    boolean delete(Long id);
+    int deleteAllById(Collection<Long> ids);
+
+    // Все вызовы сервиса внутри work выполняются в одной сессии и одной транзакции
+    <T> T inTransaction(Function<UserService, T> work);
 }
\ No newline at end of file
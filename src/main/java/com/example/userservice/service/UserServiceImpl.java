@@ -1,16 +1,33 @@
 package com.example.userservice.service;
 
 import com.example.userservice.dao.UserDao;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
 import com.example.userservice.entity.User;
+import com.example.userservice.util.UnitOfWork;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 public class UserServiceImpl implements UserService {
 
     private final UserDao userDao;
+    // null - статистика не ведётся
+    private final UserStatisticsService statistics;
 
     public UserServiceImpl(UserDao userDao) {
+        this(userDao, null);
+    }
+
+    public UserServiceImpl(UserDao userDao, UserStatisticsService statistics) {
         this.userDao = userDao;
+        this.statistics = statistics;
     }
 
     @Override
@@ -23,18 +40,170 @@ public class UserServiceImpl implements UserService {
         return userDao.findAll();
     }
 
+    @Override
+    public Stream<User> streamAll(int fetchSize) {
+        return userDao.streamAll(fetchSize);
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        return userDao.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        return userDao.findAllSummaries();
+    }
+
+    @Override
+    public List<UserSummary> findSummariesPage(Long afterId, int limit) {
+        return userDao.findSummariesPage(afterId, limit);
+    }
+
+    @Override
+    public List<User> search(UserSearch search) {
+        return userDao.search(search);
+    }
+
+    @Override
+    public long count(UserSearch search) {
+        return userDao.count(search);
+    }
+
     @Override
     public User save(User user) {
-        return userDao.save(user);
+        User saved = userDao.save(user);
+        if (tracking()) {
+            // created_at заполняется при вставке, поэтому событие читает сущность уже после commit
+            UnitOfWork.runAfterCommit(() -> statistics.onInsert(saved));
+        }
+        return saved;
+    }
+
+    @Override
+    public int saveAll(Collection<User> users) {
+        if (!tracking()) {
+            return userDao.saveAll(users);
+        }
+        int saved;
+        try {
+            saved = userDao.saveAll(users);
+        } catch (RuntimeException e) {
+            // Порции до ошибки уже закоммичены - какие именно, неизвестно
+            statistics.invalidate();
+            throw e;
+        }
+        UnitOfWork.runAfterCommit(() -> users.forEach(statistics::onInsert));
+        return saved;
+    }
+
+    // Потоковый импорт не держит вставленных пользователей в памяти, поэтому статистика перечитывается
+    @Override
+    public int saveAll(Iterator<User> users) {
+        try {
+            return userDao.saveAll(users);
+        } finally {
+            invalidateStatistics();
+        }
+    }
+
+    // Какие строки вставлены, а какие изменены, DAO не сообщает, поэтому статистика перечитывается
+    @Override
+    public List<Long> upsertAllByEmail(Collection<User> users) {
+        try {
+            return userDao.upsertAllByEmail(users);
+        } finally {
+            invalidateStatistics();
+        }
     }
 
     @Override
     public User update(User user) {
-        return userDao.update(user);
+        if (!tracking() || user.getId() == null) {
+            return userDao.update(user);
+        }
+        if (UnitOfWork.isActive()) {
+            // В сессии единицы работы прежнее состояние уже может быть перезаписано этим же пользователем
+            User updated = userDao.update(user);
+            UnitOfWork.runAfterCommit(statistics::invalidate);
+            return updated;
+        }
+        // Прежний возраст берётся из строки, заблокированной той же транзакцией, а не из кэша или реплики
+        User previous = userDao.updateReturningPrevious(user);
+        statistics.onAgeChange(previous.getAge(), user.getAge());
+        return user;
+    }
+
+    // Батч write-behind приходит сюда каждый тик: счётчики сдвигаются на разницу возрастов, а не перечитываются
+    @Override
+    public int updateAll(Collection<User> users) {
+        if (!tracking()) {
+            return userDao.updateAll(users);
+        }
+        if (UnitOfWork.isActive()) {
+            int updated = userDao.updateAll(users);
+            UnitOfWork.runAfterCommit(statistics::invalidate);
+            return updated;
+        }
+        Map<Long, Integer> previousAges = userDao.updateAllReturningPreviousAges(users);
+        // Повторы одного id в батче: строка получила последнее значение
+        Map<Long, Integer> newAges = new HashMap<>();
+        users.forEach(user -> newAges.put(user.getId(), user.getAge()));
+        previousAges.forEach((id, previousAge) -> statistics.onAgeChange(previousAge, newAges.get(id)));
+        return previousAges.size();
+    }
+
+    @Override
+    public boolean patch(Long id, UserPatch patch) {
+        if (!tracking() || patch.getAge() == null) {
+            return userDao.patch(id, patch) > 0;
+        }
+        if (UnitOfWork.isActive()) {
+            boolean patched = userDao.patch(id, patch) > 0;
+            UnitOfWork.runAfterCommit(statistics::invalidate);
+            return patched;
+        }
+        Optional<User> previous = userDao.patchReturningPrevious(id, patch);
+        previous.ifPresent(user -> statistics.onAgeChange(user.getAge(), patch.getAge()));
+        return previous.isPresent();
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        if (!tracking()) {
+            return userDao.deleteById(id) > 0;
+        }
+        if (UnitOfWork.isActive()) {
+            boolean deleted = userDao.deleteById(id) > 0;
+            UnitOfWork.runAfterCommit(statistics::invalidate);
+            return deleted;
+        }
+        Optional<User> previous = userDao.deleteReturningPrevious(id);
+        previous.ifPresent(statistics::onDelete);
+        return previous.isPresent();
+    }
+
+    @Override
+    public int deleteAllById(Collection<Long> ids) {
+        try {
+            return userDao.deleteAllById(ids);
+        } finally {
+            invalidateStatistics();
+        }
+    }
+
+    private boolean tracking() {
+        return statistics != null && statistics.isTracking();
+    }
+
+    private void invalidateStatistics() {
+        if (tracking()) {
+            UnitOfWork.runAfterCompletion(statistics::invalidate);
+        }
     }
 
     @Override
-    public void delete(Long id) {
-        userDao.findById(id).ifPresent(userDao::delete);
+    public <T> T inTransaction(Function<UserService, T> work) {
+        return UnitOfWork.execute(() -> work.apply(this));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,162 @@
+package com.example.userservice.service;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.entity.User;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * User count, average age, age distribution and signups per day, kept in memory.
+ * <p>
+ * The first read loads the figures with two GROUP BY queries ({@link UserDao#countByAge()},
+ * {@link UserDao#countSignupsByDay()}). After that {@link UserServiceImpl} reports every committed
+ * insert, age change and delete, including the batches of write-behind flushes ({@link UserService#updateAll}),
+ * and the {@link LongAdder} counters move by the difference. The previous age is taken from the row the write
+ * itself locked, so concurrent updates of one user cannot apply the same old value twice, and neither the
+ * cache nor a lagging replica is consulted. Count and
+ * average cost O(1); the distributions cost one entry per distinct age or day, however big the table is.
+ * <p>
+ * Bulk deletes, upserts, streamed imports and updates inside {@link UserService#inTransaction}
+ * do not know the previous state of the rows. They {@link #invalidate()} the figures instead, and the
+ * next read loads them again. A write that commits while the figures are loading can be counted twice or
+ * missed; the next invalidation or {@link #refresh()} corrects it.
+ */
+public class UserStatisticsService {
+    private final UserDao userDao;
+    private final Object loadLock = new Object();
+    private volatile Counters counters;
+
+    public UserStatisticsService(UserDao userDao) {
+        this.userDao = userDao;
+    }
+
+    public long getUserCount() {
+        return counters().users.sum();
+    }
+
+    public double getAverageAge() {
+        Counters current = counters();
+        long users = current.users.sum();
+        return users == 0 ? 0 : (double) current.ageSum.sum() / users;
+    }
+
+    public long getCountByAge(int age) {
+        LongAdder count = counters().byAge.get(age);
+        return count == null ? 0 : count.sum();
+    }
+
+    public SortedMap<Integer, Long> getAgeDistribution() {
+        return snapshot(counters().byAge);
+    }
+
+    public long getSignups(LocalDate day) {
+        LongAdder count = counters().signupsByDay.get(day);
+        return count == null ? 0 : count.sum();
+    }
+
+    // Границы включительно
+    public SortedMap<LocalDate, Long> getSignupsPerDay(LocalDate from, LocalDate to) {
+        return snapshot(counters().signupsByDay).subMap(from, true, to, true);
+    }
+
+    // Пока статистику никто не читал, события записи не нужны: первое чтение всё равно загрузит её из БД
+    boolean isTracking() {
+        return counters != null;
+    }
+
+    void onInsert(User user) {
+        Counters current = counters;
+        if (current != null) {
+            current.add(user.getAge(), signupDay(user.getCreatedAt()), 1);
+        }
+    }
+
+    void onDelete(User user) {
+        Counters current = counters;
+        if (current != null) {
+            current.add(user.getAge(), signupDay(user.getCreatedAt()), -1);
+        }
+    }
+
+    void onAgeChange(int oldAge, int newAge) {
+        Counters current = counters;
+        if (current != null && oldAge != newAge) {
+            current.byAge.computeIfAbsent(oldAge, key -> new LongAdder()).decrement();
+            current.byAge.computeIfAbsent(newAge, key -> new LongAdder()).increment();
+            current.ageSum.add(newAge - oldAge);
+        }
+    }
+
+    public void invalidate() {
+        counters = null;
+    }
+
+    public void refresh() {
+        synchronized (loadLock) {
+            counters = load();
+        }
+    }
+
+    private Counters counters() {
+        Counters current = counters;
+        if (current != null) {
+            return current;
+        }
+        synchronized (loadLock) {
+            if (counters == null) {
+                counters = load();
+            }
+            return counters;
+        }
+    }
+
+    private Counters load() {
+        Counters loaded = new Counters();
+        userDao.countByAge().forEach((age, count) -> {
+            loaded.byAge.computeIfAbsent(age, key -> new LongAdder()).add(count);
+            loaded.users.add(count);
+            loaded.ageSum.add((long) age * count);
+        });
+        userDao.countSignupsByDay().forEach((day, count) ->
+                loaded.signupsByDay.computeIfAbsent(day, key -> new LongAdder()).add(count));
+        return loaded;
+    }
+
+    // created_at ставит Hibernate при вставке; null бывает только у строк, созданных в обход сущности
+    private static LocalDate signupDay(LocalDateTime createdAt) {
+        return createdAt == null ? null : createdAt.toLocalDate();
+    }
+
+    private static <K extends Comparable<? super K>> TreeMap<K, Long> snapshot(Map<K, LongAdder> counts) {
+        TreeMap<K, Long> snapshot = new TreeMap<>();
+        counts.forEach((key, count) -> {
+            long value = count.sum();
+            if (value != 0) {
+                snapshot.put(key, value);
+            }
+        });
+        return snapshot;
+    }
+
+    private static final class Counters {
+        final LongAdder users = new LongAdder();
+        final LongAdder ageSum = new LongAdder();
+        final Map<Integer, LongAdder> byAge = new ConcurrentHashMap<>();
+        final Map<LocalDate, LongAdder> signupsByDay = new ConcurrentHashMap<>();
+
+        void add(int age, LocalDate day, int delta) {
+            users.add(delta);
+            ageSum.add((long) age * delta);
+            byAge.computeIfAbsent(age, key -> new LongAdder()).add(delta);
+            if (day != null) {
+                signupsByDay.computeIfAbsent(day, key -> new LongAdder()).add(delta);
+            }
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package com.example.userservice.service;
+
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
+import com.example.userservice.entity.User;
+import com.example.userservice.util.ExecutorFactory;
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.UnitOfWork;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import java.util.stream.Stream;
+
+/**
+ * Write-behind mode for {@link UserService#update}.
+ * <p>
+ * Updates are acknowledged as soon as they are queued; repeated updates of the same user within one
+ * flush window collapse into the latest state and are written as one JDBC batch per tick.
+ * Durability: a queued update is lost if the process dies before the next flush. Queued updates are
+ * flushed on every tick, on {@link #close()}, on {@link HibernateUtil#shutdown()} and synchronously by
+ * the caller once more than {@code maxPending} users are waiting. Reads by id see queued updates
+ * until they are written; list reads and deletes flush or drop the affected entries first. An update
+ * that keeps failing is retried on the next ticks and dropped after {@value #MAX_ATTEMPTS} attempts.
+ * Queued updates overwrite the current row without a version check.
+ */
+public class WriteBehindUserService implements UserService, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindUserService.class);
+    private static final int MAX_ATTEMPTS = 3;
+
+    private final UserService delegate;
+    private final int maxPending;
+    private final Map<Long, User> pending = new ConcurrentHashMap<>();
+    private final ReentrantLock flushLock = new ReentrantLock();
+    // Короткий замок очереди: update не ждёт записи батча, но не может вклиниться в удаление
+    private final ReentrantLock queueLock = new ReentrantLock();
+    private final Set<Long> deleting = new HashSet<>();
+    private final Map<Long, Integer> attempts = new HashMap<>();
+    private final ScheduledExecutorService scheduler;
+    private final Runnable shutdownListener = this::flush;
+
+    private final LongAdder queuedUpdates = new LongAdder();
+    private final LongAdder writtenUpdates = new LongAdder();
+    private final LongAdder failedUpdates = new LongAdder();
+
+    public WriteBehindUserService(UserService delegate, Duration flushInterval, int maxPending) {
+        this.delegate = delegate;
+        this.maxPending = maxPending;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(ExecutorFactory.daemonThreads("write-behind"));
+        long intervalMillis = flushInterval.toMillis();
+        scheduler.scheduleWithFixedDelay(this::flushQuietly, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+        HibernateUtil.addShutdownListener(shutdownListener);
+    }
+
+    @Override
+    public User update(User user) {
+        if (user.getId() == null || UnitOfWork.isActive()) {
+            return delegate.update(user);
+        }
+        boolean queued;
+        queueLock.lock();
+        try {
+            queued = !deleting.contains(user.getId());
+            if (queued) {
+                pending.put(user.getId(), versionless(user));
+            }
+        } finally {
+            queueLock.unlock();
+        }
+        // Во время удаления пользователь не ставится в очередь: синхронный update упорядочит их в БД
+        if (!queued) {
+            return delegate.update(user);
+        }
+        queuedUpdates.increment();
+        if (pending.size() > maxPending) {
+            flush();
+        }
+        return user;
+    }
+
+    // Отложенная запись - последняя побеждает: версия объекта вызывающего к flush могла устареть
+    // из-за его же предыдущей отложенной записи, а отклонить её уже некому
+    private static User versionless(User user) {
+        User copy = user.copy();
+        copy.setVersion(null);
+        return copy;
+    }
+
+    @Override
+    public int updateAll(Collection<User> users) {
+        users.forEach(this::update);
+        return users.size();
+    }
+
+    // Отложенное обновление того же пользователя записывается раньше patch, иначе оно затёрло бы его поля
+    @Override
+    public boolean patch(Long id, UserPatch patch) {
+        if (pending.containsKey(id)) {
+            flush();
+        }
+        return delegate.patch(id, patch);
+    }
+
+    @Override
+    public Optional<User> findById(Long id) {
+        if (UnitOfWork.isActive()) {
+            return delegate.findById(id);
+        }
+        User queued = id == null ? null : pending.get(id);
+        if (queued != null) {
+            return Optional.of(queued.copy());
+        }
+        return delegate.findById(id);
+    }
+
+    @Override
+    public List<User> findAll() {
+        flush();
+        return delegate.findAll();
+    }
+
+    @Override
+    public Stream<User> streamAll(int fetchSize) {
+        flush();
+        return delegate.streamAll(fetchSize);
+    }
+
+    @Override
+    public List<User> findPage(Long afterId, int limit) {
+        flush();
+        return delegate.findPage(afterId, limit);
+    }
+
+    @Override
+    public List<UserSummary> findAllSummaries() {
+        flush();
+        return delegate.findAllSummaries();
+    }
+
+    @Override
+    public List<UserSummary> findSummariesPage(Long afterId, int limit) {
+        flush();
+        return delegate.findSummariesPage(afterId, limit);
+    }
+
+    @Override
+    public List<User> search(UserSearch search) {
+        flush();
+        return delegate.search(search);
+    }
+
+    @Override
+    public long count(UserSearch search) {
+        flush();
+        return delegate.count(search);
+    }
+
+    @Override
+    public User save(User user) {
+        return delegate.save(user);
+    }
+
+    @Override
+    public int saveAll(Collection<User> users) {
+        return delegate.saveAll(users);
+    }
+
+    @Override
+    public int saveAll(Iterator<User> users) {
+        return delegate.saveAll(users);
+    }
+
+    // id по email заранее неизвестны, поэтому очередь сбрасывается целиком, иначе она затёрла бы результат upsert
+    @Override
+    public List<Long> upsertAllByEmail(Collection<User> users) {
+        flush();
+        return delegate.upsertAllByEmail(users);
+    }
+
+    @Override
+    public boolean delete(Long id) {
+        List<Long> ids = Collections.singletonList(id);
+        flushLock.lock();
+        try {
+            dequeueForDelete(ids);
+            try {
+                return delegate.delete(id);
+            } finally {
+                deleted(ids);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    @Override
+    public int deleteAllById(Collection<Long> ids) {
+        flushLock.lock();
+        try {
+            dequeueForDelete(ids);
+            try {
+                return delegate.deleteAllById(ids);
+            } finally {
+                deleted(ids);
+            }
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void dequeueForDelete(Collection<Long> ids) {
+        queueLock.lock();
+        try {
+            for (Long id : ids) {
+                pending.remove(id);
+                attempts.remove(id);
+                deleting.add(id);
+            }
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    private void deleted(Collection<Long> ids) {
+        queueLock.lock();
+        try {
+            deleting.removeAll(ids);
+        } finally {
+            queueLock.unlock();
+        }
+    }
+
+    // Очередь сбрасывается до начала транзакции, чтобы она видела все подтверждённые обновления
+    @Override
+    public <T> T inTransaction(Function<UserService, T> work) {
+        flush();
+        return delegate.inTransaction(work);
+    }
+
+    // Один flush за раз: иначе два батча с разными версиями одного пользователя могли бы записаться не по порядку.
+    // Записи остаются в очереди до commit, чтобы чтение по id не увидело старую строку
+    public void flush() {
+        flushLock.lock();
+        try {
+            if (pending.isEmpty()) {
+                return;
+            }
+            List<User> batch = new ArrayList<>(pending.values());
+            write(batch);
+        } finally {
+            flushLock.unlock();
+        }
+    }
+
+    private void write(List<User> batch) {
+        try {
+            delegate.updateAll(batch);
+            batch.forEach(this::written);
+        } catch (Exception batchError) {
+            // Батч откатился целиком - пишем по одному, чтобы отложить только проблемные записи
+            logger.warn("Write-behind batch of {} users failed, retrying one by one", batch.size(), batchError);
+            for (User user : batch) {
+                try {
+                    delegate.update(user);
+                    written(user);
+                } catch (Exception e) {
+                    failed(user, e);
+                }
+            }
+        }
+    }
+
+    // Более новое обновление, поставленное во время записи, остаётся в очереди до следующего flush
+    private void written(User user) {
+        writtenUpdates.increment();
+        attempts.remove(user.getId());
+        pending.remove(user.getId(), user);
+    }
+
+    private void failed(User user, Exception e) {
+        int attempt = attempts.merge(user.getId(), 1, Integer::sum);
+        if (attempt < MAX_ATTEMPTS) {
+            logger.warn("Write-behind update for user {} failed (attempt {} of {}), keeping it queued",
+                    user.getId(), attempt, MAX_ATTEMPTS, e);
+            return;
+        }
+        attempts.remove(user.getId());
+        pending.remove(user.getId(), user);
+        failedUpdates.increment();
+        logger.error("Dropping write-behind update for user: {}", user, e);
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (Exception e) {
+            logger.error("Write-behind flush failed", e);
+        }
+    }
+
+    public int getPendingCount() {
+        return pending.size();
+    }
+
+    public long getQueuedUpdates() {
+        return queuedUpdates.sum();
+    }
+
+    public long getWrittenUpdates() {
+        return writtenUpdates.sum();
+    }
+
+    public long getFailedUpdates() {
+        return failedUpdates.sum();
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+        HibernateUtil.removeShutdownListener(shutdownListener);
+    }
+}
@@ -0,0 +1,46 @@
+package com.example.userservice.util;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * A time budget bound to the current thread for the duration of {@link #within} or {@link #until}.
+ * DAO calls made inside cap their statement and lock timeouts at the time that is left, so the
+ * database stops working on a call as soon as its caller has given up on it. Nested deadlines
+ * can only shorten the outer one.
+ */
+public final class Deadline {
+    // System.nanoTime(), к которому вызов должен завершиться
+    private static final ThreadLocal<long[]> current = new ThreadLocal<>();
+
+    private Deadline() {
+    }
+
+    public static <T> T within(Duration budget, Supplier<T> work) {
+        return until(System.nanoTime() + budget.toNanos(), work);
+    }
+
+    public static <T> T until(long deadlineNanos, Supplier<T> work) {
+        long[] outer = current.get();
+        if (outer != null && outer[0] - deadlineNanos <= 0) {
+            return work.get();
+        }
+        current.set(new long[]{deadlineNanos});
+        try {
+            return work.get();
+        } finally {
+            if (outer == null) {
+                current.remove();
+            } else {
+                current.set(outer);
+            }
+        }
+    }
+
+    // Пусто - у потока нет дедлайна; отрицательное значение - он уже истёк
+    public static Optional<Duration> remaining() {
+        long[] deadline = current.get();
+        return deadline == null ? Optional.empty() : Optional.of(Duration.ofNanos(deadline[0] - System.nanoTime()));
+    }
+}
@@ -0,0 +1,52 @@
+package com.example.userservice.util;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+public final class ExecutorFactory {
+    private static final Logger logger = LoggerFactory.getLogger(ExecutorFactory.class);
+
+    private ExecutorFactory() {
+    }
+
+    /**
+     * Virtual-thread-per-task executor when the running JDK has one (21+), otherwise a fixed pool
+     * of {@code platformThreads} daemon threads. The project targets Java 11, hence the reflective lookup.
+     */
+    public static ExecutorService newTaskExecutor(String name, int platformThreads) {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            ExecutorService executor = (ExecutorService) factory.invoke(null);
+            logger.debug("Using virtual threads for {}", name);
+            return executor;
+        } catch (ReflectiveOperationException e) {
+            logger.debug("Virtual threads unavailable, using {} platform threads for {}", platformThreads, name);
+            return newPlatformExecutor(name, platformThreads);
+        }
+    }
+
+    public static ExecutorService newPlatformExecutor(String name, int threads) {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), daemonThreads(name));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    public static ThreadFactory daemonThreads(String name) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
@@ -1,72 +1,480 @@
 package com.example.userservice.util;
 
+import com.example.userservice.metrics.HibernateStatistics;
+import com.example.userservice.metrics.HibernateStatisticsMBean;
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.Session;
+import org.hibernate.SessionEventListener;
 import org.hibernate.SessionFactory;
+import org.hibernate.SharedSessionContract;
+import org.hibernate.StatelessSession;
 import org.hibernate.boot.Metadata;
 import org.hibernate.boot.MetadataSources;
 import org.hibernate.boot.registry.StandardServiceRegistry;
 import org.hibernate.boot.registry.StandardServiceRegistryBuilder;
+import org.hibernate.cfg.AvailableSettings;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.cfg.Environment;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.config.spi.ConfigurationService;
+import org.hibernate.engine.spi.SessionEventListenerManager;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.engine.spi.SharedSessionContractImplementor;
+import org.hibernate.service.ServiceRegistry;
 
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.StandardMBean;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
 
+/**
+ * Owns the SessionFactory. The current factory lives in a {@link Generation} behind an
+ * {@link AtomicReference}: the first caller builds it and concurrent callers wait for the same build.
+ * Once the factory is up, {@link #getSessionFactory()} takes no lock. {@link #reload} swaps in a new
+ * factory without a restart: requests keep running on the old one while the new one builds, and the old
+ * factory closes only after every session opened through {@link #openSession()} /
+ * {@link #openStatelessSession()} has closed, or after the drain timeout.
+ */
 public class HibernateUtil {
-    private static SessionFactory sessionFactory;
-    private static Configuration configuration;
+    public static final Duration DEFAULT_DRAIN_TIMEOUT = Duration.ofSeconds(30);
+    // Единственное место этих настроек, и для hibernate.cfg.xml, и для своих конфигураций (тесты, бенчмарки);
+    // применяются первыми, так что конфигурация может их переопределить. Именованные запросы проверяются и
+    // компилируются при сборке SessionFactory, IN (...) выравнивается до степени двойки, чтобы число разных SQL было ограничено
+    private static final Map<String, Object> QUERY_DEFAULTS = Map.of(
+            AvailableSettings.QUERY_STARTUP_CHECKING, "true",
+            AvailableSettings.IN_CLAUSE_PARAMETER_PADDING, "true",
+            AvailableSettings.QUERY_PLAN_CACHE_MAX_SIZE, "2048",
+            AvailableSettings.QUERY_PLAN_CACHE_PARAMETER_METADATA_MAX_SIZE, "128");
+
+    private static final AtomicReference<Generation> current = new AtomicReference<>();
+    // Быстрый старт включает версионные миграции (src/main/scl) и для своих конфигураций
+    private static volatile boolean migrateSchema;
+    private static final List<Runnable> shutdownListeners = new CopyOnWriteArrayList<>();
 
     public static void initialize() {
-        if (sessionFactory == null) {
-            try {
-                StandardServiceRegistryBuilder registryBuilder = new StandardServiceRegistryBuilder();
-
-                if (configuration != null) {
-                    // Применяем настройки из кастомной конфигурации
-                    Properties props = new Properties();
-                    props.putAll(configuration.getProperties());
-                    registryBuilder.applySettings(props);
-                } else {
-                    registryBuilder.configure("hibernate.cfg.xml");
-                }
+        getSessionFactory();
+    }
 
-                StandardServiceRegistry registry = registryBuilder.build();
-                MetadataSources sources = new MetadataSources(registry);
+    private static SessionFactory build(Configuration configuration) {
+        try {
+            StandardServiceRegistryBuilder registryBuilder = new StandardServiceRegistryBuilder()
+                    .applySettings(QUERY_DEFAULTS);
 
-                // Если есть кастомная конфигурация, вручную добавляем классы
-                if (configuration != null) {
-                    // Здесь нужно вручную добавить все entity-классы
-                    sources.addAnnotatedClass(com.example.userservice.entity.User.class);
-                    // Добавьте другие классы по аналогии
+            if (configuration != null) {
+                // Применяем настройки из кастомной конфигурации
+                Properties props = new Properties();
+                props.putAll(configuration.getProperties());
+                if (!props.containsKey(AvailableSettings.CONNECTION_PROVIDER)) {
+                    props.put(AvailableSettings.CONNECTION_PROVIDER, PooledConnectionProvider.class.getName());
+                    props.put(AvailableSettings.CONNECTION_PROVIDER_DISABLES_AUTOCOMMIT, "true");
                 }
+                registryBuilder.applySettings(props);
+            } else {
+                registryBuilder.configure("hibernate.cfg.xml");
+            }
 
-                Metadata metadata = sources.getMetadataBuilder().build();
-                sessionFactory = metadata.getSessionFactoryBuilder().build();
-            } catch (Exception e) {
-                System.err.println("SessionFactory creation failed: " + e);
-                throw new ExceptionInInitializerError(e);
+            if (migrateSchema) {
+                registryBuilder.applySetting(SchemaMigrations.ENABLED, "true");
+                registryBuilder.applySetting(AvailableSettings.HBM2DDL_AUTO, "validate");
+            }
+            StandardServiceRegistry registry = registryBuilder.build();
+            Map<String, Object> settings = settings(registry);
+            // Схему ведут миграции в обоих режимах запуска; Hibernate после них только сверяет маппинг
+            if (Boolean.parseBoolean(String.valueOf(settings.get(SchemaMigrations.ENABLED)))) {
+                SchemaMigrations.migrate(settings);
+            }
+            MetadataSources sources = new MetadataSources(registry);
+
+            // Если есть кастомная конфигурация, вручную добавляем классы
+            if (configuration != null) {
+                // Здесь нужно вручную добавить все entity-классы
+                sources.addAnnotatedClass(com.example.userservice.entity.User.class);
+                // Добавьте другие классы по аналогии
+            }
+
+            Metadata metadata = sources.getMetadataBuilder().build();
+            SessionFactory factory = metadata.getSessionFactoryBuilder().build();
+            registerStatistics(factory);
+            return factory;
+        } catch (Exception e) {
+            System.err.println("SessionFactory creation failed: " + e);
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Реплика получает все настройки primary, кроме URL, имени пула и схемы: её ведёт primary
+    private static SessionFactory buildReplica(Map<String, Object> primarySettings, String url, int index) {
+        try {
+            Map<String, Object> settings = new HashMap<>(primarySettings);
+            settings.remove(ReplicaRouter.REPLICA_URLS);
+            settings.put(AvailableSettings.URL, url);
+            settings.put(AvailableSettings.HBM2DDL_AUTO, "none");
+            // Недоступная реплика не должна держать чтение весь таймаут пула primary: после него чтение уйдёт на primary
+            settings.put(PooledConnectionProvider.ACQUIRE_TIMEOUT_MS,
+                    String.valueOf(settings.getOrDefault(ReplicaRouter.ACQUIRE_TIMEOUT_MS, "1000")).trim());
+            settings.put(PooledConnectionProvider.POOL_NAME,
+                    settings.getOrDefault(PooledConnectionProvider.POOL_NAME, "user-service-pool") + "-replica-" + index);
+            StandardServiceRegistry registry = new StandardServiceRegistryBuilder().applySettings(settings).build();
+            return new MetadataSources(registry)
+                    .addAnnotatedClass(com.example.userservice.entity.User.class)
+                    .buildMetadata()
+                    .buildSessionFactory();
+        } catch (Exception e) {
+            System.err.println("Replica SessionFactory creation failed for " + url + ": " + e);
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    // Hibernate Statistics публикуются в JMX, заменяя бин предыдущей SessionFactory
+    private static void registerStatistics(SessionFactory factory) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(HibernateStatistics.OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
             }
+            server.registerMBean(new StandardMBean(new HibernateStatistics(factory.getStatistics()),
+                    HibernateStatisticsMBean.class), name);
+        } catch (JMException e) {
+            System.err.println("Hibernate statistics JMX registration failed: " + e);
         }
     }
 
+    /**
+     * Fast startup: builds the SessionFactory on a background thread right away instead of on the
+     * first DAO call. The schema is brought up to date by the versioned migrations and validated, also
+     * for a configuration set with {@link #setConfiguration} that does not enable {@link SchemaMigrations#ENABLED}.
+     * Callers that need the factory earlier simply wait for it.
+     */
+    public static CompletableFuture<SessionFactory> startInBackground() {
+        migrateSchema = true;
+        return CompletableFuture.supplyAsync(HibernateUtil::getSessionFactory, runnable -> {
+            Thread thread = new Thread(runnable, "hibernate-bootstrap");
+            thread.setDaemon(true);
+            thread.start();
+        });
+    }
+
+    /**
+     * Replaces the configuration; the new factory is built lazily on next use. The previous factory
+     * drains like in {@link #reload}.
+     */
     public static void setConfiguration(Configuration config) {
-        if (sessionFactory != null && !sessionFactory.isClosed()) {
-            sessionFactory.close();
+        Generation previous = current.getAndSet(new Generation(config));
+        if (previous != null) {
+            previous.retire(DEFAULT_DRAIN_TIMEOUT);
         }
-        configuration = config;
-        sessionFactory = null;
+    }
+
+    public static CompletableFuture<Void> reload(Configuration config) {
+        return reload(config, DEFAULT_DRAIN_TIMEOUT);
+    }
+
+    /**
+     * Builds a factory from {@code config} (null means {@code hibernate.cfg.xml}) and makes it current.
+     * If the build fails, the old factory stays in place and the error is thrown. The returned future
+     * completes once the old factory has closed: when its last leased session ends, or after
+     * {@code drainTimeout}, whichever comes first.
+     */
+    public static CompletableFuture<Void> reload(Configuration config, Duration drainTimeout) {
+        Generation next = new Generation(config);
+        next.factory();
+        Generation previous = current.getAndSet(next);
+        if (previous == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return previous.retire(drainTimeout);
     }
 
     public static SessionFactory getSessionFactory() {
-        if (sessionFactory == null || sessionFactory.isClosed()) {
-            initialize();
+        while (true) {
+            SessionFactory factory = currentGeneration().factory();
+            if (factory != null) {
+                return factory;
+            }
         }
-        return sessionFactory;
+    }
+
+    /**
+     * Settings of the current factory, including the password that {@link SessionFactory#getProperties()} masks.
+     * For components that need their own JDBC connection outside the pool.
+     */
+    public static Map<String, Object> getSettings() {
+        return settings(getSessionFactory().unwrap(SessionFactoryImplementor.class).getServiceRegistry());
+    }
+
+    // ConfigurationService в Hibernate 5 отдаёт сырой Map
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> settings(ServiceRegistry registry) {
+        return registry.getService(ConfigurationService.class).getSettings();
+    }
+
+    /**
+     * Session on the primary. A committed transaction in it sends the reads of the caller's
+     * {@link ReadYourWrites} context to the primary for the sticky window, see {@link ReplicaRouter}.
+     */
+    public static Session openSession() {
+        return open(false, SessionFactory::openSession);
+    }
+
+    public static StatelessSession openStatelessSession() {
+        return open(false, SessionFactory::openStatelessSession);
+    }
+
+    /**
+     * Session for reads only: on a replica picked by {@link ReplicaRouter} when replicas are configured,
+     * otherwise on the primary.
+     */
+    public static Session openReadSession() {
+        return open(true, SessionFactory::openSession);
+    }
+
+    public static StatelessSession openReadStatelessSession() {
+        return open(true, SessionFactory::openStatelessSession);
+    }
+
+    // Сессия держит своё поколение: старая фабрика не закроется, пока сессия открыта
+    private static <S extends SharedSessionContract> S open(boolean read, Function<SessionFactory, S> opener) {
+        Generation generation = acquire();
+        try {
+            SessionFactory primary = generation.factory();
+            ReplicaRouter router = read ? generation.router : null;
+            ReplicaRouter.Replica replica = null;
+            S session = null;
+            while (session == null) {
+                replica = router == null ? null : router.route(ReadYourWrites.current());
+                session = replica == null ? opener.apply(primary) : openOnReplica(router, replica, opener);
+            }
+            SessionEventListenerManager listeners = ((SharedSessionContractImplementor) session).getEventListenerManager();
+            listeners.addListener(generation.newLease(read ? null : ReadYourWrites.current()));
+            if (replica != null) {
+                listeners.addListener(replica.newLease());
+            }
+            return session;
+        } catch (RuntimeException | Error e) {
+            generation.release();
+            throw e;
+        }
+    }
+
+    // Соединение берётся сразу: упавшая реплика выводится из ротации, а чтение уходит на следующую или на primary
+    private static <S extends SharedSessionContract> S openOnReplica(ReplicaRouter router, ReplicaRouter.Replica replica,
+                                                                     Function<SessionFactory, S> opener) {
+        S session = opener.apply(replica.getFactory());
+        try {
+            session.doWork(connection -> { });
+            return session;
+        } catch (RuntimeException e) {
+            session.close();
+            router.markDown(replica, e);
+            return null;
+        }
+    }
+
+    public static List<ReplicaRouter.Replica> getReplicas() {
+        getSessionFactory();
+        ReplicaRouter router = currentGeneration().router;
+        return router == null ? List.of() : router.getReplicas();
+    }
+
+    private static Generation currentGeneration() {
+        while (true) {
+            Generation generation = current.get();
+            if (generation != null) {
+                return generation;
+            }
+            generation = new Generation(null);
+            if (current.compareAndSet(null, generation)) {
+                return generation;
+            }
+        }
+    }
+
+    private static Generation acquire() {
+        while (true) {
+            Generation generation = currentGeneration();
+            if (generation.tryAcquire()) {
+                return generation;
+            }
+            // Поколение уже выводится из работы: current к этому моменту указывает на новое
+        }
+    }
+
+    public static Optional<PoolMetrics> getPoolMetrics() {
+        ConnectionProvider provider = getSessionFactory().unwrap(SessionFactoryImplementor.class)
+                .getServiceRegistry()
+                .getService(ConnectionProvider.class);
+        if (provider instanceof PooledConnectionProvider) {
+            return Optional.of(((PooledConnectionProvider) provider).getMetrics());
+        }
+        return Optional.empty();
+    }
+
+    // Вызываются в shutdown() до закрытия SessionFactory, пока ещё можно писать в БД
+    public static void addShutdownListener(Runnable listener) {
+        shutdownListeners.add(listener);
+    }
+
+    public static void removeShutdownListener(Runnable listener) {
+        shutdownListeners.remove(listener);
     }
 
     public static void shutdown() {
-        if (sessionFactory != null && !sessionFactory.isClosed()) {
-            sessionFactory.close();
+        for (Runnable listener : shutdownListeners) {
+            try {
+                listener.run();
+            } catch (Exception e) {
+                System.err.println("Shutdown listener failed: " + e);
+            }
+        }
+        Generation generation = current.getAndSet(null);
+        if (generation != null) {
+            generation.close();
+        }
+        migrateSchema = false;
+    }
+
+    /**
+     * One SessionFactory and the sessions leased from it. {@code state} holds the lease count times two,
+     * with the lowest bit set once the generation is retired. The factory closes on the transition to
+     * "retired, no leases", which happens exactly once.
+     */
+    private static final class Generation {
+        private static final int RETIRED = 1;
+        private static final int LEASE = 2;
+
+        private final Configuration configuration;
+        private final CompletableFuture<SessionFactory> future = new CompletableFuture<>();
+        private final AtomicBoolean building = new AtomicBoolean();
+        private final AtomicInteger state = new AtomicInteger();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final CompletableFuture<Void> drained = new CompletableFuture<>();
+        private volatile ReplicaRouter router;
+
+        Generation(Configuration configuration) {
+            this.configuration = configuration;
+        }
+
+        // null - поколение выведено до того, как его успели собрать; вызывающий перечитывает current
+        SessionFactory factory() {
+            SessionFactory factory = future.getNow(null);
+            if (factory != null) {
+                return factory;
+            }
+            if (building.compareAndSet(false, true)) {
+                try {
+                    SessionFactory primary = build(configuration);
+                    try {
+                        // getProperties() фабрики скрывает пароль, поэтому настройки берутся из реестра
+                        Map<String, Object> settings = settings(primary.unwrap(SessionFactoryImplementor.class).getServiceRegistry());
+                        router = ReplicaRouter.create(settings, (url, index) -> buildReplica(settings, url, index));
+                    } catch (RuntimeException | Error e) {
+                        primary.close();
+                        throw e;
+                    }
+                    future.complete(primary);
+                } catch (RuntimeException | Error e) {
+                    future.completeExceptionally(e);
+                    // Следующий вызов попробует собрать фабрику заново
+                    current.compareAndSet(this, new Generation(configuration));
+                }
+            }
+            try {
+                return future.join();
+            } catch (CancellationException e) {
+                return null;
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw (RuntimeException) e.getCause();
+            }
+        }
+
+        boolean tryAcquire() {
+            while (true) {
+                int value = state.get();
+                if ((value & RETIRED) != 0) {
+                    return false;
+                }
+                if (state.compareAndSet(value, value + LEASE)) {
+                    return true;
+                }
+            }
+        }
+
+        void release() {
+            if (state.addAndGet(-LEASE) == RETIRED) {
+                close();
+            }
+        }
+
+        // writer - контекст, в котором открыта пишущая сессия; null для чтения
+        SessionEventListener newLease(ReadYourWrites writer) {
+            return new BaseSessionEventListener() {
+                @Override
+                public void transactionCompletion(boolean successful) {
+                    if (writer != null && successful) {
+                        writer.markWrite();
+                    }
+                }
+
+                @Override
+                public void end() {
+                    release();
+                }
+            };
+        }
+
+        CompletableFuture<Void> retire(Duration drainTimeout) {
+            if (state.getAndUpdate(value -> value | RETIRED) == 0) {
+                close();
+                return drained;
+            }
+            CompletableFuture.delayedExecutor(drainTimeout.toMillis(), TimeUnit.MILLISECONDS).execute(() -> {
+                if (!drained.isDone()) {
+                    System.err.println("SessionFactory closed with " + (state.get() / LEASE)
+                            + " sessions still open after " + drainTimeout);
+                    close();
+                }
+            });
+            return drained;
+        }
+
+        void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (building.compareAndSet(false, true)) {
+                future.cancel(false);
+            } else {
+                // Если сборка ещё идёт, фабрика закроется сразу по её окончании
+                future.thenAccept(factory -> {
+                    if (!factory.isClosed()) {
+                        factory.close();
+                    }
+                    if (router != null) {
+                        router.close();
+                    }
+                });
+            }
+            drained.complete(null);
         }
-        sessionFactory = null;
-        configuration = null;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,103 @@
+package com.example.userservice.util;
+
+import com.zaxxer.hikari.HikariPoolMXBean;
+import com.zaxxer.hikari.metrics.IMetricsTracker;
+import com.zaxxer.hikari.metrics.MetricsTrackerFactory;
+import com.zaxxer.hikari.metrics.PoolStats;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Live gauges of {@link PooledConnectionProvider}: pool occupancy and connection acquire latency.
+ */
+public class PoolMetrics implements MetricsTrackerFactory, IMetricsTracker {
+    private final int minSize;
+    private final int maxSize;
+    private final LongAdder acquireCount = new LongAdder();
+    private final LongAdder acquireNanos = new LongAdder();
+    private final AtomicLong maxAcquireNanos = new AtomicLong();
+    private final LongAdder acquireTimeouts = new LongAdder();
+    private volatile HikariPoolMXBean pool;
+
+    PoolMetrics(int minSize, int maxSize) {
+        this.minSize = minSize;
+        this.maxSize = maxSize;
+    }
+
+    void bind(HikariPoolMXBean pool) {
+        this.pool = pool;
+    }
+
+    public int getMinSize() {
+        return minSize;
+    }
+
+    public int getMaxSize() {
+        return maxSize;
+    }
+
+    public int getActiveConnections() {
+        HikariPoolMXBean current = pool;
+        return current == null ? 0 : current.getActiveConnections();
+    }
+
+    public int getIdleConnections() {
+        HikariPoolMXBean current = pool;
+        return current == null ? 0 : current.getIdleConnections();
+    }
+
+    public int getTotalConnections() {
+        HikariPoolMXBean current = pool;
+        return current == null ? 0 : current.getTotalConnections();
+    }
+
+    public int getWaitingThreads() {
+        HikariPoolMXBean current = pool;
+        return current == null ? 0 : current.getThreadsAwaitingConnection();
+    }
+
+    public long getAcquireCount() {
+        return acquireCount.sum();
+    }
+
+    public long getAcquireTimeouts() {
+        return acquireTimeouts.sum();
+    }
+
+    public double getAverageAcquireMillis() {
+        long count = acquireCount.sum();
+        return count == 0 ? 0.0 : acquireNanos.sum() / (double) count / TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    public double getMaxAcquireMillis() {
+        return maxAcquireNanos.get() / (double) TimeUnit.MILLISECONDS.toNanos(1);
+    }
+
+    @Override
+    public IMetricsTracker create(String poolName, PoolStats poolStats) {
+        return this;
+    }
+
+    @Override
+    public void recordConnectionAcquiredNanos(long elapsedAcquiredNanos) {
+        acquireCount.increment();
+        acquireNanos.add(elapsedAcquiredNanos);
+        maxAcquireNanos.accumulateAndGet(elapsedAcquiredNanos, Math::max);
+    }
+
+    @Override
+    public void recordConnectionTimeout() {
+        acquireTimeouts.increment();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("PoolMetrics{active=%d, idle=%d, total=%d, waiting=%d, min=%d, max=%d, "
+                        + "acquires=%d, avgAcquireMs=%.3f, maxAcquireMs=%.3f, timeouts=%d}",
+                getActiveConnections(), getIdleConnections(), getTotalConnections(), getWaitingThreads(),
+                minSize, maxSize, getAcquireCount(), getAverageAcquireMillis(), getMaxAcquireMillis(),
+                getAcquireTimeouts());
+    }
+}
@@ -0,0 +1,146 @@
+package com.example.userservice.util;
+
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import org.hibernate.HibernateException;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.engine.jdbc.connections.internal.ConnectionProviderInitiator;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.service.UnknownUnwrapTypeException;
+import org.hibernate.service.spi.Configurable;
+import org.hibernate.service.spi.Stoppable;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Hikari-backed {@link ConnectionProvider}. Plugged in through
+ * {@code hibernate.connection.provider_class}; tuned with the {@code hibernate.pool.*} settings below.
+ */
+public class PooledConnectionProvider implements ConnectionProvider, Configurable, Stoppable {
+    public static final String MIN_SIZE = "hibernate.pool.min_size";
+    public static final String MAX_SIZE = "hibernate.pool.max_size";
+    public static final String ACQUIRE_TIMEOUT_MS = "hibernate.pool.acquire_timeout_ms";
+    public static final String VALIDATION_TIMEOUT_MS = "hibernate.pool.validation_timeout_ms";
+    public static final String LEAK_DETECTION_THRESHOLD_MS = "hibernate.pool.leak_detection_threshold_ms";
+    public static final String IDLE_TIMEOUT_MS = "hibernate.pool.idle_timeout_ms";
+    public static final String MAX_LIFETIME_MS = "hibernate.pool.max_lifetime_ms";
+    public static final String TEST_QUERY = "hibernate.pool.connection_test_query";
+    public static final String POOL_NAME = "hibernate.pool.name";
+
+    private static final long serialVersionUID = 1L;
+    private static final int DEFAULT_MAX_SIZE = 10;
+
+    private HikariDataSource dataSource;
+    private PoolMetrics metrics;
+
+    // Сигнатуры Configurable и Wrapped в Hibernate 5 сырые; дальше работаем с Map<?, ?>
+    @Override
+    @SuppressWarnings("rawtypes")
+    public void configure(Map configurationValues) {
+        Map<?, ?> settings = configurationValues;
+        HikariConfig config = new HikariConfig();
+        config.setPoolName(stringSetting(settings, POOL_NAME, "user-service-pool"));
+        config.setJdbcUrl(stringSetting(settings, AvailableSettings.URL, null));
+        config.setUsername(stringSetting(settings, AvailableSettings.USER, null));
+        config.setPassword(stringSetting(settings, AvailableSettings.PASS, null));
+        String driverClass = stringSetting(settings, AvailableSettings.DRIVER, null);
+        if (driverClass != null) {
+            config.setDriverClassName(driverClass);
+        }
+
+        // Старое значение connection.pool_size используется как max, если hibernate.pool.max_size не задан
+        int maxSize = intSetting(settings, MAX_SIZE, intSetting(settings, AvailableSettings.POOL_SIZE, DEFAULT_MAX_SIZE));
+        config.setMaximumPoolSize(maxSize);
+        config.setMinimumIdle(Math.min(intSetting(settings, MIN_SIZE, Math.min(2, maxSize)), maxSize));
+        config.setConnectionTimeout(longSetting(settings, ACQUIRE_TIMEOUT_MS, 30_000));
+        config.setValidationTimeout(longSetting(settings, VALIDATION_TIMEOUT_MS, 5_000));
+        config.setLeakDetectionThreshold(longSetting(settings, LEAK_DETECTION_THRESHOLD_MS, 60_000));
+        config.setIdleTimeout(longSetting(settings, IDLE_TIMEOUT_MS, 600_000));
+        config.setMaxLifetime(longSetting(settings, MAX_LIFETIME_MS, 1_800_000));
+        String testQuery = stringSetting(settings, TEST_QUERY, null);
+        if (testQuery != null) {
+            config.setConnectionTestQuery(testQuery);
+        }
+        // Hibernate сам управляет autocommit в рамках транзакций
+        config.setAutoCommit(false);
+
+        // hibernate.connection.<prop> передаются драйверу как есть
+        Properties driverProperties = ConnectionProviderInitiator.getConnectionProperties(settings);
+        driverProperties.forEach((key, value) -> config.addDataSourceProperty(key.toString(), value));
+
+        metrics = new PoolMetrics(config.getMinimumIdle(), maxSize);
+        config.setMetricsTrackerFactory(metrics);
+
+        try {
+            dataSource = new HikariDataSource(config);
+        } catch (Exception e) {
+            throw new HibernateException("Could not create connection pool", e);
+        }
+        metrics.bind(dataSource.getHikariPoolMXBean());
+    }
+
+    public PoolMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return dataSource.getConnection();
+    }
+
+    @Override
+    public void closeConnection(Connection connection) throws SQLException {
+        connection.close();
+    }
+
+    @Override
+    public boolean supportsAggressiveRelease() {
+        return false;
+    }
+
+    @Override
+    @SuppressWarnings("rawtypes")
+    public boolean isUnwrappableAs(Class unwrapType) {
+        return ConnectionProvider.class.equals(unwrapType)
+                || PooledConnectionProvider.class.isAssignableFrom(unwrapType)
+                || DataSource.class.isAssignableFrom(unwrapType);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> unwrapType) {
+        if (ConnectionProvider.class.equals(unwrapType) || PooledConnectionProvider.class.isAssignableFrom(unwrapType)) {
+            return (T) this;
+        }
+        if (DataSource.class.isAssignableFrom(unwrapType)) {
+            return (T) dataSource;
+        }
+        throw new UnknownUnwrapTypeException(unwrapType);
+    }
+
+    @Override
+    public void stop() {
+        if (dataSource != null) {
+            dataSource.close();
+        }
+    }
+
+    private static String stringSetting(Map<?, ?> settings, String key, String defaultValue) {
+        Object value = settings.get(key);
+        return value == null ? defaultValue : value.toString();
+    }
+
+    private static int intSetting(Map<?, ?> settings, String key, int defaultValue) {
+        Object value = settings.get(key);
+        return value == null ? defaultValue : Integer.parseInt(value.toString().trim());
+    }
+
+    private static long longSetting(Map<?, ?> settings, String key, long defaultValue) {
+        Object value = settings.get(key);
+        return value == null ? defaultValue : Long.parseLong(value.toString().trim());
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.userservice.util;
+
+import java.util.function.Supplier;
+
+/**
+ * The caller whose writes its own later reads must see, for {@link ReplicaRouter}. A write session that
+ * commits marks the context it was opened in, and reads in that context then go to the primary for
+ * {@code hibernate.replica.sticky_primary_ms}. Writes in one context never pin reads of another.
+ * <p>
+ * Each thread is its own context by default. Work that a caller hands to another thread takes
+ * {@link #current()} along and runs in it with {@link #callAs}, like {@code AsyncUserService} does.
+ */
+public final class ReadYourWrites {
+    private static final ThreadLocal<ReadYourWrites> perThread = ThreadLocal.withInitial(ReadYourWrites::new);
+    private static final ThreadLocal<ReadYourWrites> bound = new ThreadLocal<>();
+    // Чтения в нём всегда идут на primary; свои записи в нём не отмечаются
+    private static final ReadYourWrites PRIMARY = new ReadYourWrites();
+
+    // System.nanoTime() последнего commit записи в этом контексте; 0 - записей не было
+    private volatile long lastWriteNanos;
+
+    private ReadYourWrites() {
+    }
+
+    public static ReadYourWrites current() {
+        ReadYourWrites context = bound.get();
+        return context == null ? perThread.get() : context;
+    }
+
+    public static ReadYourWrites newContext() {
+        return new ReadYourWrites();
+    }
+
+    public static <T> T callAs(ReadYourWrites context, Supplier<T> work) {
+        ReadYourWrites outer = bound.get();
+        bound.set(context);
+        try {
+            return work.get();
+        } finally {
+            if (outer == null) {
+                bound.remove();
+            } else {
+                bound.set(outer);
+            }
+        }
+    }
+
+    /**
+     * Runs {@code work} with every read on the primary, for loads whose result outlives the caller
+     * (a shared cache) and so must not come from a lagging replica.
+     */
+    public static <T> T onPrimary(Supplier<T> work) {
+        return callAs(PRIMARY, work);
+    }
+
+    void markWrite() {
+        if (this != PRIMARY) {
+            lastWriteNanos = System.nanoTime();
+        }
+    }
+
+    boolean pinsPrimary(long stickyNanos) {
+        if (this == PRIMARY) {
+            return true;
+        }
+        long written = lastWriteNanos;
+        return written != 0 && System.nanoTime() - written < stickyNanos;
+    }
+
+    /**
+     * When a write session in this context last committed, as {@link System#nanoTime()}; 0 if none has.
+     */
+    public long getLastWriteNanos() {
+        return lastWriteNanos;
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.userservice.util;
+
+import org.hibernate.BaseSessionEventListener;
+import org.hibernate.SessionEventListener;
+import org.hibernate.SessionFactory;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiFunction;
+
+/**
+ * Picks a read replica for {@link HibernateUtil#openReadSession()}. Replicas are listed in
+ * {@code hibernate.replica.urls} and share every other setting with the primary. Unhealthy replicas
+ * are skipped. With none left, reads go to the primary. A replica that cannot hand out a connection
+ * when a read session opens is marked down at once and the read goes elsewhere; the health check
+ * brings it back. A replica that fails in the middle of a query still fails that query.
+ * <p>
+ * Read-your-writes: once a write session commits, reads in the same {@link ReadYourWrites} context go
+ * to the primary for {@code hibernate.replica.sticky_primary_ms}, long enough to cover replication lag.
+ * Other callers keep reading replicas, so steady writes do not take the replicas out of use.
+ */
+public class ReplicaRouter implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    public static final String REPLICA_URLS = "hibernate.replica.urls";
+    public static final String ROUTING = "hibernate.replica.routing";
+    public static final String HEALTH_CHECK_INTERVAL_MS = "hibernate.replica.health_check_interval_ms";
+    public static final String HEALTH_CHECK_TIMEOUT_S = "hibernate.replica.health_check_timeout_s";
+    public static final String STICKY_PRIMARY_MS = "hibernate.replica.sticky_primary_ms";
+    public static final String ACQUIRE_TIMEOUT_MS = "hibernate.replica.acquire_timeout_ms";
+
+    public enum Routing {
+        ROUND_ROBIN, LEAST_LOADED
+    }
+
+    private final List<Replica> replicas;
+    private final Routing routing;
+    private final long stickyNanos;
+    private final int healthCheckTimeoutSeconds;
+    private final AtomicInteger next = new AtomicInteger();
+    private final ScheduledExecutorService healthChecker;
+
+    ReplicaRouter(List<Replica> replicas, Routing routing, long stickyMillis, long healthCheckIntervalMillis,
+                  int healthCheckTimeoutSeconds) {
+        this.replicas = List.copyOf(replicas);
+        this.routing = routing;
+        this.stickyNanos = TimeUnit.MILLISECONDS.toNanos(stickyMillis);
+        this.healthCheckTimeoutSeconds = healthCheckTimeoutSeconds;
+        this.healthChecker = Executors.newSingleThreadScheduledExecutor(ExecutorFactory.daemonThreads("replica-health"));
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, healthCheckIntervalMillis, healthCheckIntervalMillis,
+                TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Builds a factory per URL in {@code hibernate.replica.urls}; null when no replicas are configured.
+     */
+    static ReplicaRouter create(Map<String, Object> settings, BiFunction<String, Integer, SessionFactory> replicaFactory) {
+        Object urls = settings.get(REPLICA_URLS);
+        if (urls == null || urls.toString().isBlank()) {
+            return null;
+        }
+        List<Replica> replicas = new ArrayList<>();
+        try {
+            for (String url : urls.toString().split(",")) {
+                if (!url.isBlank()) {
+                    replicas.add(new Replica(url.trim(), replicaFactory.apply(url.trim(), replicas.size() + 1)));
+                }
+            }
+        } catch (RuntimeException | Error e) {
+            replicas.forEach(replica -> replica.factory.close());
+            throw e;
+        }
+        Routing routing = Routing.valueOf(setting(settings, ROUTING, "round_robin").toUpperCase(Locale.ROOT));
+        logger.info("Routing reads to {} replicas ({})", replicas.size(), routing);
+        return new ReplicaRouter(replicas, routing,
+                Long.parseLong(setting(settings, STICKY_PRIMARY_MS, "1000")),
+                Long.parseLong(setting(settings, HEALTH_CHECK_INTERVAL_MS, "5000")),
+                Integer.parseInt(setting(settings, HEALTH_CHECK_TIMEOUT_S, "2")));
+    }
+
+    // null - читать с primary
+    Replica route(ReadYourWrites context) {
+        if (context.pinsPrimary(stickyNanos)) {
+            return null;
+        }
+        int size = replicas.size();
+        int start = Math.floorMod(next.getAndIncrement(), size);
+        Replica chosen = null;
+        for (int i = 0; i < size; i++) {
+            Replica replica = replicas.get((start + i) % size);
+            if (!replica.healthy) {
+                continue;
+            }
+            if (routing == Routing.ROUND_ROBIN) {
+                return replica;
+            }
+            // Обход со сдвигом: при равной нагрузке реплики чередуются
+            if (chosen == null || replica.inFlight.get() < chosen.inFlight.get()) {
+                chosen = replica;
+            }
+        }
+        return chosen;
+    }
+
+    void checkHealth() {
+        for (Replica replica : replicas) {
+            boolean healthy;
+            ConnectionProvider provider = replica.factory.unwrap(SessionFactoryImplementor.class)
+                    .getServiceRegistry().getService(ConnectionProvider.class);
+            try {
+                Connection connection = provider.getConnection();
+                try {
+                    healthy = connection.isValid(healthCheckTimeoutSeconds);
+                } finally {
+                    provider.closeConnection(connection);
+                }
+            } catch (SQLException | RuntimeException e) {
+                healthy = false;
+            }
+            if (healthy != replica.healthy) {
+                replica.healthy = healthy;
+                if (healthy) {
+                    logger.info("Replica {} is back, routing reads to it", replica.url);
+                } else {
+                    logger.warn("Replica {} failed health check, routing around it", replica.url);
+                }
+            }
+        }
+    }
+
+    // Не дожидаемся проверки здоровья: следующие чтения сразу обходят реплику
+    void markDown(Replica replica, RuntimeException e) {
+        if (replica.healthy) {
+            replica.healthy = false;
+            logger.warn("Replica {} failed to hand out a connection, routing around it", replica.url, e);
+        }
+    }
+
+    public List<Replica> getReplicas() {
+        return Collections.unmodifiableList(replicas);
+    }
+
+    @Override
+    public void close() {
+        healthChecker.shutdownNow();
+        for (Replica replica : replicas) {
+            if (!replica.factory.isClosed()) {
+                replica.factory.close();
+            }
+        }
+    }
+
+    private static String setting(Map<String, Object> settings, String key, String defaultValue) {
+        Object value = settings.get(key);
+        return value == null ? defaultValue : value.toString().trim();
+    }
+
+    public static class Replica {
+        private final String url;
+        private final SessionFactory factory;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final LongAdder sessions = new LongAdder();
+        private volatile boolean healthy = true;
+
+        Replica(String url, SessionFactory factory) {
+            this.url = url;
+            this.factory = factory;
+        }
+
+        SessionFactory getFactory() {
+            return factory;
+        }
+
+        SessionEventListener newLease() {
+            inFlight.incrementAndGet();
+            sessions.increment();
+            return new BaseSessionEventListener() {
+                @Override
+                public void end() {
+                    inFlight.decrementAndGet();
+                }
+            };
+        }
+
+        public String getUrl() {
+            return url;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public int getInFlight() {
+            return inFlight.get();
+        }
+
+        public long getSessions() {
+            return sessions.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Replica %s: %s, in flight=%d, sessions=%d",
+                    url, healthy ? "healthy" : "DOWN", getInFlight(), getSessions());
+        }
+    }
+}
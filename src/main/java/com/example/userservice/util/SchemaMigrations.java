@@ -0,0 +1,324 @@
+package com.example.userservice.util;
+
+import org.hibernate.cfg.AvailableSettings;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Applies the versioned migrations from {@code src/main/scl} (packaged as {@code db/migration}),
+ * named {@code V<version>__<description>.sql}. A script named {@code V<version>__<description>.<database>.sql}
+ * (e.g. {@code .postgresql.sql}) runs only on that database and is ignored elsewhere, for DDL the H2
+ * stand-in used by tests does not understand. Applied versions and their checksums are kept in
+ * {@code schema_version}. An edited script that was already applied fails startup instead of
+ * being re-run, and so does a database at a version newer than any script in this build. A database
+ * created by {@code hbm2ddl} before migrations existed (the users table is there, {@code schema_version}
+ * is not) is first brought to the version 1 schema: it gets the {@code version} column and the
+ * {@code users_seq} sequence, starting above the existing ids, if it lacks them. It is then recorded as
+ * already at version 1.
+ * <p>
+ * {@link HibernateUtil} runs the migrations when {@value #ENABLED} is {@code true} (as in
+ * {@code hibernate.cfg.xml}) or in fast startup, and then lets Hibernate only validate the mapping
+ * against the migrated schema ({@code hbm2ddl.auto=validate}).
+ * <p>
+ * Deliberately minimal: one metadata lookup and one select when the schema is current, so it costs
+ * far less at startup than a schema diff or a full migration framework.
+ */
+public final class SchemaMigrations {
+    private static final Logger logger = LoggerFactory.getLogger(SchemaMigrations.class);
+    public static final String LOCATION = "db/migration";
+    public static final String ENABLED = "hibernate.schema.migrations";
+    // allocationSize у User.id
+    private static final int ID_BLOCK_SIZE = 50;
+    private static final Pattern FILE_NAME = Pattern.compile("V(\\d+)__([^.]+)(?:\\.(\\w+))?\\.sql");
+
+    private SchemaMigrations() {
+    }
+
+    public static void migrate(Map<String, Object> settings) {
+        long start = System.nanoTime();
+        try (Connection connection = DriverManager.getConnection(setting(settings, AvailableSettings.URL),
+                setting(settings, AvailableSettings.USER), setting(settings, AvailableSettings.PASS))) {
+            connection.setAutoCommit(false);
+            Map<Integer, Migration> migrations = load(connection.getMetaData().getDatabaseProductName());
+            Map<Integer, Long> applied = appliedVersions(connection, migrations);
+            int latest = migrations.isEmpty() ? 0 : Collections.max(migrations.keySet());
+            for (Integer version : applied.keySet()) {
+                if (version > latest) {
+                    throw new IllegalStateException("Database schema is at version " + version
+                            + ", newer than the latest migration " + latest + " in this build");
+                }
+            }
+            int executed = 0;
+            for (Migration migration : migrations.values()) {
+                Long checksum = applied.get(migration.version);
+                if (checksum != null) {
+                    if (checksum != migration.checksum) {
+                        throw new IllegalStateException("Migration " + migration.fileName
+                                + " was changed after it had been applied");
+                    }
+                    continue;
+                }
+                apply(connection, migration);
+                executed++;
+            }
+            logger.info("Schema at version {} ({} migrations applied) in {} ms", latest, executed,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (SQLException e) {
+            throw new IllegalStateException("Schema migration failed", e);
+        }
+    }
+
+    private static Map<Integer, Long> appliedVersions(Connection connection, Map<Integer, Migration> migrations)
+            throws SQLException {
+        Map<Integer, Long> applied = new HashMap<>();
+        if (!tableExists(connection, "schema_version")) {
+            boolean legacySchema = tableExists(connection, "users");
+            try (Statement statement = connection.createStatement()) {
+                statement.execute("CREATE TABLE schema_version (version INTEGER PRIMARY KEY, "
+                        + "description VARCHAR(200) NOT NULL, checksum BIGINT NOT NULL, "
+                        + "applied_at TIMESTAMP DEFAULT CURRENT_TIMESTAMP NOT NULL)");
+            }
+            if (legacySchema) {
+                upgradeLegacySchema(connection);
+                Migration baseline = migrations.get(1);
+                record(connection, baseline);
+                applied.put(1, baseline.checksum);
+                logger.info("Existing schema recorded as baseline version 1");
+            }
+            connection.commit();
+            return applied;
+        }
+        try (Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery("SELECT version, checksum FROM schema_version")) {
+            while (resultSet.next()) {
+                applied.put(resultSet.getInt(1), resultSet.getLong(2));
+            }
+        }
+        connection.commit();
+        return applied;
+    }
+
+    // Таблица от hbm2ddl до миграций: id IDENTITY, без users_seq и version. Доводим до схемы V1, в той же транзакции,
+    // что и запись baseline; ключ по-прежнему проверяет уникальность email, имя ограничения для Hibernate неважно
+    private static void upgradeLegacySchema(Connection connection) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            if (!columnExists(connection, "users", "version")) {
+                statement.execute("ALTER TABLE users ADD COLUMN version BIGINT DEFAULT 0 NOT NULL");
+                logger.info("Added column users.version to the existing schema");
+            }
+            if (!sequenceExists(connection, "users_seq")) {
+                long maxId;
+                try (ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(id), 0) FROM users")) {
+                    resultSet.next();
+                    maxId = resultSet.getLong(1);
+                }
+                // Первый блок pooled-оптимизатора Hibernate - (start - 49 .. start), то есть с maxId + 1
+                statement.execute("CREATE SEQUENCE users_seq START WITH " + (maxId + ID_BLOCK_SIZE)
+                        + " INCREMENT BY " + ID_BLOCK_SIZE);
+                logger.info("Created sequence users_seq above existing id {}", maxId);
+            }
+        }
+    }
+
+    // Скрипт и запись о нём - в одной транзакции: в PostgreSQL DDL транзакционен
+    private static void apply(Connection connection, Migration migration) throws SQLException {
+        try (Statement statement = connection.createStatement()) {
+            for (String sql : migration.statements()) {
+                statement.execute(sql);
+            }
+            record(connection, migration);
+            connection.commit();
+            logger.info("Applied migration {}", migration.fileName);
+        } catch (SQLException e) {
+            connection.rollback();
+            throw e;
+        }
+    }
+
+    private static void record(Connection connection, Migration migration) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(
+                "INSERT INTO schema_version (version, description, checksum) VALUES (?, ?, ?)")) {
+            statement.setInt(1, migration.version);
+            statement.setString(2, migration.description);
+            statement.setLong(3, migration.checksum);
+            statement.executeUpdate();
+        }
+    }
+
+    private static boolean tableExists(Connection connection, String table) throws SQLException {
+        // Только текущая схема: в каталоге H2 есть свой INFORMATION_SCHEMA.USERS
+        DatabaseMetaData metaData = connection.getMetaData();
+        String schema = connection.getSchema();
+        for (String name : new String[]{table, table.toUpperCase()}) {
+            try (ResultSet tables = metaData.getTables(null, schema, name, new String[]{"TABLE"})) {
+                if (tables.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean columnExists(Connection connection, String table, String column) throws SQLException {
+        DatabaseMetaData metaData = connection.getMetaData();
+        String schema = connection.getSchema();
+        for (String[] name : new String[][]{{table, column}, {table.toUpperCase(), column.toUpperCase()}}) {
+            try (ResultSet columns = metaData.getColumns(null, schema, name[0], name[1])) {
+                if (columns.next()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static boolean sequenceExists(Connection connection, String sequence) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("SELECT COUNT(*) FROM information_schema.sequences "
+                + "WHERE lower(sequence_schema) = lower(?) AND lower(sequence_name) = lower(?)")) {
+            statement.setString(1, connection.getSchema());
+            statement.setString(2, sequence);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                resultSet.next();
+                return resultSet.getLong(1) > 0;
+            }
+        }
+    }
+
+    static Map<Integer, Migration> load(String databaseProduct) {
+        String database = databaseProduct.replace(" ", "").toLowerCase(Locale.ROOT);
+        URL root = SchemaMigrations.class.getClassLoader().getResource(LOCATION);
+        Map<Integer, Migration> migrations = new TreeMap<>();
+        if (root == null) {
+            return migrations;
+        }
+        try {
+            URI uri = root.toURI();
+            if (uri.getScheme().equals("jar")) {
+                try (FileSystem jar = FileSystems.newFileSystem(uri, Collections.emptyMap())) {
+                    collect(jar.getPath(LOCATION), database, migrations);
+                }
+            } else {
+                collect(Path.of(uri), database, migrations);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+        return migrations;
+    }
+
+    private static void collect(Path directory, String database, Map<Integer, Migration> migrations) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher matcher = FILE_NAME.matcher(file.getFileName().toString());
+                if (!matcher.matches() || (matcher.group(3) != null && !database.equals(matcher.group(3)))) {
+                    continue;
+                }
+                int version = Integer.parseInt(matcher.group(1));
+                String script;
+                try (InputStream in = Files.newInputStream(file)) {
+                    script = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+                }
+                Migration previous = migrations.put(version,
+                        new Migration(version, matcher.group(2).replace('_', ' '), file.getFileName().toString(), script));
+                if (previous != null) {
+                    throw new IllegalStateException("Duplicate migration version " + version + ": "
+                            + previous.fileName + ", " + file.getFileName());
+                }
+            }
+        }
+    }
+
+    private static String setting(Map<String, Object> settings, String key) {
+        Object value = settings.get(key);
+        return value == null ? null : value.toString();
+    }
+
+    static class Migration {
+        final int version;
+        final String description;
+        final String fileName;
+        final String script;
+        final long checksum;
+
+        Migration(int version, String description, String fileName, String script) {
+            this.version = version;
+            this.description = description;
+            this.fileName = fileName;
+            this.script = script;
+            CRC32 crc = new CRC32();
+            crc.update(script.replace("\r\n", "\n").getBytes(StandardCharsets.UTF_8));
+            this.checksum = crc.getValue();
+        }
+
+        // Делит скрипт по ';' вне строк, комментариев и $$-блоков (тела функций PostgreSQL)
+        List<String> statements() {
+            List<String> statements = new ArrayList<>();
+            StringBuilder current = new StringBuilder();
+            boolean inQuote = false;
+            boolean inDollar = false;
+            for (int i = 0; i < script.length(); i++) {
+                char c = script.charAt(i);
+                if (!inQuote && !inDollar && c == '-' && i + 1 < script.length() && script.charAt(i + 1) == '-') {
+                    int end = script.indexOf('\n', i);
+                    i = end < 0 ? script.length() : end;
+                    current.append('\n');
+                    continue;
+                }
+                if (!inDollar && c == '\'') {
+                    inQuote = !inQuote;
+                } else if (!inQuote && c == '$' && i + 1 < script.length() && script.charAt(i + 1) == '$') {
+                    inDollar = !inDollar;
+                    current.append("$$");
+                    i++;
+                    continue;
+                } else if (!inQuote && !inDollar && c == ';') {
+                    addStatement(statements, current);
+                    continue;
+                }
+                current.append(c);
+            }
+            addStatement(statements, current);
+            return statements;
+        }
+
+        private static void addStatement(List<String> statements, StringBuilder current) {
+            String sql = current.toString().trim();
+            if (!sql.isEmpty()) {
+                statements.add(sql);
+            }
+            current.setLength(0);
+        }
+    }
+}
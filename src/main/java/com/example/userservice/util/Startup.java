@@ -0,0 +1,102 @@
+package com.example.userservice.util;
+
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.OptionalLong;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Startup modes, selected with {@code -Duserservice.startup=lazy|fast} (default lazy).
+ * <ul>
+ *     <li>lazy: the SessionFactory is built by the first DAO call, after the versioned migrations
+ *     (see {@link SchemaMigrations}).</li>
+ *     <li>fast: see {@link HibernateUtil#startInBackground()}; once the factory is up, pool connections
+ *     are opened and the given query warm-up runs, all before the first request arrives.</li>
+ * </ul>
+ * In both modes the time from JVM start to the first completed request is logged once.
+ */
+public final class Startup {
+    private static final Logger logger = LoggerFactory.getLogger(Startup.class);
+    public static final String MODE_PROPERTY = "userservice.startup";
+
+    private static final AtomicLong timeToFirstRequestMillis = new AtomicLong(-1);
+
+    public enum Mode {
+        LAZY, FAST
+    }
+
+    private Startup() {
+    }
+
+    public static Mode mode() {
+        return Mode.valueOf(System.getProperty(MODE_PROPERTY, "lazy").trim().toUpperCase(Locale.ROOT));
+    }
+
+    public static CompletableFuture<Void> begin(Mode mode, Runnable queryWarmUp) {
+        if (mode == Mode.LAZY) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return HibernateUtil.startInBackground()
+                .thenAccept(factory -> warmUp(factory.unwrap(SessionFactoryImplementor.class), queryWarmUp))
+                .whenComplete((ignored, error) -> {
+                    if (error != null) {
+                        logger.error("Background startup failed", error);
+                    } else {
+                        logger.info("Warm-up finished {} ms after JVM start", uptimeMillis());
+                    }
+                });
+    }
+
+    // Открывает минимум пула сразу (Hikari добирает его в фоне), затем прогоняет горячие запросы,
+    // чтобы разобранные HQL-планы лежали в кэше к первому запросу
+    private static void warmUp(SessionFactoryImplementor factory, Runnable queryWarmUp) {
+        int connections = HibernateUtil.getPoolMetrics().map(PoolMetrics::getMinSize).orElse(1);
+        ConnectionProvider provider = factory.getServiceRegistry().getService(ConnectionProvider.class);
+        List<Connection> opened = new ArrayList<>();
+        try {
+            for (int i = 0; i < connections; i++) {
+                opened.add(provider.getConnection());
+            }
+        } catch (SQLException e) {
+            logger.warn("Connection warm-up stopped after {} connections", opened.size(), e);
+        } finally {
+            for (Connection connection : opened) {
+                try {
+                    provider.closeConnection(connection);
+                } catch (SQLException e) {
+                    logger.debug("Could not return warm-up connection", e);
+                }
+            }
+        }
+        queryWarmUp.run();
+    }
+
+    public static void recordFirstRequest() {
+        if (timeToFirstRequestMillis.get() < 0) {
+            long uptime = uptimeMillis();
+            if (timeToFirstRequestMillis.compareAndSet(-1, uptime)) {
+                logger.info("Time to first request: {} ms after JVM start ({} startup)", uptime,
+                        mode().name().toLowerCase(Locale.ROOT));
+            }
+        }
+    }
+
+    public static OptionalLong getTimeToFirstRequestMillis() {
+        long value = timeToFirstRequestMillis.get();
+        return value < 0 ? OptionalLong.empty() : OptionalLong.of(value);
+    }
+
+    private static long uptimeMillis() {
+        return ManagementFactory.getRuntimeMXBean().getUptime();
+    }
+}
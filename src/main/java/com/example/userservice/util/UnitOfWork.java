@@ -0,0 +1,85 @@
+package com.example.userservice.util;
+
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Supplier;
+
+/**
+ * Binds one Session and transaction to the current thread for the duration of {@link #execute}.
+ * DAO calls made inside join that session instead of opening their own, so entities they load stay
+ * managed and changes are flushed by dirty checking at commit. Nested calls join the outer unit.
+ */
+public final class UnitOfWork {
+    private static final ThreadLocal<UnitOfWork> current = new ThreadLocal<>();
+
+    private final Session session;
+    private final List<Runnable> afterCompletion = new ArrayList<>();
+    private final List<Runnable> afterCommit = new ArrayList<>();
+
+    private UnitOfWork(Session session) {
+        this.session = session;
+    }
+
+    public static <T> T execute(Supplier<T> work) {
+        if (current.get() != null) {
+            return work.get();
+        }
+        Transaction transaction = null;
+        boolean committed = false;
+        try (Session session = HibernateUtil.openSession()) {
+            UnitOfWork unitOfWork = new UnitOfWork(session);
+            current.set(unitOfWork);
+            try {
+                transaction = session.beginTransaction();
+                T result = work.get();
+                transaction.commit();
+                committed = true;
+                return result;
+            } catch (RuntimeException e) {
+                if (transaction != null && transaction.isActive()) {
+                    transaction.rollback();
+                }
+                throw e;
+            } finally {
+                current.remove();
+                unitOfWork.afterCompletion.forEach(Runnable::run);
+                if (committed) {
+                    unitOfWork.afterCommit.forEach(Runnable::run);
+                }
+            }
+        }
+    }
+
+    public static Optional<Session> currentSession() {
+        UnitOfWork unitOfWork = current.get();
+        return unitOfWork == null ? Optional.empty() : Optional.of(unitOfWork.session);
+    }
+
+    public static boolean isActive() {
+        return current.get() != null;
+    }
+
+    // Выполняется после commit или rollback текущей единицы работы; вне её - сразу
+    public static void runAfterCompletion(Runnable action) {
+        UnitOfWork unitOfWork = current.get();
+        if (unitOfWork == null) {
+            action.run();
+        } else {
+            unitOfWork.afterCompletion.add(action);
+        }
+    }
+
+    // Выполняется только после успешного commit текущей единицы работы; вне её - сразу
+    public static void runAfterCommit(Runnable action) {
+        UnitOfWork unitOfWork = current.get();
+        if (unitOfWork == null) {
+            action.run();
+        } else {
+            unitOfWork.afterCommit.add(action);
+        }
+    }
+}
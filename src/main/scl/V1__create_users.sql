@@ -0,0 +1,15 @@
+-- Схема users под entity User: id из users_seq блоками по 50, version для оптимистичной блокировки.
+-- Таблицу, созданную hbm2ddl до миграций, SchemaMigrations доводит до этой схемы (version, users_seq)
+-- и записывает как baseline версии 1, не выполняя скрипт.
+CREATE SEQUENCE users_seq START WITH 1 INCREMENT BY 50;
+
+CREATE TABLE users (
+    id         BIGINT       NOT NULL,
+    name       VARCHAR(255) NOT NULL,
+    email      VARCHAR(255) NOT NULL,
+    age        INTEGER      NOT NULL,
+    created_at TIMESTAMP,
+    version    BIGINT       DEFAULT 0 NOT NULL,
+    CONSTRAINT users_pkey PRIMARY KEY (id),
+    CONSTRAINT users_email_key UNIQUE (email)
+);
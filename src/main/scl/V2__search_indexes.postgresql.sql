@@ -0,0 +1,15 @@
+-- Индексы под UserSearch. Поиск по email обслуживает уникальный users_email_key.
+-- Составные (age, id) и (name, id) дублируются в @Index сущности User, остальные JPA не описывает.
+CREATE EXTENSION IF NOT EXISTS pg_trgm;
+
+-- Диапазон возраста и сортировка по нему с keyset-пагинацией
+CREATE INDEX IF NOT EXISTS users_age_id_idx ON users (age, id);
+
+-- Сортировка по имени с keyset-пагинацией
+CREATE INDEX IF NOT EXISTS users_name_id_idx ON users (name, id);
+
+-- name LIKE 'prefix%' при любой collation базы
+CREATE INDEX IF NOT EXISTS users_name_pattern_idx ON users (name text_pattern_ops);
+
+-- lower(name) LIKE '%part%'
+CREATE INDEX IF NOT EXISTS users_name_trgm_idx ON users USING gin (lower(name) gin_trgm_ops);
@@ -0,0 +1,30 @@
+-- Рассылка изменений users через NOTIFY users_changes для in-memory копии таблицы (UserReplica).
+-- Уведомления доставляются при commit и в порядке commit'ов. Полезная нагрузка - строка целиком
+-- (лимит NOTIFY 8000 байт, строка users заведомо меньше).
+CREATE OR REPLACE FUNCTION users_notify_change() RETURNS trigger AS $$
+BEGIN
+    IF TG_OP = 'DELETE' THEN
+        PERFORM pg_notify('users_changes', json_build_object('op', 'D', 'id', OLD.id, 'version', OLD.version)::text);
+        RETURN OLD;
+    END IF;
+    PERFORM pg_notify('users_changes', json_build_object(
+            'op', 'U', 'id', NEW.id, 'version', NEW.version, 'name', NEW.name, 'email', NEW.email,
+            'age', NEW.age, 'createdAt', NEW.created_at)::text);
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER users_notify_change
+    AFTER INSERT OR UPDATE OR DELETE ON users
+    FOR EACH ROW EXECUTE PROCEDURE users_notify_change();
+
+CREATE OR REPLACE FUNCTION users_notify_truncate() RETURNS trigger AS $$
+BEGIN
+    PERFORM pg_notify('users_changes', '{"op":"T"}');
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER users_notify_truncate
+    AFTER TRUNCATE ON users
+    FOR EACH STATEMENT EXECUTE PROCEDURE users_notify_truncate();
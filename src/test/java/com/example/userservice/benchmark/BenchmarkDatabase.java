@@ -0,0 +1,85 @@
+package com.example.userservice.benchmark;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.entity.User;
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.PooledConnectionProvider;
+import org.hibernate.cfg.Configuration;
+
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * In-process H2 (PostgreSQL mode) stand-in for the benchmarks, so they need neither Docker nor network.
+ */
+final class BenchmarkDatabase {
+    private static final AtomicLong emailSequence = new AtomicLong();
+
+    private BenchmarkDatabase() {
+    }
+
+    static void start(int poolSize) {
+        Configuration configuration = new Configuration()
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:benchmark;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .setProperty("hibernate.jdbc.batch_size", "50")
+                .setProperty("hibernate.order_inserts", "true")
+                .setProperty(PooledConnectionProvider.MIN_SIZE, String.valueOf(poolSize))
+                .setProperty(PooledConnectionProvider.MAX_SIZE, String.valueOf(poolSize))
+                .addAnnotatedClass(User.class);
+        HibernateUtil.setConfiguration(configuration);
+        HibernateUtil.getSessionFactory();
+    }
+
+    static void stop() {
+        HibernateUtil.shutdown();
+    }
+
+    static long[] seed(UserDao userDao, int count) {
+        long[] ids = new long[count];
+        Iterator<User> users = new Iterator<>() {
+            private int created;
+
+            @Override
+            public boolean hasNext() {
+                return created < count;
+            }
+
+            @Override
+            public User next() {
+                User user = newUser();
+                created++;
+                return user;
+            }
+        };
+        // saveAll не отдаёт сущности, поэтому id собираем отдельным проходом
+        userDao.saveAll(users);
+        int i = 0;
+        Long afterId = null;
+        while (i < count) {
+            var page = userDao.findPage(afterId, 10_000);
+            if (page.isEmpty()) {
+                break;
+            }
+            for (User user : page) {
+                if (i < count) {
+                    ids[i++] = user.getId();
+                }
+            }
+            afterId = page.get(page.size() - 1).getId();
+        }
+        return ids;
+    }
+
+    static User newUser() {
+        long n = emailSequence.incrementAndGet();
+        User user = new User();
+        user.setName("Benchmark User " + n);
+        user.setEmail("bench" + n + "@example.com");
+        user.setAge(18 + (int) (n % 60));
+        return user;
+    }
+}
@@ -0,0 +1,118 @@
+package com.example.userservice.benchmark;
+
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.http.UserHttpServer;
+import com.example.userservice.metrics.OperationMetrics;
+import com.example.userservice.service.UserServiceImpl;
+import com.example.userservice.util.ExecutorFactory;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop HTTP load test against an embedded {@link UserHttpServer} backed by the H2 stand-in.
+ * Each worker sends requests back to back: 90% GET by id, 5% PATCH, 5% page listing.
+ * Prints throughput and latency percentiles; 503s from admission control are counted separately.
+ * <p>
+ * Arguments are key=value: duration (s, default 20), concurrency (default 32),
+ * tableSize (default 10000), poolSize (default 10).
+ */
+public class HttpLoadTest {
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        int duration = Integer.parseInt(options.getOrDefault("duration", "20"));
+        int concurrency = Integer.parseInt(options.getOrDefault("concurrency", "32"));
+        int tableSize = Integer.parseInt(options.getOrDefault("tableSize", "10000"));
+        int poolSize = Integer.parseInt(options.getOrDefault("poolSize", "10"));
+
+        BenchmarkDatabase.start(poolSize);
+        long[] ids = BenchmarkDatabase.seed(new UserDaoImpl(), tableSize);
+        UserHttpServer server = new UserHttpServer(new UserServiceImpl(new UserDaoImpl()),
+                new InetSocketAddress("localhost", 0), ExecutorFactory.newTaskExecutor("http", poolSize * 2),
+                poolSize, Duration.ofMillis(500));
+        server.start();
+        String base = "http://localhost:" + server.getPort() + "/users";
+
+        HttpClient client = HttpClient.newBuilder()
+                .executor(Executors.newFixedThreadPool(4))
+                .build();
+        Recorder recorder = new Recorder(3);
+        LongAdder rejected = new LongAdder();
+        LongAdder errors = new LongAdder();
+
+        // Первые секунды - прогрев, в итоговую гистограмму не входят
+        long warmupEnd = System.nanoTime() + TimeUnit.SECONDS.toNanos(Math.min(5, duration / 4));
+        long end = warmupEnd + TimeUnit.SECONDS.toNanos(duration);
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        for (int i = 0; i < concurrency; i++) {
+            workers.submit(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                while (System.nanoTime() < end) {
+                    long id = ids[random.nextInt(ids.length)];
+                    int kind = random.nextInt(100);
+                    HttpRequest request;
+                    if (kind < 90) {
+                        request = HttpRequest.newBuilder(URI.create(base + "/" + id)).GET().build();
+                    } else if (kind < 95) {
+                        request = HttpRequest.newBuilder(URI.create(base + "/" + id))
+                                .method("PATCH", HttpRequest.BodyPublishers.ofString("{\"age\":" + (18 + random.nextInt(60)) + "}"))
+                                .build();
+                    } else {
+                        request = HttpRequest.newBuilder(URI.create(base + "?after=" + id + "&limit=20")).GET().build();
+                    }
+                    long start = System.nanoTime();
+                    try {
+                        int status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                        long elapsed = System.nanoTime() - start;
+                        if (status == 503) {
+                            rejected.increment();
+                        } else if (status >= 400) {
+                            errors.increment();
+                        }
+                        if (start >= warmupEnd) {
+                            recorder.recordValue(TimeUnit.NANOSECONDS.toMicros(elapsed));
+                        }
+                    } catch (Exception e) {
+                        errors.increment();
+                    }
+                }
+                return null;
+            });
+        }
+        workers.shutdown();
+        workers.awaitTermination(duration + 60L, TimeUnit.SECONDS);
+
+        Histogram histogram = recorder.getIntervalHistogram();
+        System.out.printf("concurrency=%d pool=%d table=%d duration=%ds%n", concurrency, poolSize, tableSize, duration);
+        System.out.printf("requests=%d throughput=%.0f req/s rejected(503)=%d errors=%d%n",
+                histogram.getTotalCount(), histogram.getTotalCount() / (double) duration, rejected.sum(), errors.sum());
+        System.out.printf("latency us: p50=%d p90=%d p99=%d p99.9=%d max=%d%n",
+                histogram.getValueAtPercentile(50), histogram.getValueAtPercentile(90),
+                histogram.getValueAtPercentile(99), histogram.getValueAtPercentile(99.9), histogram.getMaxValue());
+
+        // Серверное время по операциям: разница с клиентской задержкой - сеть, очередь и сам клиент
+        System.out.println("server side:");
+        OperationMetrics.forComponent("UserHttpServer").getOperations().forEach(System.out::println);
+        server.close();
+        BenchmarkDatabase.stop();
+        System.exit(0);
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.userservice.benchmark;
+
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.entity.User;
+import com.example.userservice.service.UserService;
+import com.example.userservice.service.UserServiceImpl;
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.SchemaMigrations;
+import com.example.userservice.util.Startup;
+import org.hibernate.cfg.Configuration;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Time from application launch to the first completed request, lazy vs fast startup.
+ * Every fork is a fresh JVM and measures exactly one launch. {@code arrivalDelayMs} simulates the gap
+ * between process start and the first request reaching it (e.g. load balancer registration). Both modes
+ * migrate and validate the schema like {@code hibernate.cfg.xml}; they differ only in when that happens.
+ * <pre>
+ * mvn -P benchmarks test -DskipTests -Djmh.args="StartupBenchmark" -Djmh.threads=1
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(10)
+public class StartupBenchmark {
+
+    @Param({"LAZY", "FAST"})
+    public Startup.Mode mode;
+
+    @Param({"0", "1000"})
+    public int arrivalDelayMs;
+
+    private UserService userService;
+    private CompletableFuture<Void> startup;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        // Только конфигурация: SessionFactory не строится до замера
+        Configuration configuration = new Configuration()
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:startup;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty(SchemaMigrations.ENABLED, "true")
+                .setProperty("hibernate.hbm2ddl.auto", "validate")
+                .addAnnotatedClass(User.class);
+        HibernateUtil.setConfiguration(configuration);
+        userService = new UserServiceImpl(new UserDaoImpl());
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // Прогрев мог ещё идти после первого запроса: даём ему закончиться до закрытия фабрики
+        startup.exceptionally(error -> null).join();
+        HibernateUtil.shutdown();
+    }
+
+    @Benchmark
+    public Optional<User> firstRequest() throws InterruptedException {
+        startup = Startup.begin(mode, () -> {
+            userService.findById(0L);
+            userService.findPage(null, 1);
+        });
+        if (arrivalDelayMs > 0) {
+            Thread.sleep(arrivalDelayMs);
+        }
+        return userService.findById(1L);
+    }
+}
@@ -0,0 +1,100 @@
+package com.example.userservice.benchmark;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSummary;
+import com.example.userservice.entity.User;
+import com.example.userservice.util.HibernateUtil;
+import org.hibernate.Session;
+import org.hibernate.query.Query;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-call cost of short DAO queries, where building the query weighs as much as running it:
+ * keyset pages, a patch and an IN-list delete that matches nothing. The query* benchmarks only
+ * create the keyset-page query, without running it: from a named query, from the same HQL string,
+ * and from a new string every call, which is what a plan cache miss costs.
+ * <p>
+ * mvn -P benchmarks test -DskipTests -Djmh.args="UserDaoQueryBenchmark" -Djmh.threads=1
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserDaoQueryBenchmark {
+    private static final int TABLE_SIZE = 10_000;
+
+    private UserDao userDao;
+    private long[] ids;
+    private Session session;
+    private long uncached;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.start(16);
+        userDao = new UserDaoImpl();
+        ids = BenchmarkDatabase.seed(userDao, TABLE_SIZE);
+        session = HibernateUtil.openSession();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        session.close();
+        BenchmarkDatabase.stop();
+    }
+
+    @Benchmark
+    public List<User> findPage() {
+        return userDao.findPage(randomId(), 20);
+    }
+
+    @Benchmark
+    public List<UserSummary> findSummariesPage() {
+        return userDao.findSummariesPage(randomId(), 20);
+    }
+
+    @Benchmark
+    public int patchAge() {
+        return userDao.patch(randomId(), UserPatch.builder().age(18 + ThreadLocalRandom.current().nextInt(60)).build());
+    }
+
+    // Список каждый раз другой длины: без выравнивания IN (...) это новая строка SQL на каждую длину
+    @Benchmark
+    public int deleteAllByIdMissing() {
+        int size = 1 + ThreadLocalRandom.current().nextInt(100);
+        List<Long> missing = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            missing.add(-1L - i);
+        }
+        return userDao.deleteAllById(missing);
+    }
+
+    @Benchmark
+    public Query<User> queryNamed() {
+        return session.createNamedQuery(User.FIND_AFTER, User.class).setParameter("afterId", 1L);
+    }
+
+    @Benchmark
+    public Query<User> queryFromString() {
+        return session.createQuery("from User u where u.id > :afterId order by u.id", User.class).setParameter("afterId", 1L);
+    }
+
+    @Benchmark
+    public Query<User> queryParsedEachCall() {
+        long n = uncached++;
+        return session.createQuery("from User u where u.id > :afterId and " + n + " = " + n + " order by u.id", User.class)
+                .setParameter("afterId", 1L);
+    }
+
+    private long randomId() {
+        return ids[ThreadLocalRandom.current().nextInt(ids.length)];
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.userservice.benchmark;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.dao.UserDaoSettings;
+import com.example.userservice.dto.UserSummary;
+import com.example.userservice.entity.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserDaoReadBenchmark {
+
+    @Param({"1000", "100000"})
+    public int tableSize;
+
+    // false - прежний путь через обычную Session, для сравнения
+    @Param({"true", "false"})
+    public boolean readOnlyReads;
+
+    private UserDao userDao;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.start(16);
+        userDao = new UserDaoImpl(UserDaoSettings.builder().readOnlyReads(readOnlyReads).build());
+        ids = BenchmarkDatabase.seed(userDao, tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDatabase.stop();
+    }
+
+    @Benchmark
+    public Optional<User> findById() {
+        return userDao.findById(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+    }
+
+    @Benchmark
+    public List<User> findAll() {
+        return userDao.findAll();
+    }
+
+    @Benchmark
+    public List<UserSummary> findAllSummaries() {
+        return userDao.findAllSummaries();
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.userservice.benchmark;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.entity.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserDaoWriteBenchmark {
+
+    @Param({"1000", "100000"})
+    public int tableSize;
+
+    private UserDao userDao;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.start(16);
+        userDao = new UserDaoImpl();
+        ids = BenchmarkDatabase.seed(userDao, tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDatabase.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class PendingUser {
+        User user;
+
+        @Setup(Level.Invocation)
+        public void setUp() {
+            user = BenchmarkDatabase.newUser();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class SavedUser {
+        User user;
+
+        @Setup(Level.Invocation)
+        public void setUp(UserDaoWriteBenchmark benchmark) {
+            user = benchmark.userDao.save(BenchmarkDatabase.newUser());
+        }
+    }
+
+    @Benchmark
+    public User save(PendingUser pending) {
+        return userDao.save(pending.user);
+    }
+
+    @Benchmark
+    public User update() {
+        // Каждый вызов переписывает случайного пользователя из исходного набора объектом без версии,
+        // как write-behind: строка обновляется повторно, и версия в ней уже не совпадает с объектом
+        User user = BenchmarkDatabase.newUser();
+        user.setId(ids[ThreadLocalRandom.current().nextInt(ids.length)]);
+        return userDao.update(user);
+    }
+
+    @Benchmark
+    public int patch() {
+        // Один UPDATE только по колонке name у случайного пользователя из исходного набора
+        long id = ids[ThreadLocalRandom.current().nextInt(ids.length)];
+        return userDao.patch(id, UserPatch.builder().name("Patched " + id).build());
+    }
+
+    @Benchmark
+    public void delete(SavedUser saved) {
+        userDao.delete(saved.user);
+    }
+
+    @Benchmark
+    public int deleteById(SavedUser saved) {
+        return userDao.deleteById(saved.user.getId());
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.userservice.benchmark;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.entity.User;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Filtered lookups pushed down to the database vs the old way: {@code findAll()} and filtering in memory.
+ * The H2 stand-in has the (age, id) and (name, id) indexes from {@code @Index}; the PostgreSQL-only
+ * text_pattern_ops and trigram indexes of migration V2 are not here, so name-contains is a scan on H2.
+ * <pre>
+ * mvn -P benchmarks test -DskipTests -Djmh.args="UserSearchBenchmark" -Djmh.threads=1
+ * </pre>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx3g")
+public class UserSearchBenchmark {
+
+    @Param({"100000", "1000000"})
+    public int tableSize;
+
+    private UserDao userDao;
+    private long[] ids;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.start(4);
+        userDao = new UserDaoImpl();
+        ids = BenchmarkDatabase.seed(userDao, tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDatabase.stop();
+    }
+
+    // Номер пользователя из BenchmarkDatabase.newUser: email и имя строятся из него
+    private int randomUser() {
+        return 1 + ThreadLocalRandom.current().nextInt(ids.length);
+    }
+
+    @Benchmark
+    public List<User> searchByEmail() {
+        return userDao.search(UserSearch.builder().email("bench" + randomUser() + "@example.com").build());
+    }
+
+    @Benchmark
+    public List<User> searchAgeRangePage() {
+        int age = 18 + ThreadLocalRandom.current().nextInt(55);
+        return userDao.search(UserSearch.builder().minAge(age).maxAge(age + 5)
+                .sortBy(UserSearch.SortField.AGE).limit(50).build());
+    }
+
+    @Benchmark
+    public List<User> searchNamePrefix() {
+        return userDao.search(UserSearch.builder().namePrefix("Benchmark User " + randomUser()).limit(50).build());
+    }
+
+    @Benchmark
+    public long countAgeRange() {
+        int age = 18 + ThreadLocalRandom.current().nextInt(55);
+        return userDao.count(UserSearch.builder().minAge(age).maxAge(age + 5).build());
+    }
+
+    @Benchmark
+    public List<User> findAllThenFilterByEmail() {
+        String email = "bench" + randomUser() + "@example.com";
+        return userDao.findAll().stream()
+                .filter(user -> user.getEmail().equals(email))
+                .collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public List<User> findAllThenFilterAgeRange() {
+        int age = 18 + ThreadLocalRandom.current().nextInt(55);
+        return userDao.findAll().stream()
+                .filter(user -> user.getAge() >= age && user.getAge() <= age + 5)
+                .limit(50)
+                .collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,62 @@
+package com.example.userservice.benchmark;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.entity.User;
+import com.example.userservice.service.UserService;
+import com.example.userservice.service.UserServiceImpl;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserServiceBenchmark {
+
+    @Param({"1000", "100000"})
+    public int tableSize;
+
+    private UserDao userDao;
+    private UserService userService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        BenchmarkDatabase.start(16);
+        userDao = new UserDaoImpl();
+        userService = new UserServiceImpl(userDao);
+        BenchmarkDatabase.seed(userDao, tableSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        BenchmarkDatabase.stop();
+    }
+
+    @State(Scope.Thread)
+    public static class SavedUser {
+        Long id;
+
+        @Setup(Level.Invocation)
+        public void setUp(UserServiceBenchmark benchmark) {
+            id = benchmark.userDao.save(BenchmarkDatabase.newUser()).getId();
+        }
+    }
+
+    @Benchmark
+    public boolean delete(SavedUser saved) {
+        return userService.delete(saved.id);
+    }
+
+    // Прежняя реализация UserServiceImpl.delete: findById + delete в двух сессиях
+    @Benchmark
+    public boolean deleteViaFindById(SavedUser saved) {
+        return userDao.findById(saved.id).map(user -> {
+            userDao.delete(user);
+            return true;
+        }).orElse(false);
+    }
+}
@@ -0,0 +1,443 @@
+package com.example.userservice.benchmark;
+
+import com.example.userservice.dao.CachingUserDao;
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.dao.UserDaoTimeoutException;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.entity.User;
+import com.example.userservice.metrics.OperationMetrics;
+import com.example.userservice.service.UserService;
+import com.example.userservice.service.UserServiceImpl;
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.PoolMetrics;
+import com.example.userservice.util.PooledConnectionProvider;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+import org.hibernate.cfg.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Load test of the whole {@link UserServiceImpl} + {@link UserDaoImpl} + {@link HibernateUtil} stack,
+ * without HTTP in front. Seeds tableSize users, then drives a read/update/insert/delete mix from
+ * many threads; keys for reads and updates follow a Zipfian distribution over the seeded users.
+ * Deletes remove rows created by the run's own inserts, so the seeded key set stays intact.
+ * <p>
+ * Two modes:
+ * <ul>
+ *     <li>closed (default): {@code threads} workers call back to back. Latency is corrected for
+ *     coordinated omission with the per-thread interval measured during warmup, so this mode needs
+ *     {@code warmup > 0}. A thread that finishes no call during warmup has no interval; its samples
+ *     are counted and reported as uncorrected.</li>
+ *     <li>open: requests are scheduled at a fixed {@code rate} regardless of how fast the stack
+ *     answers; latency is measured from the scheduled start, so queueing behind a slow call counts.
+ *     {@code threads} caps how many requests can be in flight.</li>
+ * </ul>
+ * Arguments are key=value: mode (closed|open), rate (ops/s, open mode, default 1000),
+ * threads (default 32), duration (s, default 30), warmup (s, default 5), tableSize (default 100000),
+ * poolSize (default 10), mix (default read:80,update:15,insert:3,delete:2), skew (Zipf theta,
+ * 0 = uniform, default 0.99), cache (wrap the DAO in CachingUserDao, default false),
+ * reportInterval (s, default 5), database (h2|postgres, default h2). With database=postgres the
+ * settings come from hibernate.cfg.xml, url/user/password override them; point it at a scratch
+ * database, the seeded rows are left in place.
+ * <p>
+ * Like {@link HttpLoadTest}, it lives in the test tree and runs through the {@code load-test} Maven profile
+ * instead of being a mode of {@code Main}: the seeding and load code stays out of the application jar.
+ * <p>
+ * mvn -P load-test test -DskipTests -Dload.main=UserServiceLoadTest -Dload.args="mode=open rate=2000 threads=64"
+ */
+public class UserServiceLoadTest {
+
+    enum Op {
+        READ, UPDATE, INSERT, DELETE
+    }
+
+    // Время в микросекундах; response - от запланированного старта, service - от фактического
+    private final Map<Op, Recorder> response = new EnumMap<>(Op.class);
+    private final Map<Op, Recorder> service = new EnumMap<>(Op.class);
+    private final Recorder interval = new Recorder(3);
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder deleteMisses = new LongAdder();
+    private final LongAdder uncorrected = new LongAdder();
+    private final ConcurrentLinkedQueue<Long> inserted = new ConcurrentLinkedQueue<>();
+    private final AtomicLong emailSequence = new AtomicLong();
+    private final String runTag = Long.toString(System.currentTimeMillis(), 36);
+
+    private final UserService userService;
+    private final double skew;
+    private final int[] mix;
+    // Заполняются в seed
+    private long[] keys;
+    private Zipf zipf;
+
+    UserServiceLoadTest(UserService userService, double skew, int[] mix) {
+        this.userService = userService;
+        this.skew = skew;
+        this.mix = mix;
+        for (Op op : Op.values()) {
+            response.put(op, new Recorder(3));
+            service.put(op, new Recorder(3));
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            String[] pair = arg.split("=", 2);
+            options.put(pair[0], pair.length > 1 ? pair[1] : "");
+        }
+        boolean open = options.getOrDefault("mode", "closed").equals("open");
+        double rate = Double.parseDouble(options.getOrDefault("rate", "1000"));
+        int threads = Integer.parseInt(options.getOrDefault("threads", "32"));
+        int duration = Integer.parseInt(options.getOrDefault("duration", "30"));
+        int warmup = Integer.parseInt(options.getOrDefault("warmup", "5"));
+        int tableSize = Integer.parseInt(options.getOrDefault("tableSize", "100000"));
+        int poolSize = Integer.parseInt(options.getOrDefault("poolSize", "10"));
+        double skew = Double.parseDouble(options.getOrDefault("skew", "0.99"));
+        int[] mix = parseMix(options.getOrDefault("mix", "read:80,update:15,insert:3,delete:2"));
+        int reportInterval = Integer.parseInt(options.getOrDefault("reportInterval", "5"));
+        if (!open && warmup <= 0) {
+            throw new IllegalArgumentException("Closed mode takes the coordinated omission correction from warmup, "
+                    + "warmup must be at least 1 s: " + warmup);
+        }
+
+        if (options.getOrDefault("database", "h2").equals("postgres")) {
+            startPostgres(options, poolSize);
+        } else {
+            BenchmarkDatabase.start(poolSize);
+        }
+        UserDao userDao = new UserDaoImpl();
+        if (Boolean.parseBoolean(options.getOrDefault("cache", "false"))) {
+            userDao = new CachingUserDao(userDao, tableSize, Duration.ofMinutes(5));
+        }
+        UserService userService = new UserServiceImpl(userDao);
+
+        long seedStart = System.nanoTime();
+        UserServiceLoadTest test = new UserServiceLoadTest(userService, skew, mix);
+        test.seed(tableSize);
+        System.out.printf("seeded %,d users in %d ms%n", tableSize, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - seedStart));
+
+        System.out.printf("mode=%s%s threads=%d pool=%d table=%d skew=%.2f mix=%s cache=%s duration=%ds warmup=%ds%n",
+                open ? "open" : "closed", open ? String.format(" rate=%.0f/s", rate) : "", threads, poolSize,
+                tableSize, skew, options.getOrDefault("mix", "read:80,update:15,insert:3,delete:2"),
+                options.getOrDefault("cache", "false"), duration, warmup);
+        test.run(open, rate, threads, warmup, duration, reportInterval);
+
+        System.out.println("DAO side:");
+        OperationMetrics.forComponent("UserDao").getOperations().forEach(System.out::println);
+        HibernateUtil.getPoolMetrics().map(PoolMetrics::toString).ifPresent(pool -> System.out.println("pool: " + pool));
+        HibernateUtil.shutdown();
+        System.exit(0);
+    }
+
+    private static void startPostgres(Map<String, String> options, int poolSize) {
+        Configuration configuration = new Configuration().configure()
+                .setProperty(PooledConnectionProvider.MIN_SIZE, String.valueOf(poolSize))
+                .setProperty(PooledConnectionProvider.MAX_SIZE, String.valueOf(poolSize));
+        if (options.containsKey("url")) {
+            configuration.setProperty("hibernate.connection.url", options.get("url"));
+        }
+        if (options.containsKey("user")) {
+            configuration.setProperty("hibernate.connection.username", options.get("user"));
+        }
+        if (options.containsKey("password")) {
+            configuration.setProperty("hibernate.connection.password", options.get("password"));
+        }
+        HibernateUtil.setConfiguration(configuration);
+        HibernateUtil.getSessionFactory();
+    }
+
+    // "read:80,update:15,insert:3,delete:2" -> накопленные границы по Op.ordinal()
+    static int[] parseMix(String spec) {
+        int[] weights = new int[Op.values().length];
+        for (String part : spec.split(",")) {
+            String[] pair = part.trim().split(":", 2);
+            weights[Op.valueOf(pair[0].trim().toUpperCase()).ordinal()] = Integer.parseInt(pair[1].trim());
+        }
+        int[] bounds = new int[weights.length];
+        int total = 0;
+        for (int i = 0; i < weights.length; i++) {
+            total += weights[i];
+            bounds[i] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("Empty operation mix: " + spec);
+        }
+        return bounds;
+    }
+
+    private void seed(int count) {
+        long[] ids = new long[count];
+        List<User> batch = new ArrayList<>(10_000);
+        int seeded = 0;
+        while (seeded < count) {
+            batch.clear();
+            for (int i = 0; i < 10_000 && seeded + i < count; i++) {
+                batch.add(newUser());
+            }
+            // save назначает id прямо в сущностях, отдельный проход за ними не нужен
+            userService.saveAll(batch.iterator());
+            for (User user : batch) {
+                ids[seeded++] = user.getId();
+            }
+        }
+        // Горячие ключи разбросаны по таблице, а не собраны в первых страницах индекса
+        Random random = new Random(42);
+        for (int i = ids.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            long id = ids[i];
+            ids[i] = ids[j];
+            ids[j] = id;
+        }
+        keys = ids;
+        zipf = new Zipf(count, skew);
+    }
+
+    private User newUser() {
+        long n = emailSequence.incrementAndGet();
+        User user = new User();
+        user.setName("Load User " + n);
+        user.setEmail("load-" + runTag + "-" + n + "@example.com");
+        user.setAge(18 + (int) (n % 60));
+        return user;
+    }
+
+    private void run(boolean open, double rate, int threads, int warmup, int duration, int reportInterval)
+            throws InterruptedException {
+        long start = System.nanoTime();
+        long measureFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = measureFrom + TimeUnit.SECONDS.toNanos(duration);
+        long period = (long) (TimeUnit.SECONDS.toNanos(1) / rate);
+        AtomicLong scheduled = new AtomicLong();
+
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        for (int i = 0; i < threads; i++) {
+            workers.submit(() -> {
+                if (open) {
+                    runOpen(start, period, scheduled, measureFrom, end);
+                } else {
+                    runClosed(measureFrom, end);
+                }
+                return null;
+            });
+        }
+        workers.shutdown();
+
+        // Промежуточные строки показывают, в какой момент задержка начинает расти
+        long reportNanos = TimeUnit.SECONDS.toNanos(Math.max(1, reportInterval));
+        interval.reset();
+        long last = System.nanoTime();
+        while (!workers.awaitTermination(reportNanos, TimeUnit.NANOSECONDS)) {
+            long now = System.nanoTime();
+            if (now >= end + TimeUnit.SECONDS.toNanos(60)) {
+                System.out.println("workers did not stop in time, reporting what was recorded");
+                break;
+            }
+            if (now - last >= reportNanos) {
+                Histogram h = interval.getIntervalHistogram();
+                System.out.printf("%s %5ds: %,8.0f ops/s p50=%d p99=%d max=%d us%n",
+                        last < measureFrom ? "warmup" : "run   ", TimeUnit.NANOSECONDS.toSeconds(now - start),
+                        h.getTotalCount() / ((now - last) / 1e9), h.getValueAtPercentile(50),
+                        h.getValueAtPercentile(99), h.getMaxValue());
+                last = now;
+            }
+        }
+        // При перегрузке открытый режим дорабатывает очередь после end: делим на фактическое время
+        report((System.nanoTime() - measureFrom) / 1e9, open, rate);
+    }
+
+    private void runClosed(long measureFrom, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long warmupStart = System.nanoTime();
+        long warmupOps = 0;
+        long expectedInterval = 0;
+        while (true) {
+            long now = System.nanoTime();
+            if (now >= end) {
+                return;
+            }
+            if (now >= measureFrom && expectedInterval == 0 && warmupOps > 0) {
+                // Ожидаемый интервал между вызовами одного потока - его средний темп на прогреве
+                expectedInterval = TimeUnit.NANOSECONDS.toMicros((now - warmupStart) / warmupOps);
+            }
+            Op op = nextOp(random);
+            long callStart = System.nanoTime();
+            call(op, random);
+            long latency = TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - callStart);
+            interval.recordValue(latency);
+            if (callStart < measureFrom) {
+                warmupOps++;
+                continue;
+            }
+            service.get(op).recordValue(latency);
+            // Поток не успел сделать ни одного вызова за прогрев: поправку взять неоткуда, запись как есть
+            if (expectedInterval == 0) {
+                uncorrected.increment();
+            }
+            response.get(op).recordValueWithExpectedInterval(latency, expectedInterval);
+        }
+    }
+
+    private void runOpen(long start, long period, AtomicLong scheduled, long measureFrom, long end) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (true) {
+            long intended = start + scheduled.getAndIncrement() * period;
+            if (intended >= end) {
+                return;
+            }
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            Op op = nextOp(random);
+            long callStart = System.nanoTime();
+            call(op, random);
+            long finished = System.nanoTime();
+            long latency = TimeUnit.NANOSECONDS.toMicros(finished - intended);
+            interval.recordValue(latency);
+            if (intended >= measureFrom) {
+                response.get(op).recordValue(latency);
+                service.get(op).recordValue(TimeUnit.NANOSECONDS.toMicros(finished - callStart));
+            }
+        }
+    }
+
+    private Op nextOp(ThreadLocalRandom random) {
+        int roll = random.nextInt(mix[mix.length - 1]);
+        for (Op op : Op.values()) {
+            if (roll < mix[op.ordinal()]) {
+                return op;
+            }
+        }
+        throw new IllegalStateException();
+    }
+
+    private void call(Op op, ThreadLocalRandom random) {
+        try {
+            switch (op) {
+                case READ:
+                    userService.findById(keys[zipf.next(random)]);
+                    break;
+                case UPDATE:
+                    userService.patch(keys[zipf.next(random)], UserPatch.builder().age(18 + random.nextInt(60)).build());
+                    break;
+                case INSERT:
+                    inserted.add(userService.save(newUser()).getId());
+                    break;
+                case DELETE:
+                    Long id = inserted.poll();
+                    if (id == null) {
+                        // Вставок пока не было: удаление несуществующего id, тот же запрос к базе
+                        deleteMisses.increment();
+                        id = -1L;
+                    }
+                    userService.delete(id);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown operation " + op);
+            }
+        } catch (UserDaoTimeoutException e) {
+            timeouts.increment();
+        } catch (RuntimeException e) {
+            errors.increment();
+        }
+    }
+
+    private void report(double seconds, boolean open, double rate) {
+        Histogram total = new Histogram(3);
+        Histogram totalService = new Histogram(3);
+        Map<Op, Histogram> byOp = new EnumMap<>(Op.class);
+        for (Op op : Op.values()) {
+            Histogram h = response.get(op).getIntervalHistogram();
+            byOp.put(op, h);
+            total.add(h);
+            totalService.add(service.get(op).getIntervalHistogram());
+        }
+        // В закрытом режиме поправка добавляет синтетические значения, поэтому счёт по сервисному времени
+        long operations = totalService.getTotalCount();
+        System.out.printf("operations=%d throughput=%.0f ops/s%s errors=%d timeouts=%d deleteMisses=%d%n",
+                operations, operations / seconds, open ? String.format(" (target %.0f)", rate) : "",
+                errors.sum(), timeouts.sum(), deleteMisses.sum());
+        if (open) {
+            System.out.println("latency us, from scheduled start (open loop, no coordinated omission):");
+        } else if (uncorrected.sum() == 0) {
+            System.out.println("latency us, corrected for coordinated omission:");
+        } else {
+            System.out.printf("latency us, corrected for coordinated omission except %d samples "
+                    + "from threads that finished no call during warmup:%n", uncorrected.sum());
+        }
+        System.out.println(line("all", total));
+        byOp.forEach((op, h) -> {
+            if (h.getTotalCount() > 0) {
+                System.out.println(line(op.name().toLowerCase(), h));
+            }
+        });
+        System.out.println("service time us (call start to return, uncorrected):");
+        System.out.println(line("all", totalService));
+    }
+
+    private static String line(String name, Histogram h) {
+        return String.format("  %-6s p50=%d p99=%d p99.9=%d max=%d", name, h.getValueAtPercentile(50),
+                h.getValueAtPercentile(99), h.getValueAtPercentile(99.9), h.getMaxValue());
+    }
+
+    /**
+     * Zipfian ranks in [0, n) after Gray et al., "Quickly generating billion-record synthetic
+     * databases" (the generator YCSB uses). Rank 0 is the hottest; theta 0 is uniform.
+     */
+    static final class Zipf {
+        private final long n;
+        private final double theta;
+        private final double zetaN;
+        private final double alpha;
+        private final double eta;
+
+        Zipf(long n, double theta) {
+            if (n <= 0 || theta < 0 || theta == 1) {
+                throw new IllegalArgumentException("Zipf needs n > 0 and theta >= 0, != 1: n=" + n + ", theta=" + theta);
+            }
+            this.n = n;
+            this.theta = theta;
+            this.zetaN = zeta(n, theta);
+            this.alpha = 1 / (1 - theta);
+            // При n = 1 eta не определена, но next до неё не доходит
+            this.eta = (1 - Math.pow(2.0 / n, 1 - theta)) / (1 - zeta(Math.min(2, n), theta) / zetaN);
+        }
+
+        int next(Random random) {
+            double u = random.nextDouble();
+            double uz = u * zetaN;
+            if (uz < 1) {
+                return 0;
+            }
+            if (n > 1 && uz < 1 + Math.pow(0.5, theta)) {
+                return 1;
+            }
+            return (int) Math.min(n - 1, (long) (n * Math.pow(eta * u - eta + 1, alpha)));
+        }
+
+        private static double zeta(long n, double theta) {
+            double sum = 0;
+            for (long i = 1; i <= n; i++) {
+                sum += 1 / Math.pow(i, theta);
+            }
+            return sum;
+        }
+    }
+}
@@ -0,0 +1,152 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class CachingUserDaoTest {
+
+    @Mock
+    private UserDao delegate;
+
+    private CachingUserDao cachingDao;
+
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        cachingDao = new CachingUserDao(delegate, 2, Duration.ofMinutes(1));
+
+        testUser = new User();
+        testUser.setId(1L);
+        testUser.setName("Test User");
+        testUser.setEmail("test@example.com");
+        testUser.setAge(30);
+    }
+
+    @Test
+    void testFindByIdServedFromCache() {
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser));
+
+        assertEquals(testUser, cachingDao.findById(1L).orElseThrow());
+        assertEquals(testUser, cachingDao.findById(1L).orElseThrow());
+
+        verify(delegate, times(1)).findById(1L);
+        assertEquals(1, cachingDao.getStats().hitCount());
+        assertEquals(1, cachingDao.getStats().missCount());
+    }
+
+    @Test
+    void testFindByIdNotFoundIsNotCached() {
+        when(delegate.findById(999L)).thenReturn(Optional.empty());
+
+        assertFalse(cachingDao.findById(999L).isPresent());
+        assertFalse(cachingDao.findById(999L).isPresent());
+
+        verify(delegate, times(2)).findById(999L);
+    }
+
+    @Test
+    void testReturnedUserIsACopy() {
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser));
+
+        cachingDao.findById(1L).orElseThrow().setName("Changed");
+
+        assertEquals("Test User", cachingDao.findById(1L).orElseThrow().getName());
+    }
+
+    @Test
+    void testUpsertInvalidatesReturnedIds() {
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser));
+        cachingDao.findById(1L);
+        when(delegate.upsertAllByEmail(List.of(testUser))).thenReturn(List.of(1L));
+
+        cachingDao.upsertAllByEmail(List.of(testUser));
+        cachingDao.findById(1L);
+
+        verify(delegate, times(2)).findById(1L);
+    }
+
+    @Test
+    void testUpdateInvalidatesEntry() {
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser));
+        when(delegate.update(testUser)).thenReturn(testUser);
+
+        cachingDao.findById(1L);
+        cachingDao.update(testUser);
+        cachingDao.findById(1L);
+
+        verify(delegate, times(2)).findById(1L);
+    }
+
+    @Test
+    void testPatchInvalidatesEntry() {
+        UserPatch patch = UserPatch.builder().name("Patched").build();
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser));
+        when(delegate.patch(1L, patch)).thenReturn(1);
+
+        cachingDao.findById(1L);
+        assertEquals(1, cachingDao.patch(1L, patch));
+        cachingDao.findById(1L);
+
+        verify(delegate, times(2)).findById(1L);
+    }
+
+    @Test
+    void testDeleteInvalidatesEntry() {
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser)).thenReturn(Optional.empty());
+
+        cachingDao.findById(1L);
+        cachingDao.delete(testUser);
+
+        assertFalse(cachingDao.findById(1L).isPresent());
+        verify(delegate, times(1)).delete(testUser);
+    }
+
+    @Test
+    void testDeleteByIdInvalidatesEntry() {
+        when(delegate.findById(1L)).thenReturn(Optional.of(testUser)).thenReturn(Optional.empty());
+        when(delegate.deleteById(1L)).thenReturn(1);
+
+        cachingDao.findById(1L);
+
+        assertEquals(1, cachingDao.deleteById(1L));
+        assertFalse(cachingDao.findById(1L).isPresent());
+    }
+
+    @Test
+    void testSavePopulatesCache() {
+        when(delegate.save(testUser)).thenReturn(testUser);
+
+        cachingDao.save(testUser);
+
+        assertEquals(testUser, cachingDao.findById(1L).orElseThrow());
+        verify(delegate, never()).findById(any());
+    }
+
+    @Test
+    void testSizeBoundedEviction() {
+        for (long id = 1; id <= 10; id++) {
+            User user = testUser.copy();
+            user.setId(id);
+            when(delegate.findById(id)).thenReturn(Optional.of(user));
+            cachingDao.findById(id);
+        }
+        cachingDao.cleanUp();
+
+        assertTrue(cachingDao.getSize() <= 2);
+        assertTrue(cachingDao.getStats().evictionCount() >= 8);
+    }
+}
@@ -0,0 +1,177 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.entity.User;
+import com.example.userservice.util.HibernateUtil;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.LongSummaryStatistics;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+class UserBulkTransferTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:14.1-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass");
+
+    private static UserDao userDao;
+
+    @BeforeAll
+    static void beforeAll() {
+        Configuration configuration = new Configuration()
+                .setProperty("hibernate.connection.url", postgresContainer.getJdbcUrl())
+                .setProperty("hibernate.connection.username", postgresContainer.getUsername())
+                .setProperty("hibernate.connection.password", postgresContainer.getPassword())
+                .setProperty("hibernate.hbm2ddl.auto", "update")
+                .addAnnotatedClass(User.class);
+
+        HibernateUtil.setConfiguration(configuration);
+        userDao = new UserDaoImpl();
+    }
+
+    @BeforeEach
+    void setUp() {
+        try (var session = HibernateUtil.getSessionFactory().openSession()) {
+            var transaction = session.beginTransaction();
+            session.createNativeQuery("TRUNCATE TABLE users RESTART IDENTITY CASCADE").executeUpdate();
+            transaction.commit();
+        }
+    }
+
+    @AfterAll
+    static void afterAll() {
+        HibernateUtil.shutdown();
+    }
+
+    @Test
+    void testImportCsvSkipsDuplicateEmails() {
+        User existing = new User();
+        existing.setName("Existing");
+        existing.setEmail("taken@example.com");
+        existing.setAge(50);
+        userDao.save(existing);
+
+        String csv = "name,email,age\n"
+                + "Ann,ann@example.com,30\n"
+                + "\"Smith, Bob\",bob@example.com,40\n"
+                + "Ann Again,ann@example.com,31\n"
+                + "Intruder,taken@example.com,20\n";
+
+        UserBulkTransfer.Result result = new UserBulkTransfer()
+                .importUsers(new StringReader(csv), UserBulkTransfer.Format.CSV, null);
+
+        assertEquals(4, result.getRows());
+        assertEquals(2, result.getInserted());
+        assertEquals(2, result.getSkipped());
+        List<User> users = userDao.findAll();
+        assertEquals(3, users.size());
+        assertTrue(users.stream().anyMatch(user -> user.getName().equals("Smith, Bob")));
+        assertTrue(users.stream().anyMatch(user -> user.getName().equals("Ann") && user.getAge() == 30));
+        assertTrue(users.stream().noneMatch(user -> user.getName().equals("Intruder")));
+    }
+
+    @Test
+    void testImportedUsersDoNotCollideWithHibernateIds() {
+        new UserBulkTransfer().importUsers(new StringReader("name,email,age\nA,a@example.com,20\n"),
+                UserBulkTransfer.Format.CSV, null);
+
+        User user = new User();
+        user.setName("After Import");
+        user.setEmail("after@example.com");
+        user.setAge(20);
+        userDao.save(user);
+
+        assertEquals(2, userDao.findAll().size());
+    }
+
+    // Один nextval на 50 строк: 120 строк занимают три соседних блока, а не 120
+    @Test
+    void testImportTakesIdsInBlocks() {
+        StringBuilder csv = new StringBuilder("name,email,age\n");
+        for (int i = 0; i < 120; i++) {
+            csv.append("User ").append(i).append(",block").append(i).append("@example.com,30\n");
+        }
+        new UserBulkTransfer().importUsers(new StringReader(csv.toString()), UserBulkTransfer.Format.CSV, null);
+
+        LongSummaryStatistics ids = userDao.findAll().stream().mapToLong(User::getId).summaryStatistics();
+        assertEquals(120, ids.getCount());
+        assertTrue(ids.getMax() - ids.getMin() < 150, ids.toString());
+        User after = new User();
+        after.setName("After Import");
+        after.setEmail("after@example.com");
+        after.setAge(20);
+        assertTrue(userDao.save(after).getId() > ids.getMax());
+    }
+
+    @Test
+    void testJsonLinesRoundTrip() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            User user = new User();
+            user.setName(i == 0 ? "Quote \" and \\ backslash" : "User " + i);
+            user.setEmail("json" + i + "@example.com");
+            user.setAge(20 + i);
+            users.add(user);
+        }
+        userDao.saveAll(users);
+
+        List<Long> progress = new ArrayList<>();
+        StringWriter out = new StringWriter();
+        UserBulkTransfer transfer = new UserBulkTransfer(10);
+        UserBulkTransfer.Result exported = transfer.exportUsers(out, UserBulkTransfer.Format.JSONL,
+                (rows, rate) -> progress.add(rows));
+
+        assertEquals(25, exported.getRows());
+        assertEquals(List.of(10L, 20L), progress);
+        assertEquals(25, out.toString().lines().count());
+
+        setUp();
+        UserBulkTransfer.Result imported = transfer.importUsers(new StringReader(out + "\n"),
+                UserBulkTransfer.Format.JSONL, null);
+
+        assertEquals(25, imported.getInserted());
+        Optional<User> first = userDao.findAll().stream()
+                .filter(user -> user.getEmail().equals("json0@example.com"))
+                .findFirst();
+        assertTrue(first.isPresent());
+        assertEquals("Quote \" and \\ backslash", first.get().getName());
+    }
+
+    @Test
+    void testCsvExportCanBeImportedBack() {
+        User user = new User();
+        user.setName("Round Trip");
+        user.setEmail("csv@example.com");
+        user.setAge(33);
+        userDao.save(user);
+
+        StringWriter out = new StringWriter();
+        UserBulkTransfer transfer = new UserBulkTransfer();
+        transfer.exportUsers(out, UserBulkTransfer.Format.CSV, null);
+        assertTrue(out.toString().startsWith("id,name,email,age,created_at,version"));
+
+        setUp();
+        assertEquals(1, transfer.importUsers(new StringReader(out.toString()), UserBulkTransfer.Format.CSV, null)
+                .getInserted());
+        assertEquals("Round Trip", userDao.findAll().get(0).getName());
+    }
+
+    @Test
+    void testUnknownCsvColumnIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> new UserBulkTransfer()
+                .importUsers(new StringReader("name,email,phone\n"), UserBulkTransfer.Format.CSV, null));
+        assertEquals(UserBulkTransfer.Format.JSONL, UserBulkTransfer.Format.fromFileName("partner.JSONL"));
+    }
+}
@@ -0,0 +1,116 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.entity.User;
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.SchemaMigrations;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.*;
+import org.testcontainers.containers.PostgreSQLContainer;
+import org.testcontainers.junit.jupiter.Container;
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+@Testcontainers
+class UserChangeFeedTest {
+
+    @Container
+    private static final PostgreSQLContainer<?> postgresContainer = new PostgreSQLContainer<>("postgres:14.1-alpine")
+            .withDatabaseName("testdb")
+            .withUsername("testuser")
+            .withPassword("testpass");
+
+    private static UserDao userDao;
+    private UserReplica replica;
+    private UserChangeFeed feed;
+
+    @BeforeAll
+    static void beforeAll() {
+        Configuration configuration = new Configuration()
+                .setProperty("hibernate.connection.url", postgresContainer.getJdbcUrl())
+                .setProperty("hibernate.connection.username", postgresContainer.getUsername())
+                .setProperty("hibernate.connection.password", postgresContainer.getPassword())
+                .setProperty("hibernate.hbm2ddl.auto", "update")
+                .addAnnotatedClass(User.class);
+        HibernateUtil.setConfiguration(configuration);
+        // Таблица от hbm2ddl принимается за V1, триггер уведомлений ставит V3
+        SchemaMigrations.migrate(HibernateUtil.getSettings());
+        userDao = new UserDaoImpl();
+    }
+
+    @BeforeEach
+    void setUp() {
+        userDao.save(newUser("before@example.com"));
+        replica = new UserReplica();
+        feed = UserChangeFeed.create(replica, Duration.ofMillis(50));
+        feed.start().join();
+    }
+
+    @AfterEach
+    void tearDown() {
+        feed.close();
+        try (var session = HibernateUtil.openSession()) {
+            var transaction = session.beginTransaction();
+            session.createNativeQuery("TRUNCATE TABLE users").executeUpdate();
+            transaction.commit();
+        }
+    }
+
+    @AfterAll
+    static void afterAll() {
+        HibernateUtil.shutdown();
+    }
+
+    @Test
+    void testReplicaFollowsCommittedChanges() throws InterruptedException {
+        assertTrue(replica.findByEmail("before@example.com").isPresent());
+
+        User saved = userDao.save(newUser("after@example.com"));
+        saved.setName("Renamed");
+        userDao.update(saved);
+        User doomed = userDao.findAll().stream()
+                .filter(user -> user.getEmail().equals("before@example.com"))
+                .findFirst().orElseThrow();
+        userDao.delete(doomed);
+
+        long committed = System.nanoTime();
+        await(() -> replica.getFreshAsOfNanos() - committed > 0);
+        assertEquals("Renamed", replica.findById(saved.getId()).orElseThrow().getName());
+        assertTrue(replica.findByEmail("before@example.com").isEmpty());
+        assertEquals(1, replica.size());
+    }
+
+    @Test
+    void testLostConnectionReloadsTable() throws InterruptedException {
+        await(() -> replica.getFreshAsOfNanos() != Long.MIN_VALUE);
+        // Обрываем соединение фида: уведомления за время разрыва теряются и восстанавливаются полной перезагрузкой
+        try (var session = HibernateUtil.openSession()) {
+            session.createNativeQuery("SELECT pg_terminate_backend(pid) FROM pg_stat_activity "
+                    + "WHERE query LIKE 'SELECT pg_notify%' AND pid <> pg_backend_pid()").list();
+        }
+        userDao.save(newUser("during@example.com"));
+
+        await(() -> feed.getLoads() >= 2 && replica.findByEmail("during@example.com").isPresent());
+        assertEquals(2, replica.size());
+    }
+
+    private static User newUser(String email) {
+        User user = new User();
+        user.setName("Feed User");
+        user.setEmail(email);
+        user.setAge(30);
+        return user;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "Condition not met in 10 s");
+            Thread.sleep(20);
+        }
+    }
+}
@@ -1,15 +1,29 @@
 package com.example.userservice.dao;
 
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
 import com.example.userservice.entity.User;
+import com.example.userservice.metrics.OperationMetrics;
 import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.PoolMetrics;
+import com.example.userservice.util.UnitOfWork;
+import org.hibernate.Session;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.Transaction;
 import org.hibernate.cfg.Configuration;
 import org.junit.jupiter.api.*;
 import org.testcontainers.containers.PostgreSQLContainer;
 import org.testcontainers.junit.jupiter.Container;
 import org.testcontainers.junit.jupiter.Testcontainers;
 
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -139,4 +153,368 @@ class UserDaoImplTest {
         Optional<User> foundUser = userDao.findById(savedUser.getId());
         assertFalse(foundUser.isPresent());
     }
-}
\ No newline at end of file
+
+    @Test
+    void testPoolMetrics() {
+        userDao.findById(1L);
+
+        Optional<PoolMetrics> metrics = HibernateUtil.getPoolMetrics();
+        assertTrue(metrics.isPresent());
+        assertTrue(metrics.get().getAcquireCount() > 0);
+        assertTrue(metrics.get().getTotalConnections() <= metrics.get().getMaxSize());
+        assertEquals(0, metrics.get().getActiveConnections());
+    }
+
+    @Test
+    void testSaveAll() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 120; i++) {
+            User user = new User();
+            user.setName("Bulk " + i);
+            user.setEmail("bulk" + i + "@example.com");
+            user.setAge(20 + i % 50);
+            users.add(user);
+        }
+
+        int saved = new UserDaoImpl(UserDaoSettings.builder().batchSize(25).commitInterval(50).build()).saveAll(users);
+
+        assertEquals(120, saved);
+        assertTrue(users.stream().allMatch(user -> user.getId() != null));
+        assertEquals(120, userDao.findAll().size());
+    }
+
+    @Test
+    void testStreamAll() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 30; i++) {
+            User user = new User();
+            user.setName("Stream " + i);
+            user.setEmail("stream" + i + "@example.com");
+            user.setAge(20);
+            users.add(user);
+        }
+        userDao.saveAll(users);
+
+        try (Stream<User> stream = userDao.streamAll(7)) {
+            List<Long> ids = stream.map(User::getId).collect(Collectors.toList());
+            assertEquals(users.stream().map(User::getId).sorted().collect(Collectors.toList()), ids);
+        }
+    }
+
+    @Test
+    void testFindPage() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User user = new User();
+            user.setName("Page " + i);
+            user.setEmail("page" + i + "@example.com");
+            user.setAge(20);
+            users.add(user);
+        }
+        userDao.saveAll(users);
+
+        List<User> firstPage = userDao.findPage(null, 2);
+        assertEquals(2, firstPage.size());
+        assertEquals(users.get(0).getId(), firstPage.get(0).getId());
+
+        List<User> secondPage = userDao.findPage(firstPage.get(1).getId(), 2);
+        assertEquals(2, secondPage.size());
+        assertEquals(users.get(2).getId(), secondPage.get(0).getId());
+
+        List<User> lastPage = userDao.findPage(secondPage.get(1).getId(), 2);
+        assertEquals(1, lastPage.size());
+        assertTrue(userDao.findPage(lastPage.get(0).getId(), 2).isEmpty());
+    }
+
+    @Test
+    void testFindSummaries() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User user = new User();
+            user.setName("Summary " + i);
+            user.setEmail("summary" + i + "@example.com");
+            user.setAge(20);
+            users.add(user);
+        }
+        userDao.saveAll(users);
+
+        List<UserSummary> all = userDao.findAllSummaries();
+        assertEquals(3, all.size());
+        assertEquals(new UserSummary(users.get(0).getId(), "Summary 0", "summary0@example.com"), all.get(0));
+
+        List<UserSummary> page = userDao.findSummariesPage(users.get(0).getId(), 1);
+        assertEquals(1, page.size());
+        assertEquals(users.get(1).getId(), page.get(0).getId());
+        assertTrue(userDao.findSummariesPage(users.get(2).getId(), 10).isEmpty());
+    }
+
+    @Test
+    void testSearch() {
+        List<User> users = new ArrayList<>();
+        String[] names = {"Alice Smith", "Bob Smith", "Alina 100%", "Carl Jones"};
+        for (int i = 0; i < names.length; i++) {
+            User user = new User();
+            user.setName(names[i]);
+            user.setEmail("search" + i + "@example.com");
+            user.setAge(20 + i * 10);
+            users.add(user);
+        }
+        userDao.saveAll(users);
+
+        assertEquals(List.of(users.get(1).getId()), ids(userDao.search(UserSearch.builder().email("search1@example.com").build())));
+        assertEquals(List.of(users.get(0).getId(), users.get(2).getId()),
+                ids(userDao.search(UserSearch.builder().namePrefix("Ali").build())));
+        assertEquals(List.of(users.get(2).getId()), ids(userDao.search(UserSearch.builder().nameContains("0%").build())));
+        assertEquals(2, userDao.count(UserSearch.builder().nameContains("SMITH").build()));
+
+        UserSearch byAge = UserSearch.builder().minAge(30).maxAge(50).sortBy(UserSearch.SortField.AGE)
+                .descending(true).limit(2).build();
+        assertEquals(3, userDao.count(byAge));
+        List<User> firstPage = userDao.search(byAge);
+        assertEquals(List.of(users.get(3).getId(), users.get(2).getId()), ids(firstPage));
+        assertEquals(List.of(users.get(1).getId()), ids(userDao.search(byAge.after(firstPage.get(1)))));
+    }
+
+    @Test
+    void testAggregatesByAgeAndSignupDay() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            User user = new User();
+            user.setName("Stats " + i);
+            user.setEmail("stats" + i + "@example.com");
+            user.setAge(20 + i % 2);
+            users.add(user);
+        }
+        userDao.saveAll(users);
+
+        assertEquals(Map.of(20, 3L, 21, 2L), userDao.countByAge());
+        assertEquals(Map.of(users.get(0).getCreatedAt().toLocalDate(), 5L), userDao.countSignupsByDay());
+    }
+
+    @Test
+    void testUpsertAllByEmailInsertsChangedAndSkipsUnchanged() {
+        User changed = userDao.save(user("Alice", "alice@example.com", 30));
+        User unchanged = userDao.save(user("Carl", "carl@example.com", 40));
+
+        List<Long> ids = userDao.upsertAllByEmail(List.of(
+                user("Alice Smith", "alice@example.com", 31),
+                user("Bob", "bob@example.com", 25),
+                user("Carl", "carl@example.com", 40),
+                user("Bob Jones", "bob@example.com", 26)));
+
+        assertEquals(changed.getId(), ids.get(0));
+        assertEquals(unchanged.getId(), ids.get(2));
+        assertEquals(ids.get(1), ids.get(3));
+        User alice = userDao.findById(changed.getId()).orElseThrow();
+        assertEquals("Alice Smith", alice.getName());
+        assertEquals(31, alice.getAge());
+        assertEquals(changed.getVersion() + 1, alice.getVersion());
+        // Совпадающая строка не переписывается
+        assertEquals(unchanged.getVersion(), userDao.findById(unchanged.getId()).orElseThrow().getVersion());
+        User bob = userDao.findById(ids.get(1)).orElseThrow();
+        assertEquals("Bob Jones", bob.getName());
+        assertNotNull(bob.getCreatedAt());
+        assertEquals(3, userDao.findAll().size());
+        assertEquals(ids.get(1), userDao.upsertByEmail(user("Bob Jones", "bob@example.com", 27)));
+    }
+
+    @Test
+    void testLockTimeoutEndsWaitWithTypedException() {
+        User user = new User();
+        user.setName("Locked");
+        user.setEmail("locked@example.com");
+        user.setAge(40);
+        User saved = userDao.save(user);
+        UserDao impatientDao = new UserDaoImpl(UserDaoSettings.builder().lockTimeout(Duration.ofMillis(200)).build());
+
+        try (Session holder = HibernateUtil.openSession()) {
+            Transaction transaction = holder.beginTransaction();
+            holder.createQuery("update User u set u.age = 41 where u.id = :id")
+                    .setParameter("id", saved.getId())
+                    .executeUpdate();
+
+            long start = System.nanoTime();
+            UserDaoTimeoutException timeout = assertThrows(UserDaoTimeoutException.class,
+                    () -> impatientDao.deleteById(saved.getId()));
+
+            assertEquals(UserDaoTimeoutException.Reason.LOCK_TIMEOUT, timeout.getReason());
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).compareTo(Duration.ofSeconds(2)) < 0);
+            transaction.rollback();
+        }
+        assertTrue(userDao.findById(saved.getId()).isPresent());
+    }
+
+    private static User user(String name, String email, int age) {
+        User user = new User();
+        user.setName(name);
+        user.setEmail(email);
+        user.setAge(age);
+        return user;
+    }
+
+    private static List<Long> ids(List<User> users) {
+        return users.stream().map(User::getId).collect(Collectors.toList());
+    }
+
+    @Test
+    void testDeleteById() {
+        User user = new User();
+        user.setName("To Delete");
+        user.setEmail("delete@example.com");
+        user.setAge(40);
+        User savedUser = userDao.save(user);
+
+        assertEquals(1, userDao.deleteById(savedUser.getId()));
+        assertEquals(0, userDao.deleteById(savedUser.getId()));
+        assertFalse(userDao.findById(savedUser.getId()).isPresent());
+    }
+
+    @Test
+    void testDeleteAllById() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User user = new User();
+            user.setName("Delete " + i);
+            user.setEmail("delete" + i + "@example.com");
+            user.setAge(40);
+            users.add(user);
+        }
+        userDao.saveAll(users);
+
+        int deleted = userDao.deleteAllById(List.of(users.get(0).getId(), users.get(2).getId(), 999_999L));
+
+        assertEquals(2, deleted);
+        assertEquals(1, userDao.findAll().size());
+        assertEquals(0, userDao.deleteAllById(List.of()));
+    }
+
+    @Test
+    void testReadsWithStatefulSessions() {
+        UserDao statefulDao = new UserDaoImpl(UserDaoSettings.builder().readOnlyReads(false).build());
+        User user = new User();
+        user.setName("Stateful");
+        user.setEmail("stateful@example.com");
+        user.setAge(33);
+        statefulDao.save(user);
+
+        assertEquals("Stateful", statefulDao.findById(user.getId()).orElseThrow().getName());
+        assertEquals(1, statefulDao.findAll().size());
+        assertEquals(1, statefulDao.findPage(null, 10).size());
+        try (Stream<User> stream = statefulDao.streamAll(10)) {
+            assertEquals(1, stream.count());
+        }
+    }
+
+    @Test
+    void testUpdateAll() {
+        List<User> users = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            User user = new User();
+            user.setName("Before " + i);
+            user.setEmail("batch" + i + "@example.com");
+            user.setAge(20);
+            users.add(user);
+        }
+        userDao.saveAll(users);
+
+        users.forEach(user -> user.setName("After"));
+        assertEquals(3, userDao.updateAll(users));
+
+        assertTrue(userDao.findAll().stream().allMatch(user -> user.getName().equals("After")));
+    }
+
+    @Test
+    void testOperationMetrics() {
+        long before = OperationMetrics.forComponent("UserDao").stats("findById").getCount();
+
+        userDao.findById(1L);
+
+        assertEquals(before + 1, OperationMetrics.forComponent("UserDao").stats("findById").getCount());
+    }
+
+    @Test
+    void testUnitOfWorkCommitsDirtyEntities() {
+        User user = new User();
+        user.setName("Before");
+        user.setEmail("uow@example.com");
+        user.setAge(20);
+        Long id = userDao.save(user).getId();
+
+        UnitOfWork.execute(() -> {
+            User managed = userDao.findById(id).orElseThrow();
+            managed.setName("After");
+            assertSame(managed, userDao.findById(id).orElseThrow());
+            return null;
+        });
+
+        assertEquals("After", userDao.findById(id).orElseThrow().getName());
+    }
+
+    @Test
+    void testUnitOfWorkRollsBackOnException() {
+        User user = new User();
+        user.setName("Kept");
+        user.setEmail("rollback@example.com");
+        user.setAge(20);
+        Long id = userDao.save(user).getId();
+
+        assertThrows(IllegalStateException.class, () -> UnitOfWork.execute(() -> {
+            userDao.findById(id).orElseThrow().setName("Lost");
+            userDao.deleteById(id);
+            throw new IllegalStateException("abort");
+        }));
+
+        Optional<User> found = userDao.findById(id);
+        assertTrue(found.isPresent());
+        assertEquals("Kept", found.get().getName());
+    }
+
+    @Test
+    void testPatchUpdatesOnlyGivenColumns() {
+        User user = new User();
+        user.setName("Before");
+        user.setEmail("patch@example.com");
+        user.setAge(20);
+        User saved = userDao.save(user);
+
+        assertEquals(1, userDao.patch(saved.getId(), UserPatch.builder().age(21).expectedVersion(saved.getVersion()).build()));
+
+        User found = userDao.findById(saved.getId()).orElseThrow();
+        assertEquals("Before", found.getName());
+        assertEquals("patch@example.com", found.getEmail());
+        assertEquals(21, found.getAge());
+        assertEquals(saved.getVersion() + 1, found.getVersion());
+    }
+
+    @Test
+    void testWritesReturnPreviousStateOfLockedRow() {
+        User saved = userDao.save(user("Previous", "previous@example.com", 30));
+
+        User changed = saved.copy();
+        changed.setAge(31);
+        assertEquals(30, userDao.updateReturningPrevious(changed).getAge());
+        assertEquals(31, userDao.patchReturningPrevious(saved.getId(), UserPatch.builder().age(32).build())
+                .orElseThrow().getAge());
+        assertEquals(32, userDao.deleteReturningPrevious(saved.getId()).orElseThrow().getAge());
+
+        assertTrue(userDao.findById(saved.getId()).isEmpty());
+        assertTrue(userDao.deleteReturningPrevious(saved.getId()).isEmpty());
+        assertTrue(userDao.patchReturningPrevious(saved.getId(), UserPatch.builder().age(33).build()).isEmpty());
+    }
+
+    @Test
+    void testPatchWithStaleVersionFails() {
+        User user = new User();
+        user.setName("Before");
+        user.setEmail("stale@example.com");
+        user.setAge(20);
+        User saved = userDao.save(user);
+        userDao.patch(saved.getId(), UserPatch.builder().name("First").build());
+
+        UserPatch stale = UserPatch.builder().name("Second").expectedVersion(saved.getVersion()).build();
+        assertThrows(StaleObjectStateException.class, () -> userDao.patch(saved.getId(), stale));
+
+        assertEquals("First", userDao.findById(saved.getId()).orElseThrow().getName());
+        assertEquals(0, userDao.patch(999L, stale));
+    }
+}
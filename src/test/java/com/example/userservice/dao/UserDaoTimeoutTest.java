@@ -0,0 +1,86 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.entity.User;
+import com.example.userservice.util.Deadline;
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.UnitOfWork;
+import org.hibernate.Session;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.jpa.QueryHints;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Timeouts against H2: PostgreSQL-only statement_timeout/lock_timeout are not set there,
+ * but expired deadlines and H2's own lock timeout take the same path to the caller.
+ */
+class UserDaoTimeoutTest {
+
+    private static UserDao userDao;
+    private static User user;
+
+    @BeforeAll
+    static void beforeAll() {
+        HibernateUtil.setConfiguration(new Configuration()
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:timeouts;MODE=PostgreSQL;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=200")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "update")
+                .addAnnotatedClass(User.class));
+        userDao = new UserDaoImpl();
+        user = new User();
+        user.setName("Locked");
+        user.setEmail("locked@example.com");
+        user.setAge(30);
+        userDao.save(user);
+    }
+
+    @AfterAll
+    static void afterAll() {
+        HibernateUtil.shutdown();
+    }
+
+    @Test
+    void testExpiredDeadlineFailsInsteadOfReturningEmpty() {
+        UserDaoTimeoutException timeout = assertThrows(UserDaoTimeoutException.class,
+                () -> Deadline.within(Duration.ZERO, () -> userDao.findById(user.getId())));
+
+        assertEquals("findById", timeout.getOperation());
+        assertEquals(UserDaoTimeoutException.Reason.DEADLINE_EXPIRED, timeout.getReason());
+        // С запасом времени тот же вызов проходит
+        assertTrue(Deadline.within(Duration.ofSeconds(5), () -> userDao.findById(user.getId())).isPresent());
+    }
+
+    @Test
+    void testUnitOfWorkQueriesGetBudgetAsQueryTimeout() {
+        Object timeout = UnitOfWork.execute(() -> {
+            userDao.findById(user.getId());
+            return UnitOfWork.currentSession().orElseThrow().getProperties().get(QueryHints.SPEC_HINT_TIMEOUT);
+        });
+
+        assertEquals(10_000, timeout);
+    }
+
+    @Test
+    void testRowLockWaitEndsWithTypedTimeout() {
+        try (Session holder = HibernateUtil.openSession()) {
+            Transaction transaction = holder.beginTransaction();
+            holder.createQuery("update User u set u.age = 31 where u.id = :id")
+                    .setParameter("id", user.getId())
+                    .executeUpdate();
+
+            UserDaoTimeoutException timeout = assertThrows(UserDaoTimeoutException.class,
+                    () -> userDao.deleteById(user.getId()));
+
+            assertEquals(UserDaoTimeoutException.Reason.LOCK_TIMEOUT, timeout.getReason());
+            transaction.rollback();
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.entity.User;
+import com.example.userservice.util.HibernateUtil;
+import com.example.userservice.util.UnitOfWork;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Upsert by email on H2: the lookup-and-write path used where {@code ON CONFLICT} is not available.
+ * The PostgreSQL statement is covered in {@link UserDaoImplTest}.
+ */
+class UserDaoUpsertTest {
+
+    private static UserDao userDao;
+
+    @BeforeAll
+    static void beforeAll() {
+        HibernateUtil.setConfiguration(new Configuration()
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:upsert;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .addAnnotatedClass(User.class));
+        userDao = new UserDaoImpl();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        HibernateUtil.shutdown();
+    }
+
+    @Test
+    void testUpsertInsertsUpdatesAndDeduplicates() {
+        User changed = userDao.save(user("Alice", "alice@example.com", 30));
+        User unchanged = userDao.save(user("Carl", "carl@example.com", 40));
+
+        List<Long> ids = userDao.upsertAllByEmail(List.of(
+                user("Alice Smith", "alice@example.com", 31),
+                user("Bob", "bob@example.com", 25),
+                user("Carl", "carl@example.com", 40),
+                user("Bob Jones", "bob@example.com", 26)));
+
+        assertEquals(List.of(changed.getId(), ids.get(1), unchanged.getId(), ids.get(1)), ids);
+        User alice = userDao.findById(changed.getId()).orElseThrow();
+        assertEquals("Alice Smith", alice.getName());
+        assertEquals(changed.getVersion() + 1, alice.getVersion());
+        assertEquals(unchanged.getVersion(), userDao.findById(unchanged.getId()).orElseThrow().getVersion());
+        assertEquals("Bob Jones", userDao.findById(ids.get(1)).orElseThrow().getName());
+    }
+
+    @Test
+    void testUpsertJoinsUnitOfWork() {
+        Long id = UnitOfWork.execute(() -> {
+            Long inserted = userDao.upsertByEmail(user("Dana", "dana@example.com", 22));
+            // Та же сессия видит вставленную строку до commit
+            assertEquals(inserted, userDao.upsertByEmail(user("Dana", "dana@example.com", 23)));
+            return inserted;
+        });
+
+        assertEquals(23, userDao.findById(id).orElseThrow().getAge());
+    }
+
+    @Test
+    void testUpsertChunkIsPaddedToPowerOfTwo() {
+        assertEquals(1, UserDaoImpl.paddedUpsertRows(1));
+        assertEquals(2, UserDaoImpl.paddedUpsertRows(2));
+        assertEquals(4, UserDaoImpl.paddedUpsertRows(3));
+        assertEquals(512, UserDaoImpl.paddedUpsertRows(300));
+        assertEquals(1024, UserDaoImpl.paddedUpsertRows(1024));
+    }
+
+    private static User user(String name, String email, int age) {
+        User user = new User();
+        user.setName(name);
+        user.setEmail(email);
+        user.setAge(age);
+        return user;
+    }
+}
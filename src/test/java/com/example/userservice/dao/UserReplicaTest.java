@@ -0,0 +1,94 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.dto.UserSummary;
+import com.example.userservice.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserReplicaTest {
+
+    private UserReplica replica;
+
+    @BeforeEach
+    void setUp() {
+        replica = new UserReplica();
+        replica.load(List.of(row(1, 0, "a@example.com"), row(2, 0, "b@example.com"), row(3, 0, "c@example.com"))
+                .iterator());
+    }
+
+    @Test
+    void testLoadedRowsAreIndexedByIdAndEmail() {
+        User user = replica.findById(2L).orElseThrow();
+
+        assertEquals("b@example.com", user.getEmail());
+        assertEquals(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123_456_000), user.getCreatedAt());
+        assertEquals(3L, replica.findByEmail("c@example.com").orElseThrow().getId());
+        assertTrue(replica.findById(4L).isEmpty());
+        // Выдаётся копия: изменения вызывающего не попадают в реплику
+        user.setName("changed");
+        assertEquals("User 2", replica.findById(2L).orElseThrow().getName());
+    }
+
+    @Test
+    void testPagesAreOrderedById() {
+        assertEquals(List.of(2L, 3L), replica.findPage(1L, 10).stream().map(User::getId).collect(Collectors.toList()));
+        assertEquals(List.of(new UserSummary(1L, "User 1", "a@example.com")), replica.findSummariesPage(null, 1));
+    }
+
+    @Test
+    void testChangesApplyInVersionOrder() {
+        replica.apply(UserReplica.Change.fromJson("{\"op\":\"U\",\"id\":2,\"version\":1,\"name\":\"Bob\","
+                + "\"email\":\"bob@example.com\",\"age\":41,\"createdAt\":\"2024-01-02T03:04:05.123456\"}"));
+        // Уведомление о версии, которая уже есть в снимке, ничего не меняет
+        replica.apply(UserReplica.Change.fromJson("{\"op\":\"U\",\"id\":2,\"version\":0,\"name\":\"Old\","
+                + "\"email\":\"b@example.com\",\"age\":40,\"createdAt\":null}"));
+
+        User user = replica.findById(2L).orElseThrow();
+        assertEquals("Bob", user.getName());
+        assertEquals(41, user.getAge());
+        assertEquals(2L, replica.findByEmail("bob@example.com").orElseThrow().getId());
+        assertTrue(replica.findByEmail("b@example.com").isEmpty());
+    }
+
+    @Test
+    void testDeleteAndTruncate() {
+        replica.apply(UserReplica.Change.fromJson("{\"op\":\"D\",\"id\":1,\"version\":0}"));
+
+        assertTrue(replica.findById(1L).isEmpty());
+        assertTrue(replica.findByEmail("a@example.com").isEmpty());
+        assertEquals(2, replica.size());
+
+        replica.apply(UserReplica.Change.fromJson("{\"op\":\"T\"}"));
+
+        assertEquals(0, replica.size());
+    }
+
+    @Test
+    void testFreshnessOnlyMovesForwardUntilMarkedStale() {
+        assertEquals(Long.MIN_VALUE, replica.getFreshAsOfNanos());
+
+        replica.markFresh(100);
+        replica.markFresh(50);
+        assertEquals(100, replica.getFreshAsOfNanos());
+
+        replica.markStale();
+        assertEquals(Long.MIN_VALUE, replica.getFreshAsOfNanos());
+    }
+
+    @Test
+    void testMalformedNotificationIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> UserReplica.Change.fromJson("{\"op\":\"X\"}"));
+        assertThrows(RuntimeException.class, () -> UserReplica.Change.fromJson("not json"));
+    }
+
+    private static UserReplica.Row row(long id, long version, String email) {
+        return new UserReplica.Row(id, version, 40, UserReplica.Row.micros(LocalDateTime.of(2024, 1, 2, 3, 4, 5, 123_456_789)),
+                "User " + id, email);
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.userservice.dao;
+
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.entity.User;
+import org.hibernate.query.Query;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class UserSearchQueryTest {
+
+    @Test
+    void testNoFiltersListsEverythingById() {
+        UserSearchQuery query = UserSearchQuery.page(UserSearch.builder().build());
+
+        assertEquals("from User u order by u.id", query.listHql());
+        assertEquals("select count(u) from User u", UserSearchQuery.count(UserSearch.builder().build()).countHql());
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testFiltersBecomeBindParameters() {
+        UserSearch search = UserSearch.builder()
+                .minAge(18)
+                .maxAge(30)
+                .nameContains("O'Brien")
+                .build();
+        UserSearchQuery query = UserSearchQuery.page(search);
+        Query<User> hql = mock(Query.class);
+
+        query.bind(hql);
+
+        assertEquals("from User u where u.age >= :minAge and u.age <= :maxAge "
+                + "and lower(u.name) like :nameContains escape '!' order by u.id", query.listHql());
+        verify(hql).setParameter("minAge", 18);
+        verify(hql).setParameter("maxAge", 30);
+        verify(hql).setParameter("nameContains", "%o'brien%");
+    }
+
+    @Test
+    void testLikeWildcardsAreEscaped() {
+        assertEquals("100!%!_off!!", UserSearchQuery.escapeLike("100%_off!"));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testKeysetOnSortField() {
+        User last = new User();
+        last.setId(42L);
+        last.setName("Bob");
+        UserSearch search = UserSearch.builder().sortBy(UserSearch.SortField.NAME).descending(true).build().after(last);
+        UserSearchQuery query = UserSearchQuery.page(search);
+        Query<User> hql = mock(Query.class);
+
+        query.bind(hql);
+
+        assertEquals("from User u where u.name <= :afterValue and (u.name < :afterValue or u.id < :afterId) "
+                + "order by u.name desc, u.id desc", query.listHql());
+        verify(hql).setParameter("afterValue", "Bob");
+        verify(hql).setParameter("afterId", 42L);
+        // count не зависит от страницы
+        assertEquals("select count(u) from User u", UserSearchQuery.count(search).countHql());
+    }
+
+    @Test
+    void testInvalidPagingIsRejected() {
+        assertThrows(IllegalArgumentException.class, () -> UserSearchQuery.page(UserSearch.builder().limit(0).build()));
+        assertThrows(IllegalArgumentException.class, () -> UserSearchQuery.page(
+                UserSearch.builder().sortBy(UserSearch.SortField.AGE).afterId(1L).build()));
+    }
+}
@@ -0,0 +1,195 @@
+package com.example.userservice.http;
+
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.entity.User;
+import com.example.userservice.service.UserService;
+import org.hibernate.StaleObjectStateException;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserHttpServerTest {
+
+    @Mock
+    private UserService userService;
+
+    private UserHttpServer server;
+    private final HttpClient client = HttpClient.newHttpClient();
+    private User testUser;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        // Слот освобождается уже после отправки ответа: без ожидания следующий запрос мог бы получить 503
+        server = new UserHttpServer(userService, new InetSocketAddress("localhost", 0),
+                Executors.newFixedThreadPool(4), 1, Duration.ofMillis(500));
+        server.start();
+
+        testUser = new User();
+        testUser.setId(1L);
+        testUser.setName("Test User");
+        testUser.setEmail("test@example.com");
+        testUser.setAge(30);
+        testUser.setCreatedAt(LocalDateTime.of(2024, 1, 1, 12, 0));
+        testUser.setVersion(0L);
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    private HttpResponse<String> send(String method, String path, String body) throws Exception {
+        HttpRequest.BodyPublisher publisher = body == null
+                ? HttpRequest.BodyPublishers.noBody()
+                : HttpRequest.BodyPublishers.ofString(body);
+        HttpRequest request = HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort() + path))
+                .method(method, publisher)
+                .build();
+        return client.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    @Test
+    void testGetById() throws Exception {
+        when(userService.findById(1L)).thenReturn(Optional.of(testUser));
+
+        HttpResponse<String> response = send("GET", "/users/1", null);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"email\":\"test@example.com\""));
+        assertTrue(response.body().contains("\"createdAt\":\"2024-01-01T12:00:00\""));
+    }
+
+    @Test
+    void testGetByIdNotFound() throws Exception {
+        when(userService.findById(999L)).thenReturn(Optional.empty());
+
+        assertEquals(404, send("GET", "/users/999", null).statusCode());
+        assertEquals(404, send("GET", "/users/abc", null).statusCode());
+    }
+
+    @Test
+    void testCreate() throws Exception {
+        when(userService.save(any())).thenReturn(testUser);
+
+        HttpResponse<String> response = send("POST", "/users",
+                "{\"name\":\"Test User\",\"email\":\"test@example.com\",\"age\":30}");
+
+        assertEquals(201, response.statusCode());
+        assertEquals("/users/1", response.headers().firstValue("Location").orElseThrow());
+        verify(userService).save(argThat(user -> user.getId() == null && user.getAge() == 30));
+    }
+
+    @Test
+    void testCreateRejectsInvalidBody() throws Exception {
+        assertEquals(400, send("POST", "/users", "{\"name\":\"No Email\"}").statusCode());
+        assertEquals(400, send("POST", "/users", "not json").statusCode());
+        verify(userService, never()).save(any());
+    }
+
+    @Test
+    void testPatchConflict() throws Exception {
+        when(userService.patch(eq(1L), any())).thenThrow(new StaleObjectStateException(User.class.getName(), 1L));
+
+        HttpResponse<String> response = send("PATCH", "/users/1", "{\"age\":31,\"expectedVersion\":0}");
+
+        assertEquals(409, response.statusCode());
+        verify(userService).patch(1L, UserPatch.builder().age(31).expectedVersion(0L).build());
+    }
+
+    @Test
+    void testDelete() throws Exception {
+        when(userService.delete(1L)).thenReturn(true);
+        when(userService.delete(2L)).thenReturn(false);
+
+        assertEquals(204, send("DELETE", "/users/1", null).statusCode());
+        assertEquals(404, send("DELETE", "/users/2", null).statusCode());
+        assertEquals(405, send("PUT", "/users/1", "{}").statusCode());
+    }
+
+    // Ответы без тела по одному keep-alive соединению: сервер не должен закрывать его под следующим запросом
+    @Test
+    void testKeepAliveSurvivesEmptyResponses() throws Exception {
+        when(userService.delete(1L)).thenReturn(true);
+
+        for (int i = 0; i < 300; i++) {
+            assertEquals(204, send("DELETE", "/users/1", null).statusCode(), "request " + i);
+        }
+    }
+
+    @Test
+    void testListPage() throws Exception {
+        when(userService.findPage(null, 1)).thenReturn(List.of(testUser));
+
+        HttpResponse<String> response = send("GET", "/users?limit=1", null);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().contains("\"next\":1"));
+        assertEquals(400, send("GET", "/users?limit=0", null).statusCode());
+    }
+
+    @Test
+    void testStream() throws Exception {
+        User second = testUser.copy();
+        second.setId(2L);
+        when(userService.streamAll(anyInt())).thenReturn(Stream.of(testUser, second));
+
+        HttpResponse<String> response = send("GET", "/users/stream", null);
+
+        assertEquals(200, response.statusCode());
+        assertTrue(response.body().startsWith("[{\"id\":1"));
+        assertTrue(response.body().endsWith("}]"));
+    }
+
+    @Test
+    void testRequestsBeyondCapacityAreRejected() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        when(userService.findById(1L)).thenAnswer(invocation -> {
+            entered.countDown();
+            release.await(5, TimeUnit.SECONDS);
+            return Optional.of(testUser);
+        });
+
+        CompletableFuture<Integer> first = CompletableFuture.supplyAsync(() -> {
+            try {
+                return send("GET", "/users/1", null).statusCode();
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        assertTrue(entered.await(5, TimeUnit.SECONDS));
+
+        HttpResponse<String> rejected = send("GET", "/users/1", null);
+        release.countDown();
+
+        assertEquals(503, rejected.statusCode());
+        assertTrue(rejected.headers().firstValue("Retry-After").isPresent());
+        assertEquals(200, first.get(5, TimeUnit.SECONDS));
+        assertEquals(1, server.getRejectedCount());
+    }
+}
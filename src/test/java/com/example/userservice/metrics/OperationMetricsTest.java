@@ -0,0 +1,72 @@
+package com.example.userservice.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OperationMetricsTest {
+
+    @Test
+    void testRecordsLatencyAndErrors() {
+        OperationMetrics metrics = OperationMetrics.forComponent("TestComponent");
+
+        for (int i = 1; i <= 100; i++) {
+            metrics.record("lookup", TimeUnit.MICROSECONDS.toNanos(i * 10L), false);
+        }
+        assertThrows(IllegalStateException.class, () -> metrics.time("lookup", () -> {
+            throw new IllegalStateException("boom");
+        }));
+
+        OperationStats stats = metrics.stats("lookup");
+        assertEquals(101, stats.getCount());
+        assertEquals(1, stats.getErrors());
+        assertTrue(stats.getP50Micros() >= 490 && stats.getP50Micros() <= 510);
+        assertTrue(stats.getP99Micros() >= 980);
+        assertTrue(stats.getMaxMicros() >= 1000);
+    }
+
+    @Test
+    void testTimeReturnsResult() {
+        OperationMetrics metrics = OperationMetrics.forComponent("TestComponent");
+
+        assertEquals("ok", metrics.time("call", () -> "ok"));
+        assertEquals(1, metrics.stats("call").getCount());
+    }
+
+    @Test
+    void testPublishedOverJmx() throws Exception {
+        OperationMetrics.forComponent("JmxComponent").record("find", 1_000, false);
+
+        ObjectName name = new ObjectName("com.example.userservice:type=JmxComponent,operation=find");
+        assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        assertEquals(1L, ManagementFactory.getPlatformMBeanServer().getAttribute(name, "Count"));
+    }
+
+    @Test
+    void testSlowThresholdIsPerInstance() {
+        OperationMetrics shared = OperationMetrics.forComponent("ThresholdComponent");
+        OperationMetrics strict = shared.withSlowThreshold(Duration.ofMillis(10));
+
+        strict.record("op", 1_000, false);
+
+        assertEquals(Duration.ofMillis(500), OperationMetrics.forComponent("ThresholdComponent").getSlowThreshold());
+        assertEquals(Duration.ofMillis(10), strict.getSlowThreshold());
+        assertEquals(1, shared.stats("op").getCount());
+    }
+
+    @Test
+    void testReset() {
+        OperationMetrics metrics = OperationMetrics.forComponent("ResetComponent");
+        metrics.record("op", 1_000, true);
+
+        metrics.stats("op").reset();
+
+        assertEquals(0, metrics.stats("op").getCount());
+        assertEquals(0, metrics.stats("op").getErrors());
+    }
+}
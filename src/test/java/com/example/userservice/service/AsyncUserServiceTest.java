@@ -0,0 +1,137 @@
+package com.example.userservice.service;
+
+import com.example.userservice.entity.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncUserServiceTest {
+
+    @Mock
+    private UserService userService;
+
+    private AsyncUserService asyncService;
+
+    private User testUser;
+
+    @BeforeEach
+    void setUp() {
+        asyncService = new AsyncUserService(userService, Executors.newFixedThreadPool(2), 2, 3, Duration.ofSeconds(5));
+
+        testUser = new User();
+        testUser.setId(1L);
+        testUser.setName("Test User");
+        testUser.setEmail("test@example.com");
+        testUser.setAge(30);
+    }
+
+    @AfterEach
+    void tearDown() {
+        asyncService.close();
+    }
+
+    @Test
+    void testFindById() throws Exception {
+        when(userService.findById(1L)).thenReturn(Optional.of(testUser));
+
+        Optional<User> result = asyncService.findById(1L).get(1, TimeUnit.SECONDS);
+
+        assertEquals(Optional.of(testUser), result);
+        verify(userService, times(1)).findById(1L);
+    }
+
+    @Test
+    void testFailurePropagates() {
+        when(userService.save(testUser)).thenThrow(new IllegalStateException("boom"));
+
+        ExecutionException error = assertThrows(ExecutionException.class,
+                () -> asyncService.save(testUser).get(1, TimeUnit.SECONDS));
+        assertInstanceOf(IllegalStateException.class, error.getCause());
+    }
+
+    @Test
+    void testRejectsWhenTooManyPending() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(userService.delete(anyLong())).thenAnswer(invocation -> {
+            release.await();
+            return true;
+        });
+
+        CompletableFuture<Boolean> first = asyncService.delete(1L);
+        CompletableFuture<Boolean> second = asyncService.delete(2L);
+        CompletableFuture<Boolean> third = asyncService.delete(3L);
+        CompletableFuture<Boolean> rejected = asyncService.delete(4L);
+
+        ExecutionException error = assertThrows(ExecutionException.class, () -> rejected.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, error.getCause());
+
+        release.countDown();
+        assertTrue(first.get(1, TimeUnit.SECONDS));
+        assertTrue(second.get(1, TimeUnit.SECONDS));
+        assertTrue(third.get(1, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void testTimeoutInterruptsCall() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(userService.findAll()).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return null;
+        });
+        AsyncUserService timed = new AsyncUserService(userService, Executors.newSingleThreadExecutor(), 1, 10,
+                Duration.ofMillis(50));
+
+        try {
+            ExecutionException error = assertThrows(ExecutionException.class,
+                    () -> timed.findAll().get(1, TimeUnit.SECONDS));
+            assertInstanceOf(TimeoutException.class, error.getCause());
+            assertTrue(interrupted.await(1, TimeUnit.SECONDS));
+        } finally {
+            timed.close();
+        }
+    }
+
+    @Test
+    void testCancelledBeforeStartIsNeverRun() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        when(userService.findById(1L)).thenAnswer(invocation -> {
+            release.await();
+            return Optional.of(testUser);
+        });
+        AsyncUserService single = new AsyncUserService(userService, Executors.newSingleThreadExecutor(), 1, 10, null);
+
+        try {
+            CompletableFuture<Optional<User>> running = single.findById(1L);
+            CompletableFuture<Optional<User>> queued = single.findById(2L);
+            assertTrue(queued.cancel(true));
+
+            release.countDown();
+            assertTrue(running.get(1, TimeUnit.SECONDS).isPresent());
+            verify(userService, never()).findById(2L);
+        } finally {
+            single.close();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.userservice.service;
+
+import com.example.userservice.dao.UserReplica;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.entity.User;
+import com.example.userservice.util.ReadYourWrites;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicatedUserServiceTest {
+
+    private UserService delegate;
+    private UserReplica replica;
+    private ReplicatedUserService service;
+    private User user;
+
+    @BeforeEach
+    void setUp() {
+        delegate = mock(UserService.class);
+        replica = mock(UserReplica.class);
+        service = new ReplicatedUserService(delegate, replica, Duration.ofSeconds(1));
+        user = new User();
+        user.setId(1L);
+        user.setName("Alice");
+        user.setEmail("alice@example.com");
+        user.setAge(30);
+    }
+
+    @Test
+    void testFreshReplicaServesLookups() {
+        when(replica.getFreshAsOfNanos()).thenReturn(System.nanoTime());
+        when(replica.findById(1L)).thenReturn(Optional.of(user));
+        when(replica.findByEmail("alice@example.com")).thenReturn(Optional.of(user));
+
+        assertEquals(Optional.of(user), service.findById(1L));
+        assertEquals(List.of(user), service.search(UserSearch.builder().email("alice@example.com").build()));
+        verifyNoInteractions(delegate);
+        assertEquals(2, service.getReplicaReads());
+    }
+
+    @Test
+    void testStaleReplicaFallsBackToDelegate() {
+        when(replica.getFreshAsOfNanos()).thenReturn(System.nanoTime() - Duration.ofSeconds(5).toNanos());
+        when(delegate.findById(1L)).thenReturn(Optional.of(user));
+
+        assertEquals(Optional.of(user), service.findById(1L));
+
+        verify(replica, never()).findById(any());
+        assertEquals(1, service.getDelegatedReads());
+    }
+
+    @Test
+    void testReplicaNotYetLoadedFallsBackToDelegate() {
+        when(replica.getFreshAsOfNanos()).thenReturn(Long.MIN_VALUE);
+
+        service.findPage(null, 20);
+
+        verify(delegate).findPage(null, 20);
+        verify(replica, never()).findPage(any(), anyInt());
+    }
+
+    @Test
+    void testFilteredSearchGoesToDelegate() {
+        when(replica.getFreshAsOfNanos()).thenReturn(System.nanoTime());
+        UserSearch search = UserSearch.builder().email("alice@example.com").minAge(18).build();
+
+        service.search(search);
+
+        verify(delegate).search(search);
+        verify(replica, never()).findByEmail(any());
+    }
+
+    // Свежая запись ещё не дошла до реплики - читаем из БД
+    @Test
+    void testWriteNewerThanReplicaIsReadFromDelegate() {
+        long replicaFreshAsOf = System.nanoTime();
+        when(replica.getFreshAsOfNanos()).thenReturn(replicaFreshAsOf);
+        when(replica.findById(1L)).thenReturn(Optional.of(user));
+        ReadYourWrites caller = mock(ReadYourWrites.class);
+        when(caller.getLastWriteNanos()).thenReturn(replicaFreshAsOf + 1);
+        ReadYourWrites.callAs(caller, () -> service.findById(1L));
+
+        verify(delegate).findById(1L);
+        verify(replica, never()).findById(any());
+    }
+
+    @Test
+    void testWritesGoToDelegate() {
+        service.save(user);
+        service.delete(1L);
+
+        verify(delegate).save(user);
+        verify(delegate).delete(1L);
+        verifyNoInteractions(replica);
+    }
+}
@@ -1,6 +1,9 @@
 package com.example.userservice.service;
 
 import com.example.userservice.dao.UserDao;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.dto.UserSearch;
+import com.example.userservice.dto.UserSummary;
 import com.example.userservice.entity.User;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
@@ -12,6 +15,8 @@ import org.mockito.junit.jupiter.MockitoExtension;
 import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -69,6 +74,47 @@ class UserServiceImplTest {
         verify(userDao, times(1)).findAll();
     }
 
+    @Test
+    void testStreamAll() {
+        when(userDao.streamAll(100)).thenReturn(Stream.of(testUser));
+
+        List<User> result = userService.streamAll(100).collect(Collectors.toList());
+        assertEquals(List.of(testUser), result);
+
+        verify(userDao, times(1)).streamAll(100);
+    }
+
+    @Test
+    void testFindPage() {
+        when(userDao.findPage(null, 10)).thenReturn(List.of(testUser));
+
+        List<User> result = userService.findPage(null, 10);
+        assertEquals(List.of(testUser), result);
+
+        verify(userDao, times(1)).findPage(null, 10);
+    }
+
+    @Test
+    void testFindSummariesPage() {
+        UserSummary summary = new UserSummary(1L, "Test User", "test@example.com");
+        when(userDao.findSummariesPage(1L, 10)).thenReturn(List.of(summary));
+
+        List<UserSummary> result = userService.findSummariesPage(1L, 10);
+        assertEquals(List.of(summary), result);
+
+        verify(userDao, times(1)).findSummariesPage(1L, 10);
+    }
+
+    @Test
+    void testSearch() {
+        UserSearch search = UserSearch.builder().email("test@example.com").build();
+        when(userDao.search(search)).thenReturn(List.of(testUser));
+        when(userDao.count(search)).thenReturn(1L);
+
+        assertEquals(List.of(testUser), userService.search(search));
+        assertEquals(1L, userService.count(search));
+    }
+
     @Test
     void testSave() {
         when(userDao.save(testUser)).thenReturn(testUser);
@@ -79,6 +125,17 @@ class UserServiceImplTest {
         verify(userDao, times(1)).save(testUser);
     }
 
+    @Test
+    void testSaveAll() {
+        List<User> users = List.of(testUser);
+        when(userDao.saveAll(users)).thenReturn(1);
+
+        int result = userService.saveAll(users);
+        assertEquals(1, result);
+
+        verify(userDao, times(1)).saveAll(users);
+    }
+
     @Test
     void testUpdate() {
         when(userDao.update(testUser)).thenReturn(testUser);
@@ -89,24 +146,62 @@ class UserServiceImplTest {
         verify(userDao, times(1)).update(testUser);
     }
 
+    @Test
+    void testPatch() {
+        UserPatch patch = UserPatch.builder().age(31).expectedVersion(0L).build();
+        when(userDao.patch(1L, patch)).thenReturn(1);
+
+        assertTrue(userService.patch(1L, patch));
+
+        verify(userDao, times(1)).patch(1L, patch);
+        verify(userDao, never()).findById(any());
+    }
+
+    @Test
+    void testPatchNotFound() {
+        UserPatch patch = UserPatch.builder().age(31).build();
+        when(userDao.patch(999L, patch)).thenReturn(0);
+
+        assertFalse(userService.patch(999L, patch));
+    }
+
+    @Test
+    void testUpdateAll() {
+        List<User> users = List.of(testUser);
+        when(userDao.updateAll(users)).thenReturn(1);
+
+        assertEquals(1, userService.updateAll(users));
+
+        verify(userDao, times(1)).updateAll(users);
+    }
+
     @Test
     void testDelete() {
-        when(userDao.findById(1L)).thenReturn(Optional.of(testUser));
-        doNothing().when(userDao).delete(testUser);
+        when(userDao.deleteById(1L)).thenReturn(1);
 
-        userService.delete(1L);
+        assertTrue(userService.delete(1L));
 
-        verify(userDao, times(1)).findById(1L);
-        verify(userDao, times(1)).delete(testUser);
+        verify(userDao, times(1)).deleteById(1L);
+        verify(userDao, never()).findById(any());
+        verify(userDao, never()).delete(any());
     }
 
     @Test
     void testDeleteNotFound() {
-        when(userDao.findById(999L)).thenReturn(Optional.empty());
+        when(userDao.deleteById(999L)).thenReturn(0);
 
-        userService.delete(999L);
+        assertFalse(userService.delete(999L));
 
-        verify(userDao, times(1)).findById(999L);
-        verify(userDao, never()).delete(any());
+        verify(userDao, times(1)).deleteById(999L);
+    }
+
+    @Test
+    void testDeleteAllById() {
+        List<Long> ids = List.of(1L, 2L, 3L);
+        when(userDao.deleteAllById(ids)).thenReturn(2);
+
+        assertEquals(2, userService.deleteAllById(ids));
+
+        verify(userDao, times(1)).deleteAllById(ids);
     }
 }
\ No newline at end of file
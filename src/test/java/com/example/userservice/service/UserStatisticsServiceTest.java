@@ -0,0 +1,147 @@
+package com.example.userservice.service;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.entity.User;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class UserStatisticsServiceTest {
+
+    private static final LocalDate MONDAY = LocalDate.of(2024, 3, 4);
+    private static final LocalDate TUESDAY = MONDAY.plusDays(1);
+
+    @Mock
+    private UserDao userDao;
+
+    private UserStatisticsService statistics;
+    private UserServiceImpl userService;
+
+    @BeforeEach
+    void setUp() {
+        statistics = new UserStatisticsService(userDao);
+        userService = new UserServiceImpl(userDao, statistics);
+        lenient().when(userDao.countByAge()).thenReturn(Map.of(30, 2L, 40, 1L));
+        lenient().when(userDao.countSignupsByDay()).thenReturn(Map.of(MONDAY, 3L));
+    }
+
+    @Test
+    void testFirstReadAggregatesInDatabaseOnce() {
+        assertEquals(3, statistics.getUserCount());
+        assertEquals(100.0 / 3, statistics.getAverageAge(), 1e-9);
+        assertEquals(Map.of(30, 2L, 40, 1L), statistics.getAgeDistribution());
+        assertEquals(3, statistics.getSignups(MONDAY));
+
+        verify(userDao, times(1)).countByAge();
+        verify(userDao, times(1)).countSignupsByDay();
+        verify(userDao, never()).findAll();
+    }
+
+    @Test
+    void testWritesBeforeFirstReadAreNotTracked() {
+        User user = user(5L, 25, TUESDAY);
+        when(userDao.save(user)).thenReturn(user);
+        when(userDao.deleteById(1L)).thenReturn(1);
+
+        userService.save(user);
+        userService.delete(1L);
+
+        // Без загруженной статистики удаление не читает пользователя заранее
+        verify(userDao, never()).findById(any());
+    }
+
+    @Test
+    void testSaveUpdateAndDeleteMoveCounters() {
+        statistics.getUserCount();
+        User saved = user(5L, 25, TUESDAY);
+        when(userDao.save(saved)).thenReturn(saved);
+        userService.save(saved);
+
+        User changed = user(5L, 30, TUESDAY);
+        when(userDao.updateReturningPrevious(changed)).thenReturn(saved.copy());
+        userService.update(changed);
+
+        when(userDao.deleteReturningPrevious(1L)).thenReturn(Optional.of(user(1L, 40, MONDAY)));
+        userService.delete(1L);
+
+        assertEquals(3, statistics.getUserCount());
+        assertEquals(Map.of(30, 3L), statistics.getAgeDistribution());
+        assertEquals(Map.of(MONDAY, 2L, TUESDAY, 1L), statistics.getSignupsPerDay(MONDAY, TUESDAY));
+        verify(userDao, times(1)).countByAge();
+        // Прежнее состояние приходит из записи, а не из отдельного чтения
+        verify(userDao, never()).findById(any());
+    }
+
+    @Test
+    void testPatchOfAgeMovesBucket() {
+        statistics.getUserCount();
+        UserPatch patch = UserPatch.builder().age(41).build();
+        when(userDao.patchReturningPrevious(1L, patch)).thenReturn(Optional.of(user(1L, 40, MONDAY)));
+
+        userService.patch(1L, patch);
+
+        assertEquals(1, statistics.getCountByAge(41));
+        assertEquals(0, statistics.getCountByAge(40));
+        assertEquals(3, statistics.getUserCount());
+    }
+
+    @Test
+    void testMissedDeleteAndBulkWritesReloadFromDatabase() {
+        statistics.getUserCount();
+        when(userDao.deleteReturningPrevious(9L)).thenReturn(Optional.empty());
+        userService.delete(9L);
+        assertEquals(3, statistics.getUserCount());
+        verify(userDao, times(1)).countByAge();
+
+        when(userDao.deleteAllById(List.of(1L, 2L))).thenReturn(2);
+        userService.deleteAllById(List.of(1L, 2L));
+        when(userDao.countByAge()).thenReturn(Map.of(40, 1L));
+
+        assertEquals(1, statistics.getUserCount());
+        verify(userDao, times(2)).countByAge();
+    }
+
+    @Test
+    void testWriteBehindFlushKeepsStatisticsCached() {
+        statistics.getUserCount();
+        User older = user(1L, 31, MONDAY);
+        User same = user(2L, 40, MONDAY);
+        when(userDao.updateAllReturningPreviousAges(anyCollection())).thenReturn(Map.of(1L, 30, 2L, 40));
+
+        try (WriteBehindUserService writeBehind = new WriteBehindUserService(userService, Duration.ofHours(1), 100)) {
+            writeBehind.update(older);
+            writeBehind.update(same);
+            writeBehind.flush();
+        }
+
+        assertEquals(3, statistics.getUserCount());
+        assertEquals(Map.of(30, 1L, 31, 1L, 40, 1L), statistics.getAgeDistribution());
+        verify(userDao, times(1)).countByAge();
+        verify(userDao, never()).updateAll(anyCollection());
+    }
+
+    private static User user(Long id, int age, LocalDate signedUp) {
+        User user = new User();
+        user.setId(id);
+        user.setName("User " + id);
+        user.setEmail("user" + id + "@example.com");
+        user.setAge(age);
+        user.setCreatedAt(LocalDateTime.of(signedUp, LocalTime.NOON));
+        return user;
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.userservice.service;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.entity.User;
+import com.example.userservice.util.HibernateUtil;
+import org.hibernate.StaleObjectStateException;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Write-behind over the real DAO on H2: the caller keeps the object it queued, while every flush
+ * bumps the row version, so later flushes of the same user must not fail on the stale version.
+ */
+class WriteBehindFlushTest {
+
+    private static UserDao userDao;
+
+    @BeforeAll
+    static void beforeAll() {
+        HibernateUtil.setConfiguration(new Configuration()
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:write_behind;MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "create")
+                .setProperty("hibernate.generate_statistics", "true")
+                .addAnnotatedClass(User.class));
+        userDao = new UserDaoImpl();
+    }
+
+    @AfterAll
+    static void afterAll() {
+        HibernateUtil.shutdown();
+    }
+
+    @Test
+    void testSecondFlushOfSameUserLands() {
+        User user = userDao.save(user("Hot", "hot@example.com", 30));
+        try (WriteBehindUserService writeBehind = new WriteBehindUserService(new UserServiceImpl(userDao), Duration.ofHours(1), 100)) {
+            user.setAge(31);
+            writeBehind.update(user);
+            writeBehind.flush();
+
+            user.setAge(32);
+            writeBehind.update(user);
+            writeBehind.flush();
+
+            assertEquals(2, writeBehind.getWrittenUpdates());
+            assertEquals(0, writeBehind.getPendingCount());
+        }
+        User stored = userDao.findById(user.getId()).orElseThrow();
+        assertEquals(32, stored.getAge());
+        assertEquals(2L, stored.getVersion());
+    }
+
+    @Test
+    void testRepeatedUpdateOfDetachedUserReturnsNewVersion() {
+        User user = userDao.save(user("Plain", "plain@example.com", 40));
+
+        user.setAge(41);
+        userDao.update(user);
+        user.setAge(42);
+        userDao.update(user);
+
+        assertEquals(2L, user.getVersion());
+        assertEquals(42, userDao.findById(user.getId()).orElseThrow().getAge());
+    }
+
+    @Test
+    void testUpdateIsOneStatementAndChecksVersion() {
+        User user = userDao.save(user("Checked", "checked@example.com", 50));
+        User stale = user.copy();
+        Statistics statistics = HibernateUtil.getSessionFactory().getStatistics();
+        statistics.clear();
+
+        user.setAge(51);
+        userDao.update(user);
+
+        assertEquals(1, statistics.getPrepareStatementCount());
+        assertEquals(1L, user.getVersion());
+        stale.setAge(52);
+        assertThrows(StaleObjectStateException.class, () -> userDao.update(stale));
+        assertEquals(51, userDao.findById(user.getId()).orElseThrow().getAge());
+    }
+
+    @Test
+    void testUpdateAllRollsBackOnStaleVersion() {
+        User fresh = userDao.save(user("Fresh", "fresh@example.com", 60));
+        User stale = userDao.save(user("Stale", "stale@example.com", 70));
+        User staleCopy = stale.copy();
+        stale.setAge(71);
+        userDao.update(stale);
+
+        fresh.setAge(61);
+        staleCopy.setAge(72);
+        assertThrows(StaleObjectStateException.class, () -> userDao.updateAll(List.of(fresh, staleCopy)));
+
+        assertEquals(60, userDao.findById(fresh.getId()).orElseThrow().getAge());
+        assertEquals(0L, fresh.getVersion());
+
+        fresh.setVersion(null);
+        User deleted = userDao.save(user("Gone", "gone@example.com", 80));
+        userDao.deleteById(deleted.getId());
+        assertEquals(1, userDao.updateAll(List.of(fresh, deleted)));
+        assertEquals(61, userDao.findById(fresh.getId()).orElseThrow().getAge());
+    }
+
+    @Test
+    void testUpdateAllReturnsPreviousAgesOfWrittenRows() {
+        User first = userDao.save(user("First", "first@example.com", 20));
+        User second = userDao.save(user("Second", "second@example.com", 25));
+        first.setAge(21);
+        second.setAge(26);
+        second.setVersion(null);
+
+        Map<Long, Integer> previous = userDao.updateAllReturningPreviousAges(List.of(first, second));
+
+        assertEquals(Map.of(first.getId(), 20, second.getId(), 25), previous);
+        assertEquals(21, userDao.findById(first.getId()).orElseThrow().getAge());
+        assertEquals(26, userDao.findById(second.getId()).orElseThrow().getAge());
+    }
+
+    private static User user(String name, String email, int age) {
+        User user = new User();
+        user.setName(name);
+        user.setEmail(email);
+        user.setAge(age);
+        return user;
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.userservice.service;
+
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.entity.User;
+import com.example.userservice.util.HibernateUtil;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class WriteBehindUserServiceTest {
+
+    @Mock
+    private UserService userService;
+
+    private WriteBehindUserService writeBehind;
+
+    @BeforeEach
+    void setUp() {
+        // Окно большое, чтобы фоновый flush не мешал тестам
+        writeBehind = new WriteBehindUserService(userService, Duration.ofHours(1), 3);
+    }
+
+    @AfterEach
+    void tearDown() {
+        writeBehind.close();
+    }
+
+    private static User user(long id, String name) {
+        User user = new User();
+        user.setId(id);
+        user.setName(name);
+        user.setEmail("user" + id + "@example.com");
+        user.setAge(30);
+        return user;
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testUpdatesAreCoalesced() {
+        writeBehind.update(user(1L, "First"));
+        writeBehind.update(user(1L, "Second"));
+        writeBehind.update(user(2L, "Other"));
+
+        verify(userService, never()).update(any());
+        assertEquals(2, writeBehind.getPendingCount());
+
+        writeBehind.flush();
+
+        ArgumentCaptor<Collection<User>> batch = ArgumentCaptor.forClass(Collection.class);
+        verify(userService, times(1)).updateAll(batch.capture());
+        List<User> written = new ArrayList<>(batch.getValue());
+        assertEquals(2, written.size());
+        assertTrue(written.stream().anyMatch(user -> user.getName().equals("Second")));
+        assertEquals(3, writeBehind.getQueuedUpdates());
+        assertEquals(2, writeBehind.getWrittenUpdates());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void testReadSeesPendingUpdate() {
+        writeBehind.update(user(1L, "Pending"));
+
+        assertEquals("Pending", writeBehind.findById(1L).orElseThrow().getName());
+        verify(userService, never()).findById(any());
+    }
+
+    @Test
+    void testListReadFlushesFirst() {
+        writeBehind.update(user(1L, "Pending"));
+        when(userService.findAll()).thenReturn(List.of());
+
+        writeBehind.findAll();
+
+        var order = inOrder(userService);
+        order.verify(userService).updateAll(anyCollection());
+        order.verify(userService).findAll();
+    }
+
+    @Test
+    void testDeleteDropsPendingUpdate() {
+        writeBehind.update(user(1L, "Pending"));
+        when(userService.delete(1L)).thenReturn(true);
+
+        assertTrue(writeBehind.delete(1L));
+        writeBehind.flush();
+
+        verify(userService, never()).updateAll(anyCollection());
+    }
+
+    @Test
+    void testOverflowFlushesSynchronously() {
+        for (long id = 1; id <= 4; id++) {
+            writeBehind.update(user(id, "User " + id));
+        }
+
+        verify(userService, times(1)).updateAll(anyCollection());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void testFailedBatchFallsBackToSingleUpdates() {
+        User good = user(1L, "Good");
+        User bad = user(2L, "Bad");
+        when(userService.updateAll(anyCollection())).thenThrow(new IllegalStateException("batch failed"));
+        when(userService.update(any())).thenAnswer(invocation -> {
+            User user = invocation.getArgument(0);
+            if (user.getId() == 2L) {
+                throw new IllegalStateException("row failed");
+            }
+            return user;
+        });
+
+        writeBehind.update(good);
+        writeBehind.update(bad);
+        writeBehind.flush();
+
+        verify(userService, times(2)).update(any());
+        assertEquals(1, writeBehind.getWrittenUpdates());
+        assertEquals(0, writeBehind.getFailedUpdates());
+        // Неудачная запись остаётся в очереди и видна при чтении, пока не исчерпаны попытки
+        assertEquals("Bad", writeBehind.findById(2L).orElseThrow().getName());
+
+        writeBehind.flush();
+        writeBehind.flush();
+
+        assertEquals(1, writeBehind.getFailedUpdates());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void testQueuedUpdateStaysVisibleUntilWritten() {
+        writeBehind.update(user(1L, "Queued"));
+        when(userService.updateAll(anyCollection())).thenAnswer(invocation -> {
+            // Чтение во время записи батча всё ещё видит отложенное обновление
+            assertEquals("Queued", writeBehind.findById(1L).orElseThrow().getName());
+            return 1;
+        });
+
+        writeBehind.flush();
+
+        verify(userService, never()).findById(any());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void testUpdateQueuedDuringWriteIsKeptForNextFlush() {
+        writeBehind.update(user(1L, "First"));
+        when(userService.updateAll(anyCollection())).thenAnswer(invocation -> {
+            writeBehind.update(user(1L, "Second"));
+            return 1;
+        }).thenReturn(1);
+
+        writeBehind.flush();
+
+        assertEquals("Second", writeBehind.findById(1L).orElseThrow().getName());
+        writeBehind.flush();
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void testUpdateDuringDeleteIsNotQueued() {
+        User concurrent = user(1L, "Concurrent");
+        when(userService.delete(1L)).thenAnswer(invocation -> {
+            writeBehind.update(concurrent);
+            return true;
+        });
+
+        assertTrue(writeBehind.delete(1L));
+
+        verify(userService).update(concurrent);
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void testHibernateShutdownFlushes() {
+        writeBehind.update(user(1L, "Pending"));
+
+        HibernateUtil.shutdown();
+
+        verify(userService, times(1)).updateAll(anyCollection());
+    }
+
+    @Test
+    void testInTransactionFlushesPendingUpdatesFirst() {
+        writeBehind.update(user(1L, "Queued"));
+        when(userService.inTransaction(any())).thenReturn("done");
+
+        assertEquals("done", writeBehind.inTransaction(service -> "ignored"));
+
+        InOrder inOrder = inOrder(userService);
+        inOrder.verify(userService).updateAll(anyCollection());
+        inOrder.verify(userService).inTransaction(any());
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+
+    @Test
+    void testPatchWritesQueuedUpdateFirst() {
+        UserPatch patch = UserPatch.builder().age(40).build();
+        writeBehind.update(user(1L, "Queued"));
+        when(userService.patch(1L, patch)).thenReturn(true);
+
+        assertTrue(writeBehind.patch(1L, patch));
+
+        InOrder inOrder = inOrder(userService);
+        inOrder.verify(userService).updateAll(anyCollection());
+        inOrder.verify(userService).patch(1L, patch);
+        assertEquals(0, writeBehind.getPendingCount());
+    }
+}
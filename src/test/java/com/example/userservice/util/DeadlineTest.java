@@ -0,0 +1,41 @@
+package com.example.userservice.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DeadlineTest {
+
+    @Test
+    void testNoDeadlineOutsideScope() {
+        assertTrue(Deadline.remaining().isEmpty());
+
+        Deadline.within(Duration.ofSeconds(5), () -> Deadline.remaining().orElseThrow());
+
+        assertTrue(Deadline.remaining().isEmpty());
+    }
+
+    @Test
+    void testNestedDeadlineCanOnlyShorten() {
+        Deadline.within(Duration.ofSeconds(1), () -> {
+            Duration longer = Deadline.within(Duration.ofMinutes(1), () -> Deadline.remaining().orElseThrow());
+            assertTrue(longer.compareTo(Duration.ofSeconds(1)) <= 0);
+
+            Duration shorter = Deadline.within(Duration.ofMillis(100), () -> Deadline.remaining().orElseThrow());
+            assertTrue(shorter.compareTo(Duration.ofMillis(100)) <= 0);
+
+            // После вложенного вызова снова действует внешний дедлайн
+            assertTrue(Deadline.remaining().orElseThrow().compareTo(Duration.ofMillis(100)) > 0);
+            return null;
+        });
+    }
+
+    @Test
+    void testExpiredDeadlineIsNegative() {
+        Duration remaining = Deadline.until(System.nanoTime() - 1_000_000, () -> Deadline.remaining().orElseThrow());
+
+        assertTrue(remaining.isNegative());
+    }
+}
@@ -0,0 +1,170 @@
+package com.example.userservice.util;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.entity.User;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HibernateUtilTest {
+
+    @AfterEach
+    void tearDown() {
+        HibernateUtil.shutdown();
+    }
+
+    private static Configuration h2(String database) {
+        return new Configuration()
+                .setProperty("hibernate.connection.url", "jdbc:h2:mem:" + database + ";MODE=PostgreSQL;DB_CLOSE_DELAY=-1")
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.hbm2ddl.auto", "update")
+                .setProperty("hibernate.pool.min_size", "1")
+                .addAnnotatedClass(User.class);
+    }
+
+    @Test
+    void testLazyStartupMigratesAndValidatesSchema() {
+        HibernateUtil.setConfiguration(h2("lifecycle_migrations")
+                .setProperty(SchemaMigrations.ENABLED, "true")
+                .setProperty("hibernate.hbm2ddl.auto", "validate"));
+
+        try (Session session = HibernateUtil.openSession()) {
+            assertEquals(1, ((Number) session.createNativeQuery("select max(version) from schema_version")
+                    .uniqueResult()).intValue());
+        }
+    }
+
+    @Test
+    void testConcurrentFirstCallersShareOneFactory() throws Exception {
+        HibernateUtil.setConfiguration(h2("lifecycle_concurrent"));
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<SessionFactory>> results = new ArrayList<>();
+        for (int i = 0; i < threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return HibernateUtil.getSessionFactory();
+            }));
+        }
+        start.countDown();
+
+        SessionFactory first = results.get(0).get(30, TimeUnit.SECONDS);
+        for (Future<SessionFactory> result : results) {
+            assertSame(first, result.get(30, TimeUnit.SECONDS));
+        }
+        executor.shutdown();
+    }
+
+    @Test
+    void testReloadDrainsOpenSessionsBeforeClosingOldFactory() throws Exception {
+        HibernateUtil.setConfiguration(h2("lifecycle_old"));
+        SessionFactory old = HibernateUtil.getSessionFactory();
+        Session inFlight = HibernateUtil.openSession();
+
+        CompletableFuture<Void> drained = HibernateUtil.reload(h2("lifecycle_new"), Duration.ofSeconds(30));
+
+        assertNotSame(old, HibernateUtil.getSessionFactory());
+        assertFalse(drained.isDone());
+        assertFalse(old.isClosed());
+        // Начатая сессия дорабатывает на старой фабрике
+        assertEquals(0L, inFlight.createQuery("select count(u) from User u", Long.class).uniqueResult());
+
+        inFlight.close();
+
+        drained.get(5, TimeUnit.SECONDS);
+        assertTrue(old.isClosed());
+        try (Session session = HibernateUtil.openSession()) {
+            assertSame(HibernateUtil.getSessionFactory(), session.getSessionFactory());
+        }
+    }
+
+    @Test
+    void testDrainTimeoutClosesLeakedSessions() throws Exception {
+        HibernateUtil.setConfiguration(h2("lifecycle_leak"));
+        SessionFactory old = HibernateUtil.getSessionFactory();
+        HibernateUtil.openStatelessSession();
+
+        HibernateUtil.reload(h2("lifecycle_leak_new"), Duration.ofMillis(100)).get(5, TimeUnit.SECONDS);
+
+        assertTrue(old.isClosed());
+    }
+
+    @Test
+    void testFailedReloadKeepsCurrentFactory() {
+        HibernateUtil.setConfiguration(h2("lifecycle_keep"));
+        SessionFactory factory = HibernateUtil.getSessionFactory();
+        Configuration broken = h2("lifecycle_broken")
+                .setProperty("hibernate.connection.url", "jdbc:unknown:nowhere");
+
+        assertThrows(Throwable.class, () -> HibernateUtil.reload(broken));
+
+        assertSame(factory, HibernateUtil.getSessionFactory());
+        assertFalse(factory.isClosed());
+    }
+
+    @Test
+    void testNamedQueriesNeedNoParsingAfterStartup() {
+        HibernateUtil.setConfiguration(h2("named_queries").setProperty("hibernate.generate_statistics", "true"));
+        UserDao userDao = new UserDaoImpl();
+        User user = new User();
+        user.setName("Named");
+        user.setEmail("named@example.com");
+        user.setAge(30);
+        userDao.save(user);
+        // Списки в IN (...) разворачиваются в параметры: план на каждую выровненную длину строится один раз
+        userDao.deleteAllById(List.of(-1L, -2L, -3L));
+        Statistics statistics = HibernateUtil.getSessionFactory().getStatistics();
+        statistics.clear();
+
+        userDao.findPage(null, 10);
+        userDao.findSummariesPage(user.getId() - 1, 10);
+        userDao.patch(user.getId(), UserPatch.builder().name("Renamed").build());
+        userDao.patch(user.getId(), UserPatch.builder().age(31).expectedVersion(1L).build());
+        userDao.deleteAllById(List.of(-1L, -2L, -3L, -4L));
+
+        // Все планы собраны при сборке SessionFactory
+        assertEquals(0, statistics.getQueryPlanCacheMissCount());
+        assertTrue(statistics.getQueryPlanCacheHitCount() >= 5);
+        User patched = userDao.findById(user.getId()).orElseThrow();
+        assertEquals("Renamed", patched.getName());
+        assertEquals("named@example.com", patched.getEmail());
+        assertEquals(31, patched.getAge());
+        assertEquals(2L, patched.getVersion());
+    }
+
+    // Каждый набор полей patch - свой UPDATE только по этим колонкам, и все они скомпилированы при старте
+    @Test
+    void testEveryPatchShapeHasNamedQuery() {
+        HibernateUtil.setConfiguration(h2("patch_shapes"));
+        try (Session session = HibernateUtil.openSession()) {
+            for (int mask = 1; mask < 16; mask++) {
+                if ((mask & 7) == 0) {
+                    continue;
+                }
+                String name = User.patchQuery((mask & 1) != 0, (mask & 2) != 0, (mask & 4) != 0, (mask & 8) != 0);
+                assertNotNull(session.createNamedQuery(name), name);
+            }
+        }
+        assertThrows(IllegalArgumentException.class, () -> User.patchQuery(false, false, false, true));
+    }
+}
@@ -0,0 +1,212 @@
+package com.example.userservice.util;
+
+import com.example.userservice.dao.UserDao;
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.dto.UserPatch;
+import com.example.userservice.entity.User;
+import org.hibernate.SessionEventListener;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.engine.jdbc.connections.spi.ConnectionProvider;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.service.spi.ServiceRegistryImplementor;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class ReplicaRouterTest {
+
+    private static final long NO_HEALTH_CHECKS = TimeUnit.HOURS.toMillis(1);
+    private static final ReadYourWrites NO_WRITES = ReadYourWrites.newContext();
+
+    private ReplicaRouter router;
+
+    @AfterEach
+    void tearDown() {
+        if (router != null) {
+            router.close();
+        }
+        HibernateUtil.shutdown();
+    }
+
+    private static ReplicaRouter.Replica replica(String url, boolean reachable) throws SQLException {
+        SessionFactoryImplementor factory = mock(SessionFactoryImplementor.class);
+        ServiceRegistryImplementor registry = mock(ServiceRegistryImplementor.class);
+        ConnectionProvider provider = mock(ConnectionProvider.class);
+        lenient().when(factory.unwrap(SessionFactoryImplementor.class)).thenReturn(factory);
+        lenient().when(factory.getServiceRegistry()).thenReturn(registry);
+        lenient().when(registry.getService(ConnectionProvider.class)).thenReturn(provider);
+        if (reachable) {
+            Connection connection = mock(Connection.class);
+            lenient().when(connection.isValid(anyInt())).thenReturn(true);
+            lenient().when(provider.getConnection()).thenReturn(connection);
+        } else {
+            lenient().when(provider.getConnection()).thenThrow(new SQLException("Connection refused"));
+        }
+        return new ReplicaRouter.Replica(url, factory);
+    }
+
+    @Test
+    void testRoundRobinSkipsUnhealthyReplicas() throws SQLException {
+        ReplicaRouter.Replica first = replica("first", true);
+        ReplicaRouter.Replica second = replica("second", false);
+        ReplicaRouter.Replica third = replica("third", true);
+        router = new ReplicaRouter(List.of(first, second, third), ReplicaRouter.Routing.ROUND_ROBIN, 0, NO_HEALTH_CHECKS, 1);
+
+        assertSame(first, router.route(NO_WRITES));
+        assertSame(second, router.route(NO_WRITES));
+
+        router.checkHealth();
+
+        assertFalse(second.isHealthy());
+        assertSame(third, router.route(NO_WRITES));
+        assertSame(first, router.route(NO_WRITES));
+        assertSame(third, router.route(NO_WRITES));
+    }
+
+    @Test
+    void testAllReplicasDownFallsBackToPrimary() throws SQLException {
+        router = new ReplicaRouter(List.of(replica("only", false)), ReplicaRouter.Routing.ROUND_ROBIN, 0, NO_HEALTH_CHECKS, 1);
+
+        router.checkHealth();
+
+        assertNull(router.route(NO_WRITES));
+    }
+
+    @Test
+    void testLeastLoadedPrefersIdleReplica() throws SQLException {
+        ReplicaRouter.Replica busy = replica("busy", true);
+        ReplicaRouter.Replica idle = replica("idle", true);
+        router = new ReplicaRouter(List.of(busy, idle), ReplicaRouter.Routing.LEAST_LOADED, 0, NO_HEALTH_CHECKS, 1);
+        SessionEventListener lease = busy.newLease();
+
+        assertSame(idle, router.route(NO_WRITES));
+        assertSame(idle, router.route(NO_WRITES));
+
+        lease.end();
+        assertEquals(0, busy.getInFlight());
+    }
+
+    @Test
+    void testReadsStickToPrimaryAfterWrite() throws Exception {
+        router = new ReplicaRouter(List.of(replica("replica", true)), ReplicaRouter.Routing.ROUND_ROBIN,
+                60_000, NO_HEALTH_CHECKS, 1);
+
+        ReadYourWrites writer = ReadYourWrites.newContext();
+        assertNotNull(router.route(writer));
+
+        writer.markWrite();
+
+        assertNull(router.route(writer));
+        // Записи одного вызывающего не уводят с реплики чтения другого
+        assertNotNull(router.route(ReadYourWrites.newContext()));
+        assertNull(ReadYourWrites.onPrimary(() -> router.route(ReadYourWrites.current())));
+    }
+
+    @Test
+    void testStickinessEndsAfterWindow() throws Exception {
+        router = new ReplicaRouter(List.of(replica("replica", true)), ReplicaRouter.Routing.ROUND_ROBIN,
+                0, NO_HEALTH_CHECKS, 1);
+        ReadYourWrites writer = ReadYourWrites.newContext();
+
+        writer.markWrite();
+
+        assertNotNull(router.route(writer));
+    }
+
+    // Три базы H2 вместо primary и двух реплик: одинаковая схема, разные данные, чтобы было видно, откуда чтение
+    @Test
+    void testUserDaoReadsFromReplicas() throws Exception {
+        String primary = "jdbc:h2:mem:routing_primary;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        String replica1 = "jdbc:h2:mem:routing_replica1;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        String replica2 = "jdbc:h2:mem:routing_replica2;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        for (String url : List.of(primary, replica1, replica2)) {
+            SchemaMigrations.migrate(Map.of(AvailableSettings.URL, url, AvailableSettings.USER, "sa", AvailableSettings.PASS, ""));
+            execute(url, "INSERT INTO users (id, name, email, age) VALUES (1, '" + url.substring(12, url.indexOf(';')) + "', 'a@example.com', 30)");
+        }
+        HibernateUtil.setConfiguration(new Configuration()
+                .setProperty("hibernate.connection.url", primary)
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.pool.min_size", "1")
+                .setProperty(ReplicaRouter.REPLICA_URLS, replica1 + "," + replica2)
+                .setProperty(ReplicaRouter.STICKY_PRIMARY_MS, "60000")
+                .addAnnotatedClass(User.class));
+        UserDao userDao = new UserDaoImpl();
+
+        assertEquals("routing_replica1", readAsNewCaller(userDao));
+        assertEquals("routing_replica2", readAsNewCaller(userDao));
+        assertEquals(2, HibernateUtil.getReplicas().size());
+
+        // Контекст записи отдельный, чтобы окно не задело чтения потока теста в других тестах
+        ReadYourWrites writer = ReadYourWrites.newContext();
+        ReadYourWrites.callAs(writer, () -> userDao.patch(1L, UserPatch.builder().age(31).build()));
+
+        assertEquals("routing_primary", ReadYourWrites.callAs(writer, () -> userDao.findById(1L).orElseThrow().getName()));
+        // Другой вызывающий, в том же потоке или в своём, по-прежнему читает реплики
+        String otherCaller = readAsNewCaller(userDao);
+        assertTrue(otherCaller.startsWith("routing_replica"), otherCaller);
+        String otherThread = CompletableFuture.supplyAsync(() -> readAsNewCaller(userDao))
+                .get(5, TimeUnit.SECONDS);
+        assertTrue(otherThread.startsWith("routing_replica"), otherThread);
+        // Тот же вызывающий в другом потоке читает свою запись
+        String sameCaller = CompletableFuture.supplyAsync(
+                        () -> ReadYourWrites.callAs(writer, () -> userDao.findById(1L).orElseThrow().getName()))
+                .get(5, TimeUnit.SECONDS);
+        assertEquals("routing_primary", sameCaller);
+    }
+
+    @Test
+    void testReplicaDownBetweenHealthChecksFallsBackToPrimary() throws Exception {
+        String primary = "jdbc:h2:mem:fallback_primary;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        String replica = "jdbc:h2:mem:fallback_replica;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+        for (String url : List.of(primary, replica)) {
+            SchemaMigrations.migrate(Map.of(AvailableSettings.URL, url, AvailableSettings.USER, "sa", AvailableSettings.PASS, ""));
+            execute(url, "INSERT INTO users (id, name, email, age) VALUES (1, '" + url.substring(12, url.indexOf(';')) + "', 'a@example.com', 30)");
+        }
+        HibernateUtil.setConfiguration(new Configuration()
+                .setProperty("hibernate.connection.url", primary)
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty("hibernate.pool.min_size", "1")
+                // IFEXISTS: после SHUTDOWN пул не сможет пересоздать базу реплики и получит ошибку соединения
+                .setProperty(ReplicaRouter.REPLICA_URLS, replica + ";IFEXISTS=TRUE")
+                .setProperty(ReplicaRouter.HEALTH_CHECK_INTERVAL_MS, String.valueOf(NO_HEALTH_CHECKS))
+                .setProperty(ReplicaRouter.ACQUIRE_TIMEOUT_MS, "250")
+                .addAnnotatedClass(User.class));
+        UserDao userDao = new UserDaoImpl();
+        assertEquals("fallback_replica", readAsNewCaller(userDao));
+
+        execute(replica, "SHUTDOWN");
+        // Пул проверяет соединение, простоявшее дольше 500 мс; иначе выдал бы уже закрытое
+        Thread.sleep(600);
+
+        assertEquals("fallback_primary", readAsNewCaller(userDao));
+        assertFalse(HibernateUtil.getReplicas().get(0).isHealthy());
+    }
+
+    // Вызывающий без своих записей: записи предыдущих тестов в этом потоке не уводят его чтения на primary
+    private static String readAsNewCaller(UserDao userDao) {
+        return ReadYourWrites.callAs(ReadYourWrites.newContext(), () -> userDao.findById(1L).orElseThrow().getName());
+    }
+
+    private static void execute(String url, String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(url, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.userservice.util;
+
+import com.example.userservice.dao.UserDaoImpl;
+import com.example.userservice.entity.User;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SchemaMigrationsTest {
+
+    private static final String URL = "jdbc:h2:mem:migrations;MODE=PostgreSQL;DB_CLOSE_DELAY=-1";
+    private static final Map<String, Object> SETTINGS = Map.of(
+            AvailableSettings.URL, URL, AvailableSettings.USER, "sa", AvailableSettings.PASS, "");
+
+    @AfterEach
+    void tearDown() throws SQLException {
+        execute("DROP ALL OBJECTS");
+    }
+
+    @Test
+    void testMigratesEmptyDatabaseOnce() throws SQLException {
+        SchemaMigrations.migrate(SETTINGS);
+        SchemaMigrations.migrate(SETTINGS);
+
+        assertEquals(1, count("SELECT COUNT(*) FROM schema_version WHERE version = 1"));
+        // V2 - только для PostgreSQL
+        assertEquals(0, count("SELECT COUNT(*) FROM schema_version WHERE version = 2"));
+        execute("INSERT INTO users (id, name, email, age) VALUES (1, 'a', 'a@example.com', 30)");
+        assertEquals(0, count("SELECT version FROM users WHERE id = 1"));
+    }
+
+    @Test
+    void testExistingSchemaIsUpgradedToBaseline() throws SQLException {
+        // Схема, которую создавал hbm2ddl до миграций (id IDENTITY, без users_seq и version)
+        execute("CREATE TABLE users (id BIGSERIAL NOT NULL, name VARCHAR(255) NOT NULL, email VARCHAR(255) NOT NULL, "
+                + "age INTEGER NOT NULL, created_at TIMESTAMP, PRIMARY KEY (id))");
+        execute("ALTER TABLE users ADD CONSTRAINT UK_6dotkott2kjsp8vw4d0m25fb7 UNIQUE (email)");
+        execute("INSERT INTO users (name, email, age) VALUES ('a', 'a@example.com', 30), ('b', 'b@example.com', 40)");
+
+        SchemaMigrations.migrate(SETTINGS);
+
+        assertEquals(1, count("SELECT COUNT(*) FROM schema_version WHERE version = 1"));
+        assertEquals(0, count("SELECT MAX(version) FROM users"));
+        // Приложение поднимается на обновлённой схеме: Hibernate её валидирует, новые id идут после старых
+        HibernateUtil.setConfiguration(new Configuration()
+                .setProperty("hibernate.connection.url", URL)
+                .setProperty("hibernate.connection.username", "sa")
+                .setProperty("hibernate.connection.password", "")
+                .setProperty("hibernate.dialect", "org.hibernate.dialect.H2Dialect")
+                .setProperty(SchemaMigrations.ENABLED, "true")
+                .setProperty("hibernate.hbm2ddl.auto", "validate")
+                .addAnnotatedClass(User.class));
+        try {
+            User user = new User();
+            user.setName("c");
+            user.setEmail("c@example.com");
+            user.setAge(50);
+            new UserDaoImpl().save(user);
+
+            assertEquals(3L, user.getId());
+            assertEquals(3, new UserDaoImpl().findAll().size());
+        } finally {
+            HibernateUtil.shutdown();
+        }
+    }
+
+    @Test
+    void testChangedScriptFailsStartup() throws SQLException {
+        SchemaMigrations.migrate(SETTINGS);
+        execute("UPDATE schema_version SET checksum = checksum + 1 WHERE version = 1");
+
+        assertThrows(IllegalStateException.class, () -> SchemaMigrations.migrate(SETTINGS));
+    }
+
+    @Test
+    void testNewerDatabaseFailsStartup() throws SQLException {
+        SchemaMigrations.migrate(SETTINGS);
+        execute("INSERT INTO schema_version (version, description, checksum) VALUES (99, 'from the future', 0)");
+
+        assertThrows(IllegalStateException.class, () -> SchemaMigrations.migrate(SETTINGS));
+    }
+
+    @Test
+    void testStatementsKeepFunctionBodiesWhole() {
+        SchemaMigrations.Migration migration = new SchemaMigrations.Migration(2, "trigger", "V2__trigger.sql",
+                "-- comment; not a statement\n"
+                        + "CREATE FUNCTION f() RETURNS trigger AS $$ BEGIN PERFORM 1; RETURN NEW; END $$ LANGUAGE plpgsql;\n"
+                        + "INSERT INTO t VALUES ('a;b');\n");
+
+        List<String> statements = migration.statements();
+
+        assertEquals(2, statements.size());
+        assertTrue(statements.get(0).endsWith("END $$ LANGUAGE plpgsql"));
+        assertEquals("INSERT INTO t VALUES ('a;b')", statements.get(1));
+    }
+
+    private static void execute(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement()) {
+            statement.execute(sql);
+        }
+    }
+
+    private static long count(String sql) throws SQLException {
+        try (Connection connection = DriverManager.getConnection(URL, "sa", "");
+             Statement statement = connection.createStatement();
+             ResultSet resultSet = statement.executeQuery(sql)) {
+            resultSet.next();
+            return resultSet.getLong(1);
+        }
+    }
+}